@@ -0,0 +1,217 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.assembly.filter.ContainerDescriptorHandler;
+import org.codehaus.plexus.archiver.ArchiveEntry;
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.ResourceIterator;
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Finalization of several container descriptor handlers registered for the same archive. Each handler used to iterate
+ * archiver resources on its own, so archive entries were passed through all handlers once per handler; with
+ * {@link ResourcesDrainCoordinator} the first handler drains resources for all of them. The <code>passes</code>
+ * counter reports iterations over archiver resources, its rate divided by the throughput is the number of passes per
+ * archive: <code>handlersCount</code> without coordination, one with it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DrainBenchmark {
+
+    @Param({ "1", "3", "10" })
+    public int handlersCount;
+
+    @Param({ "false", "true" })
+    public boolean coordinated;
+
+    @Param({ "10000" })
+    public int entries;
+
+    private List<FileInfo> files;
+
+    private List<ContainerDescriptorHandler> handlers;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Passes {
+
+        public long passes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            passes = 0;
+        }
+    }
+
+    private static final class BenchmarkFileInfo implements FileInfo {
+
+        private final String name;
+
+        private final byte[] contents;
+
+        public BenchmarkFileInfo(String name, byte[] contents) {
+            this.name = name;
+            this.contents = contents;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public InputStream getContents() throws IOException {
+            return new ByteArrayInputStream(contents);
+        }
+
+        public boolean isFile() {
+            return true;
+        }
+
+        public boolean isDirectory() {
+            return false;
+        }
+    }
+
+    /**
+     * Archiver passing its resources through handlers like archiver does for unpacked dependencies, other methods are
+     * no-ops.
+     */
+    private final class BenchmarkArchiver implements InvocationHandler {
+
+        private final Passes passes;
+
+        public BenchmarkArchiver(Passes passes) {
+            this.passes = passes;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("equals".equals(name)) {
+                return Boolean.valueOf(proxy == args[0]);
+            }
+
+            if ("hashCode".equals(name)) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            }
+
+            if ("getResources".equals(name)) {
+                passes.passes++;
+                final Iterator<FileInfo> iterator = files.iterator();
+                return new ResourceIterator() {
+
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    public ArchiveEntry next() {
+                        FileInfo fileInfo = iterator.next();
+                        try {
+                            for (ContainerDescriptorHandler handler : handlers) {
+                                if (!handler.isSelected(fileInfo)) {
+                                    break;
+                                }
+                            }
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e.getMessage(), e);
+                        }
+
+                        return null;
+                    }
+                };
+            }
+
+            if (method.getReturnType() == Integer.TYPE) {
+                return Integer.valueOf(-1);
+            }
+
+            if (method.getReturnType() == Boolean.TYPE) {
+                return Boolean.FALSE;
+            }
+
+            return null;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        files = new ArrayList<FileInfo>(entries);
+        byte[] classContents = new byte[512];
+        for (int i = 0; i < entries; i++) {
+            files.add(new BenchmarkFileInfo("org/richfaces/bench/Class" + i + ".class", classContents));
+        }
+
+        for (byte[] contents : SyntheticDescriptors.resourceMappings(10, 100)) {
+            files.add(new BenchmarkFileInfo("META-INF/richfaces/resource-mappings.properties", contents));
+        }
+
+        handlers = new ArrayList<ContainerDescriptorHandler>(handlersCount);
+        for (int i = 0; i < handlersCount; i++) {
+            handlers.add(new ResourceMappingsPropertiesTransformer());
+        }
+    }
+
+    @Benchmark
+    public Archiver finalizeHandlers(Passes passes) throws Exception {
+        Archiver archiver = (Archiver) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {Archiver.class}, new BenchmarkArchiver(passes));
+        for (int i = 0; i < handlers.size(); i++) {
+            if (!coordinated && i > 0) {
+                // every handler iterates resources on its own, the first one does it through the coordinator
+                for (ResourceIterator it = archiver.getResources(); it.hasNext();) {
+                    it.next();
+                }
+            }
+
+            handlers.get(i).finalizeArchiveCreation(archiver);
+        }
+
+        return archiver;
+    }
+}
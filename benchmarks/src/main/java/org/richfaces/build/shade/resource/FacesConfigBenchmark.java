@@ -0,0 +1,244 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.archiver.Archiver;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Phases of {@link FacesConfigXmlResourceTransformer}: parsing of source files, import of their elements, sorting of
+ * merged elements and serialization of merged document. The <code>merge</code> benchmark runs all of them, in memory
+ * or in streaming mode, and reports heap usage: <code>allocatedBytes</code> and <code>merges</code> counters are
+ * totals of the iteration, <code>allocatedBytesPerMerge</code> and <code>peakHeapBytes</code> are computed when
+ * iteration ends. Run it
+ * with <code>-prof gc</code> for normalized allocation rate and GC counts as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FacesConfigBenchmark {
+
+    private static final String RESOURCE = "META-INF/faces-config.xml";
+
+    @Param({ "10", "1000", "100000" })
+    public int components;
+
+    @Param({ "1", "10", "1000" })
+    public int files;
+
+    private List<byte[]> contents;
+
+    private List<Document> documents;
+
+    private List<Element> elements;
+
+    private ElementsComparator comparator;
+
+    private Document mergedDocument;
+
+    private Format format;
+
+    @State(Scope.Benchmark)
+    public static class Merge {
+
+        @Param({ "false", "true" })
+        public boolean streaming;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HeapUsage {
+
+        public long allocatedBytes;
+
+        public long merges;
+
+        public long allocatedBytesPerMerge;
+
+        public long peakHeapBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            allocatedBytes = 0;
+            merges = 0;
+            allocatedBytesPerMerge = 0;
+            peakHeapBytes = 0;
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                }
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void computeUsage() {
+            allocatedBytesPerMerge = merges == 0 ? 0 : allocatedBytes / merges;
+
+            // sum of pool peaks is an upper bound of heap occupancy, including data retained by benchmark itself
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peakHeapBytes += pool.getPeakUsage().getUsed();
+                }
+            }
+        }
+
+        long getThreadAllocatedBytes() {
+            ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+            if (threadBean instanceof com.sun.management.ThreadMXBean) {
+                return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread()
+                    .getId());
+            }
+
+            return 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        contents = SyntheticDescriptors.facesConfigs(files, components);
+
+        CapturingTransformer transformer = new CapturingTransformer();
+        documents = new ArrayList<Document>(contents.size());
+        elements = new ArrayList<Element>();
+        for (byte[] content : contents) {
+            Document document = transformer.buildDocument(new ByteArrayInputStream(content));
+            documents.add(document);
+            elements.addAll(transformer.cloneAndImportElements(transformer.checkedList(document.getRootElement()
+                .getChildren("component", document.getRootElement().getNamespace()), Element.class)));
+            transformer.processDocument(RESOURCE, document);
+        }
+
+        comparator = FacesConfigXmlResourceTransformer.getElementsComparator();
+        transformer.writeMergedConfigFiles(null);
+        mergedDocument = transformer.getDocument();
+        format = transformer.getOutputFormat();
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws Exception {
+        FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+        for (byte[] content : contents) {
+            blackhole.consume(transformer.buildDocument(new ByteArrayInputStream(content)));
+        }
+    }
+
+    @Benchmark
+    public Object importDocuments() throws Exception {
+        FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+        for (Document document : documents) {
+            transformer.processDocument(RESOURCE, document);
+        }
+
+        return transformer;
+    }
+
+    @Benchmark
+    public Object sort() {
+        List<Element> list = new ArrayList<Element>(elements);
+        comparator.sort(list);
+        return list;
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        NullOutputStream os = new NullOutputStream();
+        new XMLOutputter(format).output(mergedDocument, os);
+        return os.getCount();
+    }
+
+    @Benchmark
+    public long merge(Merge merge, HeapUsage heapUsage) throws Exception {
+        long allocatedBytes = heapUsage.getThreadAllocatedBytes();
+
+        DiscardingTransformer transformer = new DiscardingTransformer();
+        transformer.setStreaming(merge.streaming);
+        for (byte[] content : contents) {
+            transformer.processContents(RESOURCE, new ByteArrayInputStream(content));
+        }
+
+        transformer.writeMergedConfigFiles(null);
+
+        heapUsage.allocatedBytes += heapUsage.getThreadAllocatedBytes() - allocatedBytes;
+        heapUsage.merges++;
+        return transformer.getLength();
+    }
+
+    static final class DiscardingTransformer extends FacesConfigXmlResourceTransformer {
+
+        private long length;
+
+        @Override
+        protected void addToArchive(String path, byte[] content, Archiver archiver) {
+            length += content.length;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+
+    static final class CapturingTransformer extends FacesConfigXmlResourceTransformer {
+
+        private Document document;
+
+        @Override
+        protected void addToArchive(String path, Document document, Archiver archiver) {
+            this.document = document;
+        }
+
+        public Document getDocument() {
+            return document;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Import of a single top-level element of the descriptors found in a real component library, comparing the former
+ * clone-then-remap import with the single-pass one. Run with <code>-prof gc</code> to see bytes allocated per imported
+ * element.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImportBenchmark {
+
+    @Param({ "../src/test/jars/richfaces-ui-input-ui-4.1.0-SNAPSHOT.jar" })
+    public String fixture;
+
+    private List<Element> elements;
+
+    private int index;
+
+    private ImportingTransformer transformer;
+
+    @Setup
+    public void setUp() throws Exception {
+        transformer = new ImportingTransformer();
+        elements = new ArrayList<Element>();
+
+        ZipFile zipFile = new ZipFile(new File(fixture));
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (name.endsWith("faces-config.xml") || name.endsWith(".taglib.xml")) {
+                    InputStream is = zipFile.getInputStream(entry);
+                    try {
+                        Document document = transformer.buildDocument(is);
+                        elements.addAll(transformer.checkedList(document.getRootElement().getChildren(),
+                            Element.class));
+                    } finally {
+                        is.close();
+                    }
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+
+        if (elements.isEmpty()) {
+            throw new IllegalStateException("No descriptors found in " + fixture);
+        }
+    }
+
+    private Element nextElement() {
+        if (index == elements.size()) {
+            index = 0;
+        }
+
+        return elements.get(index++);
+    }
+
+    @Benchmark
+    public Element cloneThenImport() {
+        return transformer.cloneThenImport(nextElement());
+    }
+
+    @Benchmark
+    public Element singlePassImport() {
+        return transformer.cloneAndImportElement(nextElement());
+    }
+
+    static final class ImportingTransformer extends FacesConfigXmlResourceTransformer {
+
+        Element cloneThenImport(Element element) {
+            Element clonedElement = (Element) element.clone();
+            importElement(clonedElement);
+            return clonedElement;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jdom.Document;
+import org.jdom.output.XMLOutputter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.richfaces.build.shade.resource.FacesConfigBenchmark.CapturingTransformer;
+
+/**
+ * Serialization of merged faces-config.xml in each output mode: {@link #write()} goes the same way as merged files do,
+ * {@link #writeWithOutputter(OutputSize)} uses JDOM outputter with the equivalent format. Output size of each mode is
+ * reported by <code>outputBytes</code> counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OutputModeBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int components;
+
+    @Param({ "pretty", "compact", "raw" })
+    public String mode;
+
+    private Document mergedDocument;
+
+    private CapturingTransformer transformer;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class OutputSize {
+
+        public long outputBytes;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        transformer = new CapturingTransformer();
+        transformer.setOutputMode(mode);
+        for (byte[] content : SyntheticDescriptors.facesConfigs(10, components)) {
+            transformer.processDocument("META-INF/faces-config.xml", transformer.buildDocument(new ByteArrayInputStream(
+                content)));
+        }
+
+        transformer.writeMergedConfigFiles(null);
+        mergedDocument = transformer.getDocument();
+    }
+
+    @Benchmark
+    public long write(OutputSize outputSize) throws IOException {
+        NullOutputStream os = new NullOutputStream();
+        if ("pretty".equals(mode)) {
+            new XMLOutputter(transformer.getOutputFormat()).output(mergedDocument, os);
+        } else {
+            new StreamingXmlSerializer("compact".equals(mode)).output(mergedDocument, os);
+        }
+
+        outputSize.outputBytes = os.getCount();
+        return os.getCount();
+    }
+
+    @Benchmark
+    public long writeWithOutputter(OutputSize outputSize) throws IOException {
+        NullOutputStream os = new NullOutputStream();
+        new XMLOutputter(transformer.getOutputFormat()).output(mergedDocument, os);
+        outputSize.outputBytes = os.getCount();
+        return os.getCount();
+    }
+}
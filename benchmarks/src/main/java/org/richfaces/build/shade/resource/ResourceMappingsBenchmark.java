@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.richfaces.build.shade.resource.MergedProperties.ConflictPolicy;
+
+/**
+ * Phases of {@link ResourceMappingsPropertiesTransformer}: parsing of source files (entries are imported and sorted
+ * while being parsed) and serialization of merged properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResourceMappingsBenchmark {
+
+    private static final String ENCODING = "ISO-8859-1";
+
+    @Param({ "10", "1000", "100000" })
+    public int entries;
+
+    @Param({ "1", "10", "1000" })
+    public int files;
+
+    private List<byte[]> contents;
+
+    private MergedProperties mergedProperties;
+
+    private MergedProperties load() throws IOException {
+        MergedProperties properties = new MergedProperties(ConflictPolicy.FIRST_WINS);
+        for (byte[] content : contents) {
+            properties.load("resource-mappings.properties", new InputStreamReader(new ByteArrayInputStream(content),
+                ENCODING));
+        }
+
+        return properties;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        contents = SyntheticDescriptors.resourceMappings(files, entries);
+        mergedProperties = load();
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws IOException {
+        blackhole.consume(load());
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        NullOutputStream os = new NullOutputStream();
+        Writer writer = new OutputStreamWriter(os, ENCODING);
+        mergedProperties.write(writer);
+        writer.flush();
+        return os.getCount();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates descriptors for benchmarks: total number of components (tags, mappings) is spread evenly across files.
+ * Names are prefixed with random hex numbers, so that merged elements have to be reordered.
+ */
+final class SyntheticDescriptors {
+
+    private static final String UTF_8 = "UTF-8";
+
+    private SyntheticDescriptors() {
+    }
+
+    private static int perFile(int files, int total) {
+        return Math.max(1, total / files);
+    }
+
+    private static String randomName(Random random, String prefix, int index) {
+        return String.format("%s%08x.N%d", prefix, random.nextInt(), index);
+    }
+
+    private static byte[] getBytes(StringBuilder builder, String charset) {
+        try {
+            return builder.toString().getBytes(charset);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    public static List<byte[]> facesConfigs(int files, int components) {
+        Random random = new Random(files * 31L + components);
+        List<byte[]> result = new ArrayList<byte[]>(files);
+        int componentsPerFile = perFile(files, components);
+        for (int i = 0; i < files; i++) {
+            StringBuilder builder = new StringBuilder();
+            builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            builder.append("<faces-config xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"2.0\">\n");
+            for (int j = 0; j < componentsPerFile; j++) {
+                String type = randomName(random, "bench.component.", i * componentsPerFile + j);
+                builder.append("  <component>\n");
+                builder.append("    <component-type>").append(type).append("</component-type>\n");
+                builder.append("    <component-class>").append(type).append("Impl</component-class>\n");
+                builder.append("  </component>\n");
+            }
+            builder.append("  <render-kit>\n");
+            builder.append("    <render-kit-id>HTML_BASIC</render-kit-id>\n");
+            for (int j = 0; j < componentsPerFile; j++) {
+                String type = randomName(random, "bench.renderer.", i * componentsPerFile + j);
+                builder.append("    <renderer>\n");
+                builder.append("      <component-family>bench.Family</component-family>\n");
+                builder.append("      <renderer-type>").append(type).append("</renderer-type>\n");
+                builder.append("      <renderer-class>").append(type).append("Impl</renderer-class>\n");
+                builder.append("    </renderer>\n");
+            }
+            builder.append("  </render-kit>\n");
+            builder.append("</faces-config>\n");
+            result.add(getBytes(builder, UTF_8));
+        }
+
+        return result;
+    }
+
+    /**
+     * Every file declares its own namespace, namespaces are merged by {@link #taglibMapping()}.
+     */
+    public static List<byte[]> taglibs(int files, int tags) {
+        Random random = new Random(files * 31L + tags);
+        List<byte[]> result = new ArrayList<byte[]>(files);
+        int tagsPerFile = perFile(files, tags);
+        for (int i = 0; i < files; i++) {
+            StringBuilder builder = new StringBuilder();
+            builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            builder.append("<facelet-taglib xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"2.0\">\n");
+            builder.append("  <namespace>http://bench.richfaces.org/source").append(i).append("</namespace>\n");
+            for (int j = 0; j < tagsPerFile; j++) {
+                String name = randomName(random, "tag", i * tagsPerFile + j);
+                builder.append("  <tag>\n");
+                builder.append("    <tag-name>").append(name).append("</tag-name>\n");
+                builder.append("    <component>\n");
+                builder.append("      <component-type>bench.").append(name).append("</component-type>\n");
+                builder.append("    </component>\n");
+                builder.append("  </tag>\n");
+            }
+            builder.append("</facelet-taglib>\n");
+            result.add(getBytes(builder, UTF_8));
+        }
+
+        return result;
+    }
+
+    public static Taglib[] taglibMapping() {
+        Taglib taglib = new Taglib();
+        taglib.setSourceNamespacesPattern("http://bench\\.richfaces\\.org/source\\d+");
+        taglib.setTargetNamespace("http://bench.richfaces.org/merged");
+        return new Taglib[] {taglib};
+    }
+
+    public static List<byte[]> resourceMappings(int files, int entries) {
+        Random random = new Random(files * 31L + entries);
+        List<byte[]> result = new ArrayList<byte[]>(files);
+        int entriesPerFile = perFile(files, entries);
+        for (int i = 0; i < files; i++) {
+            StringBuilder builder = new StringBuilder();
+            for (int j = 0; j < entriesPerFile; j++) {
+                String name = randomName(random, "bench.images\\:", i * entriesPerFile + j);
+                builder.append(name).append(".png=org.richfaces.renderkit.html.BaseGradient\\\n");
+                builder.append("\t{width=8, height=18, baseColorParam=generalBackgroundColor}\n");
+            }
+            result.add(getBytes(builder, "ISO-8859-1"));
+        }
+
+        return result;
+    }
+}
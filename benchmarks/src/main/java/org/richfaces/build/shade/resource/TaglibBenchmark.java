@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.archiver.Archiver;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Phases of {@link TaglibXmlResourceTransformer} merging all source libraries into a single one: parsing of source
+ * files, import of tags, sorting of merged tags and serialization of merged document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TaglibBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int tags;
+
+    @Param({ "1", "10", "1000" })
+    public int files;
+
+    private List<byte[]> contents;
+
+    private List<Document> documents;
+
+    private List<Element> elements;
+
+    private ElementsComparator comparator;
+
+    private Document mergedDocument;
+
+    private Format format;
+
+    private static String getResource(int index) {
+        return "META-INF/source" + index + ".taglib.xml";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Element> getTags(Document document) {
+        Element rootElement = document.getRootElement();
+        return rootElement.getChildren("tag", rootElement.getNamespace());
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        contents = SyntheticDescriptors.taglibs(files, tags);
+
+        CapturingTransformer transformer = new CapturingTransformer();
+        transformer.setTaglibs(SyntheticDescriptors.taglibMapping());
+        documents = new ArrayList<Document>(contents.size());
+        elements = new ArrayList<Element>();
+        for (int i = 0; i < contents.size(); i++) {
+            Document document = transformer.buildDocument(new ByteArrayInputStream(contents.get(i)));
+            documents.add(document);
+            elements.addAll(transformer.cloneAndImportElements(transformer.checkedList(getTags(document),
+                Element.class)));
+            transformer.processDocument(getResource(i), document);
+        }
+
+        comparator = TaglibXmlResourceTransformer.getElementsComparator();
+        transformer.writeMergedConfigFiles(null);
+        mergedDocument = transformer.getDocument();
+        format = transformer.getOutputFormat();
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws Exception {
+        TaglibXmlResourceTransformer transformer = new TaglibXmlResourceTransformer();
+        for (byte[] content : contents) {
+            blackhole.consume(transformer.buildDocument(new ByteArrayInputStream(content)));
+        }
+    }
+
+    @Benchmark
+    public void importDocuments(Blackhole blackhole) throws Exception {
+        TaglibXmlResourceTransformer transformer = new TaglibXmlResourceTransformer();
+        transformer.setTaglibs(SyntheticDescriptors.taglibMapping());
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            transformer.processDocument(getResource(i), document);
+            blackhole.consume(transformer.cloneAndImportElements(transformer.checkedList(getTags(document),
+                Element.class)));
+        }
+    }
+
+    @Benchmark
+    public Object sort() {
+        List<Element> list = new ArrayList<Element>(elements);
+        comparator.sort(list);
+        return list;
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        NullOutputStream os = new NullOutputStream();
+        new XMLOutputter(format).output(mergedDocument, os);
+        return os.getCount();
+    }
+
+    static final class CapturingTransformer extends TaglibXmlResourceTransformer {
+
+        private Document document;
+
+        @Override
+        protected void addToArchive(String path, Document document, Archiver archiver) {
+            this.document = document;
+        }
+
+        public Document getDocument() {
+            return document;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.codehaus.plexus.archiver.ArchiveEntry;
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.ResourceIterator;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+
+/**
+ * {@link Archiver} for running container descriptor handlers outside of assembly plugin: resources added by handlers
+ * are passed to {@link #addResource(String, PlexusIoResource)}, archive has no resources of its own and other methods
+ * are no-ops.
+ */
+abstract class ArchiverAdapter implements InvocationHandler {
+
+    private Archiver archiver;
+
+    public Archiver getArchiver() {
+        if (archiver == null) {
+            archiver = (Archiver) Proxy.newProxyInstance(ArchiverAdapter.class.getClassLoader(),
+                new Class<?>[] {Archiver.class}, this);
+        }
+
+        return archiver;
+    }
+
+    protected abstract void addResource(String path, PlexusIoResource resource) throws IOException;
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if ("equals".equals(name)) {
+            return Boolean.valueOf(proxy == args[0]);
+        }
+
+        if ("hashCode".equals(name)) {
+            return Integer.valueOf(System.identityHashCode(proxy));
+        }
+
+        if ("addResource".equals(name)) {
+            String path = (String) args[1];
+            try {
+                addResource(path, (PlexusIoResource) args[0]);
+            } catch (IOException e) {
+                throw new ArchiverException("Error adding '" + path + "'. Reason: " + e.getMessage(), e);
+            }
+
+            return null;
+        }
+
+        if ("getResources".equals(name)) {
+            return new ResourceIterator() {
+
+                public boolean hasNext() {
+                    return false;
+                }
+
+                public ArchiveEntry next() {
+                    throw new IllegalStateException();
+                }
+            };
+        }
+
+        if (method.getReturnType() == Integer.TYPE) {
+            return Integer.valueOf(-1);
+        }
+
+        if (method.getReturnType() == Boolean.TYPE) {
+            return Boolean.FALSE;
+        }
+
+        return null;
+    }
+}
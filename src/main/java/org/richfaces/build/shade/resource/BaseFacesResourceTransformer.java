@@ -21,32 +21,60 @@
  */
 package org.richfaces.build.shade.resource;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
-import java.io.Writer;
+import java.net.URL;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.maven.plugin.assembly.filter.ContainerDescriptorHandler;
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.ArchiverException;
-import org.codehaus.plexus.archiver.ResourceIterator;
 import org.codehaus.plexus.archiver.UnArchiver;
 import org.codehaus.plexus.components.io.fileselectors.FileInfo;
-import org.codehaus.plexus.util.WriterFactory;
+import org.codehaus.plexus.components.io.resources.AbstractPlexusIoResource;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+import org.codehaus.plexus.logging.AbstractLogEnabled;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.IOUtil;
 import org.jdom.Attribute;
+import org.jdom.Content;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.JDOMException;
 import org.jdom.Namespace;
+import org.jdom.UncheckedJDOMFactory;
 import org.jdom.input.SAXBuilder;
 import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
-import org.jdom.xpath.XPath;
+import org.richfaces.build.shade.resource.DuplicatesIndex.DuplicatePolicy;
+import org.richfaces.build.shade.resource.StreamingXmlSerializer.OutputMode;
+import org.richfaces.build.shade.resource.TransformerMetrics.Phase;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -54,7 +82,7 @@ import org.xml.sax.SAXException;
 /**
  * @author Nick Belaevski
  */
-public abstract class BaseFacesResourceTransformer implements ContainerDescriptorHandler {
+public abstract class BaseFacesResourceTransformer extends AbstractLogEnabled implements ContainerDescriptorHandler {
 
     protected static final String META_INF_PATH = "META-INF/";
 
@@ -66,21 +94,75 @@ public abstract class BaseFacesResourceTransformer implements ContainerDescripto
 
     private static final String XSI_PREFIX = "xsi";
 
+    // copied elements are valid already
+    private static final UncheckedJDOMFactory UNCHECKED_FACTORY = new UncheckedJDOMFactory();
+
+    private static final EntityResolver EMPTY_ENTITY_RESOLVER = new EntityResolver() {
+
+        @Override
+        public InputSource resolveEntity(final String publicId, final String systemId) throws SAXException, IOException {
+            return new InputSource(new StringReader(""));
+        }
+    };
+
+    /**
+     * SAXBuilder keeps its XMLReader between builds, so JAXP lookup and parser setup happen once per thread.
+     */
+    private static final ThreadLocal<SAXBuilder> SAX_BUILDERS = new ThreadLocal<SAXBuilder>();
+
+    private static final AtomicLong PARSER_CREATIONS = new AtomicLong();
+
+    private static final AtomicLong PARSER_REUSES = new AtomicLong();
+
     protected NamespacesTracker namespacesFactory = new NamespacesTracker();
 
     private boolean excludeOverride = false;
 
     private boolean hasProcessedConfigFiles;
+
+    private boolean finalized;
+
+    private Archiver finalizedArchiver;
+
+    private String currentLocation;
     
     private String outputDirectory;
 
-    protected static XPath createXPath(final String path) throws JDOMException {
-        XPath xPath = XPath.newInstance(path);
-        xPath.addNamespace(Namespace.getNamespace(JAVAEE_PREFIX, JAVAEE_URI));
-        xPath.addNamespace(Namespace.getNamespace(XSI_PREFIX, XSI_URI));
+    private boolean outputDirectoryRequired = true;
 
-        return xPath;
-    }
+    private final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+
+    private int parallelism = 1;
+
+    private ExecutorService parsingExecutor;
+
+    private final List<PendingDocument> pendingDocuments = new ArrayList<PendingDocument>();
+
+    private String cacheDirectory;
+
+    private long cacheSize = 64L * 1024 * 1024;
+
+    private DescriptorCache descriptorCache;
+
+    // documents loaded through descriptor cache, filled by parsing threads
+    private final Map<Document, CachedImport> cachedImports = Collections
+        .synchronizedMap(new IdentityHashMap<Document, CachedImport>());
+
+    private boolean incremental;
+
+    private final List<BufferedEntry> bufferedEntries = new ArrayList<BufferedEntry>();
+
+    private MergeManifest mergeManifest;
+
+    private OutputMode outputMode = OutputMode.PRETTY;
+
+    private final TransformerMetrics metrics = new TransformerMetrics();
+
+    private boolean writeMetrics;
+
+    private DuplicatePolicy duplicatePolicy = DuplicatePolicy.WARN;
+
+    private boolean reproducible;
 
     protected Namespace getJavaEENamespace() {
         return namespacesFactory.getNamespace(JAVAEE_URI, null);
@@ -93,6 +175,12 @@ public abstract class BaseFacesResourceTransformer implements ContainerDescripto
         }
     }
 
+    protected void importElement(final Element element) {
+        long start = System.nanoTime();
+        updateNamespaceRecursively(element);
+        metrics.addTime(Phase.IMPORT, System.nanoTime() - start);
+    }
+
     private void updateNamespaceRecursively(final Object object) {
         if (object instanceof Element) {
             Element element = (Element) object;
@@ -122,50 +210,260 @@ public abstract class BaseFacesResourceTransformer implements ContainerDescripto
         return JAVAEE_URI.equals(namespaceURI);
     }
 
+    /**
+     * Deep copy of element with namespaces replaced by the tracked ones; copying and import are done in a single pass.
+     * Elements of documents read from descriptor cache have been imported already, they are detached from their parent
+     * and returned as is if namespaces are tracked the same way they were tracked when the document was cached.
+     */
     protected Element cloneAndImportElement(final Element element) {
-        Element clonedElement = (Element) element.clone();
-        updateNamespaceRecursively(clonedElement);
+        long start = System.nanoTime();
+
+        Element clonedElement;
+        CachedImport cachedImport = cachedImports.isEmpty() ? null : cachedImports.get(element.getDocument());
+        if (cachedImport == null) {
+            clonedElement = copyAndImportElement(element);
+        } else if (cachedImport.isHit()) {
+            if (cachedImport.isImported(element, namespacesFactory)) {
+                element.detach();
+                clonedElement = element;
+            } else {
+                clonedElement = copyAndImportElement(element);
+            }
+        } else {
+            namespacesFactory.startRecording(cachedImport.getNamespaces());
+            try {
+                clonedElement = copyAndImportElement(element);
+            } finally {
+                namespacesFactory.stopRecording();
+            }
+
+            cachedImport.getSubstitutions().put(element, clonedElement);
+        }
+
+        metrics.addTime(Phase.IMPORT, System.nanoTime() - start);
+        return clonedElement;
+    }
+
+    /**
+     * Should be called when all elements of the document have been imported by {@link #cloneAndImportElement(Element)},
+     * document read from descriptor cache is not needed anymore then, and parsed document is put to the cache with its
+     * imported elements.
+     */
+    protected void importCompleted(final Document document) {
+        if (cachedImports.isEmpty()) {
+            return;
+        }
+
+        CachedImport cachedImport = cachedImports.remove(document);
+        if (cachedImport == null || cachedImport.isHit()) {
+            return;
+        }
+
+        try {
+            getDescriptorCache().put(cachedImport.getKey(), document, cachedImport.getSubstitutions(),
+                cachedImport.getNamespaces());
+        } catch (IOException e) {
+            getLogger().warn("Error writing descriptor cache entry. Reason: " + e.getMessage(), e);
+        }
+    }
+
+    private Element copyAndImportElement(final Element element) {
+        Element clonedElement = UNCHECKED_FACTORY.element(element.getName(),
+            namespacesFactory.getNamespace(element.getNamespace()));
+
+        List<?> additionalNamespaces = element.getAdditionalNamespaces();
+        for (int i = 0; i < additionalNamespaces.size(); i++) {
+            UNCHECKED_FACTORY.addNamespaceDeclaration(clonedElement, (Namespace) additionalNamespaces.get(i));
+        }
+
+        List<?> attributes = element.getAttributes();
+        for (int i = 0; i < attributes.size(); i++) {
+            Attribute clonedAttribute = (Attribute) ((Attribute) attributes.get(i)).clone();
+            if (!Namespace.NO_NAMESPACE.equals(clonedAttribute.getNamespace())) {
+                clonedAttribute.setNamespace(namespacesFactory.getNamespace(clonedAttribute.getNamespace()));
+            }
+
+            UNCHECKED_FACTORY.setAttribute(clonedElement, clonedAttribute);
+        }
+
+        List<?> content = element.getContent();
+        for (int i = 0; i < content.size(); i++) {
+            Object child = content.get(i);
+            Content clonedChild;
+            if (child instanceof Element) {
+                clonedChild = copyAndImportElement((Element) child);
+            } else {
+                clonedChild = (Content) ((Content) child).clone();
+            }
+
+            UNCHECKED_FACTORY.addContent(clonedElement, clonedChild);
+        }
+
         return clonedElement;
     }
 
     protected List<Element> cloneAndImportElements(final List<Element> elements) {
         List<Element> result = new ArrayList<Element>(elements.size());
-        for (Element element : elements) {
+        // elements can be detached from live list
+        for (Element element : new ArrayList<Element>(elements)) {
             result.add(cloneAndImportElement(element));
         }
 
         return result;
     }
 
+    private void declareNamespaces(final Element rootElement) {
+        Collection<Namespace> namespaces = namespacesFactory.getNamespaces();
+        for (Namespace namespace : namespaces) {
+            if (namespace.getPrefix().length() == 0) {
+                continue;
+            }
+            rootElement.addNamespaceDeclaration(namespace);
+        }
+    }
+
     protected void addToArchive(final String path, final Document document, final Archiver archiver) throws ArchiverException {
-        File f;
+        declareNamespaces(document.getRootElement());
+
+        // document is rendered once, then the same bytes go both to archive and to output directory
+        long start = System.nanoTime();
+        outputBuffer.reset();
         try {
-            f = File.createTempFile("richfaces-assembly-transform.", ".tmp");
-            f.deleteOnExit();
+            if (outputMode == OutputMode.PRETTY) {
+                new XMLOutputter(getOutputFormat()).output(document, outputBuffer);
+            } else {
+                new StreamingXmlSerializer(outputMode == OutputMode.COMPACT).output(document, outputBuffer);
+            }
+        } catch (IOException e) {
+            throw new ArchiverException("Error adding '" + path + "' to archive. Reason: " + e.getMessage(), e);
+        }
 
-            final Writer fileWriter = WriterFactory.newXmlWriter(f);
+        metrics.addTime(Phase.SERIALIZE, System.nanoTime() - start);
+        addToArchive(path, outputBuffer.toByteArray(), archiver);
+    }
 
-            Format prettyFormat = Format.getPrettyFormat();
-            prettyFormat.setIndent("    ");
+    /**
+     * Writes document with children of root element read from the source one by one, only the current child is kept in
+     * memory. Document is written straight to the output directory, or to a temporary file if output directory is not
+     * set, and added to archive from there.
+     *
+     * @param document document with root element that has no content yet
+     */
+    protected void addToArchive(final String path, final Document document, final ElementSource children,
+        final Archiver archiver) throws ArchiverException {
+        declareNamespaces(document.getRootElement());
 
-            Element rootElement = document.getRootElement();
-            Collection<Namespace> namespaces = namespacesFactory.getNamespaces();
-            for (Namespace namespace : namespaces) {
-                if (namespace.getPrefix().length() == 0) {
-                    continue;
+        long start = System.nanoTime();
+        File file = null;
+        boolean temporary = outputDirectory == null;
+        try {
+            if (temporary) {
+                if (outputDirectoryRequired) {
+                    throw new NullPointerException("outputDirectory can't be null");
                 }
-                rootElement.addNamespaceDeclaration(namespace);
+
+                file = File.createTempFile("merged", ".xml");
+            } else {
+                file = new File(new File(outputDirectory).getAbsoluteFile(), path);
+                file.getParentFile().mkdirs();
             }
-            outputFilesToSeparateDir(document, path, prettyFormat);
-            new XMLOutputter(prettyFormat).output(document, fileWriter);
+
+            MessageDigest digest = DescriptorCache.createDigest();
+            OutputStream os = new DigestOutputStream(new FileOutputStream(file), digest);
+            try {
+                MergedDocumentWriter writer = new MergedDocumentWriter(outputMode, getPrettyFormat());
+                writer.start(document, os);
+                for (Element child = children.next(); child != null; child = children.next()) {
+                    writer.write(child);
+                }
+
+                writer.end();
+            } finally {
+                os.close();
+            }
+
+            metrics.addTime(Phase.SERIALIZE, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            if (mergeManifest != null) {
+                mergeManifest.addOutput(path, DescriptorCache.toHex(digest.digest()));
+            }
+
+            // resource is read by the archiver later, temporary file is used only when archiver reads it right away
+            addResourceToArchive(path, new FileBackedResource(path, file), archiver);
+            metrics.addTime(Phase.WRITE, System.nanoTime() - start);
         } catch (IOException e) {
             throw new ArchiverException("Error adding '" + path + "' to archive. Reason: " + e.getMessage(), e);
+        } finally {
+            if (temporary && file != null) {
+                file.delete();
+            }
         }
+    }
+
+    protected void addToArchive(final String path, final byte[] content, final Archiver archiver) throws ArchiverException {
+        long start = System.nanoTime();
+        try {
+            outputFileToSeparateDir(content, path);
+        } catch (IOException e) {
+            throw new ArchiverException("Error adding '" + path + "' to archive. Reason: " + e.getMessage(), e);
+        }
+
+        if (mergeManifest != null) {
+            mergeManifest.addOutput(path, DescriptorCache.hash(content));
+        }
+
+        addResourceToArchive(path, content, archiver);
+        metrics.addTime(Phase.WRITE, System.nanoTime() - start);
+    }
+
+    private void addResourceToArchive(final String path, final byte[] content, final Archiver archiver)
+        throws ArchiverException {
+        addResourceToArchive(path, new InMemoryResource(path, content), archiver);
+    }
 
+    private void addResourceToArchive(final String path, final AbstractPlexusIoResource resource,
+        final Archiver archiver) throws ArchiverException {
+        metrics.addBytesOut(resource.getSize());
         excludeOverride = true;
-        archiver.addFile(f, path);
+        if (reproducible) {
+            resource.setLastModified(InMemoryResource.getReproducibleLastModified());
+        }
+        archiver.addResource(resource, path, archiver.getOverrideFileMode());
         excludeOverride = false;
     }
+
+    protected Format getOutputFormat() {
+        switch (outputMode) {
+            case COMPACT:
+                return Format.getCompactFormat();
+            case RAW:
+                return Format.getRawFormat();
+            default:
+                return getPrettyFormat();
+        }
+    }
+
+    static Format getPrettyFormat() {
+        Format prettyFormat = Format.getPrettyFormat();
+        prettyFormat.setIndent("    ");
+        return prettyFormat;
+    }
+
+    public String getOutputMode() {
+        return outputMode.name().toLowerCase(Locale.ENGLISH);
+    }
+
+    OutputMode getOutputModeSetting() {
+        return outputMode;
+    }
+
+    /**
+     * Sets formatting of merged files: <code>pretty</code> (default), <code>compact</code> or <code>raw</code>.
+     */
+    public void setOutputMode(String outputMode) {
+        this.outputMode = OutputMode.forName(outputMode);
+    }
     
     public String getOutputDirectory() {
         return outputDirectory;
@@ -175,9 +473,175 @@ public abstract class BaseFacesResourceTransformer implements ContainerDescripto
         this.outputDirectory = outputDirectory;
     }
 
-    protected void outputFilesToSeparateDir(final Document document, final String resourceName, final Format format)
-            throws IOException {
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets number of threads used to parse handled descriptors. Values greater than one make parsing asynchronous: parsed
+     * documents are then processed in encounter order from {@link #finalizeArchiveCreation(Archiver)}.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Sets directory where parsed descriptors are kept between builds; cache is disabled if directory is not set.
+     */
+    public void setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        this.descriptorCache = null;
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Sets maximum size of cache directory in bytes.
+     */
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+        this.descriptorCache = null;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Enables reuse of files merged by the previous build when names and contents of all handled descriptors are the
+     * same. Manifest of the merged descriptors is kept next to output directory.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isWriteMetrics() {
+        return writeMetrics;
+    }
+
+    /**
+     * Enables JSON report of merge metrics, written to output directory as <code>SimpleClassName.metrics.json</code>.
+     * Summary of the metrics is always logged.
+     */
+    public void setWriteMetrics(boolean writeMetrics) {
+        this.writeMetrics = writeMetrics;
+    }
+
+    public String getDuplicatePolicy() {
+        return duplicatePolicy.name().toLowerCase(Locale.ENGLISH).replace('_', '-');
+    }
+
+    /**
+     * Sets how definitions with the same identifier (component type, renderer type, tag name, etc.) are merged:
+     * <code>keep-first</code>, <code>keep-last</code>, <code>fail</code> or <code>warn</code> (default), which keeps
+     * all of them. Renderers of the same render kit are never duplicated: <code>warn</code> keeps the last one, as JSF
+     * does when it registers them.
+     */
+    public void setDuplicatePolicy(String duplicatePolicy) {
+        this.duplicatePolicy = DuplicatePolicy.forName(duplicatePolicy);
+    }
+
+    public boolean isReproducible() {
+        return reproducible;
+    }
+
+    /**
+     * Enables byte-identical output for the same set of descriptors regardless of the order they come in: descriptors
+     * are buffered and merged in the order of their names and contents, and merged files are added to archive with
+     * fixed modification time.
+     */
+    public void setReproducible(boolean reproducible) {
+        this.reproducible = reproducible;
+    }
+
+    /**
+     * Settings that affect content of merged files, files merged by the previous build are reused only if they have been
+     * merged with the same settings. Subclasses append their own settings.
+     */
+    protected String getConfiguration() {
+        return getClass().getName() + ";outputMode=" + outputMode + ";duplicatePolicy=" + duplicatePolicy
+            + ";reproducible=" + reproducible;
+    }
+
+    <T> DuplicatesIndex<T> createDuplicatesIndex() {
+        return new DuplicatesIndex<T>(duplicatePolicy, getLogger());
+    }
+
+    TransformerMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void writeMetricsReport() {
         if (outputDirectory == null) {
+            getLogger().warn("Output directory is not set, metrics report is not written");
+            return;
+        }
+
+        File reportFile = new File(new File(outputDirectory).getAbsoluteFile(), getClass().getSimpleName()
+            + ".metrics.json");
+        try {
+            reportFile.getParentFile().mkdirs();
+            FileOutputStream os = new FileOutputStream(reportFile);
+            try {
+                os.write(metrics.toJson().getBytes("UTF-8"));
+            } finally {
+                os.close();
+            }
+        } catch (IOException e) {
+            getLogger().warn("Error writing metrics report '" + reportFile + "'. Reason: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads contents of descriptor, time is accounted as read phase.
+     */
+    protected byte[] readContents(final InputStream is) throws IOException {
+        long start = System.nanoTime();
+        byte[] contents = IOUtil.toByteArray(is);
+        metrics.addTime(Phase.READ, System.nanoTime() - start);
+        return contents;
+    }
+
+    DescriptorCache getDescriptorCache() {
+        if (descriptorCache == null && cacheDirectory != null) {
+            descriptorCache = new DescriptorCache(new File(cacheDirectory).getAbsoluteFile(), cacheSize);
+        }
+
+        return descriptorCache;
+    }
+
+    @Override
+    protected Logger getLogger() {
+        Logger logger = super.getLogger();
+        if (logger == null) {
+            // not created by container
+            logger = new ConsoleLogger(Logger.LEVEL_INFO, getClass().getName());
+            enableLogging(logger);
+        }
+
+        return logger;
+    }
+
+    /**
+     * Merged files are added to archive directly when handler runs outside of assembly plugin, so their copy in output
+     * directory is optional then.
+     */
+    void setOutputDirectoryRequired(boolean outputDirectoryRequired) {
+        this.outputDirectoryRequired = outputDirectoryRequired;
+    }
+
+    protected void outputFileToSeparateDir(final byte[] content, final String resourceName) throws IOException {
+        if (outputDirectory == null) {
+            if (!outputDirectoryRequired) {
+                return;
+            }
+
             throw new NullPointerException("outputDirectory can't be null");
         }
         File outputDir = new File(outputDirectory).getAbsoluteFile();
@@ -186,16 +650,267 @@ public abstract class BaseFacesResourceTransformer implements ContainerDescripto
         File outputFile = new File(outputDir, resourceName);
         FileOutputStream outFiles = new FileOutputStream(outputFile);
         try {
-            new XMLOutputter(format).output(document, outFiles);
+            outFiles.write(content);
         } finally {
             outFiles.close();
         }
-
     }
 
     protected abstract void processDocument(String resource, Document document) throws JDOMException;
 
+    /**
+     * @return location of the file, qualified by name of the archive it comes from, e.g.
+     *         <code>richfaces-ui.jar!/META-INF/faces-config.xml</code>; <code>null</code> if file doesn't tell it
+     */
+    static String getLocation(final FileInfo fileInfo) {
+        if (!(fileInfo instanceof PlexusIoResource)) {
+            return null;
+        }
+
+        URL url;
+        try {
+            url = ((PlexusIoResource) fileInfo).getURL();
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (url == null) {
+            return null;
+        }
+
+        String location = url.toExternalForm();
+        int separatorIdx = location.indexOf("!/");
+        if (location.startsWith("jar:") && separatorIdx > 0) {
+            String archive = location.substring(0, separatorIdx);
+            return archive.substring(archive.lastIndexOf('/') + 1) + location.substring(separatorIdx);
+        }
+
+        return location;
+    }
+
+    /**
+     * @return name of the file being processed qualified by its location, used in messages about its content
+     */
+    protected String describeResource(final String resource) {
+        return currentLocation != null ? currentLocation : resource;
+    }
+
+    protected void processContents(final String resource, final InputStream is) throws IOException, JDOMException {
+        if (parallelism > 1) {
+            final byte[] contents = readContents(is);
+            Future<Document> document = getParsingExecutor().submit(new Callable<Document>() {
+
+                @Override
+                public Document call() throws Exception {
+                    return loadDocument(contents);
+                }
+            });
+            pendingDocuments.add(new PendingDocument(resource, currentLocation, document));
+        } else if (getDescriptorCache() != null) {
+            processDocument(resource, loadDocument(readContents(is)));
+        } else {
+            processDocument(resource, buildDocument(is));
+        }
+    }
+
+    private Document loadDocument(final byte[] contents) throws IOException, JDOMException {
+        DescriptorCache cache = getDescriptorCache();
+        if (cache == null) {
+            return buildDocument(new ByteArrayInputStream(contents));
+        }
+
+        String key = DescriptorCache.key(getClass().getSimpleName(), contents);
+        CachedImport cachedImport = new CachedImport(key);
+        Document document = cache.get(key, cachedImport.getNamespaces(), cachedImport.getImportedElements());
+        if (document != null) {
+            cachedImport.setHit();
+        } else {
+            // document is cached when transformer is done with its import
+            document = buildDocument(new ByteArrayInputStream(contents));
+        }
+
+        cachedImports.put(document, cachedImport);
+
+        return document;
+    }
+
+    protected Document buildDocument(final InputStream is) throws IOException, JDOMException {
+        SAXBuilder builder = SAX_BUILDERS.get();
+        if (builder == null) {
+            builder = new SAXBuilder(false);
+            builder.setExpandEntities(false);
+            builder.setReuseParser(true);
+            // TODO nick - namespace aware?
+            builder.setEntityResolver(EMPTY_ENTITY_RESOLVER);
+
+            SAX_BUILDERS.set(builder);
+            PARSER_CREATIONS.incrementAndGet();
+        } else {
+            PARSER_REUSES.incrementAndGet();
+        }
+
+        long start = System.nanoTime();
+        try {
+            return builder.build(is);
+        } finally {
+            metrics.addTime(Phase.PARSE, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return number of parsers created so far by all transformers, at most one per parsing thread
+     */
+    public static long getParserCreationCount() {
+        return PARSER_CREATIONS.get();
+    }
+
+    /**
+     * @return number of documents parsed by already existing parser
+     */
+    public static long getParserReuseCount() {
+        return PARSER_REUSES.get();
+    }
+
+    File getManifestFile() {
+        File outputDir = new File(outputDirectory).getAbsoluteFile();
+        return new File(outputDir.getParentFile(), outputDir.getName() + "." + getClass().getSimpleName()
+            + ".manifest");
+    }
+
+    /**
+     * Adds files merged by the previous build to archive if they have been merged from the same descriptors with the
+     * same settings and haven't been changed since. Otherwise, starts recording manifest of the current build.
+     */
+    private boolean reusePreviousOutput(final Archiver archiver) throws ArchiverException {
+        if (outputDirectory == null) {
+            throw new NullPointerException("outputDirectory can't be null");
+        }
+
+        MergeManifest manifest = new MergeManifest();
+        manifest.setConfiguration(getConfiguration());
+        for (BufferedEntry entry : bufferedEntries) {
+            manifest.addInput(entry.getName(), entry.getContents());
+        }
+
+        File manifestFile = getManifestFile();
+        try {
+            MergeManifest previousManifest = MergeManifest.read(manifestFile);
+            if (previousManifest != null && previousManifest.matches(manifest)) {
+                List<byte[]> outputs = new ArrayList<byte[]>();
+                for (int i = 0; i < previousManifest.getOutputs().size(); i++) {
+                    File file = new File(outputDirectory, previousManifest.getOutputs().get(i));
+                    if (!file.isFile()) {
+                        outputs = null;
+                        break;
+                    }
+
+                    byte[] content;
+                    InputStream is = new FileInputStream(file);
+                    try {
+                        content = IOUtil.toByteArray(is);
+                    } finally {
+                        is.close();
+                    }
+
+                    // modified or partially written file
+                    if (!DescriptorCache.hash(content).equals(previousManifest.getOutputHash(i))) {
+                        getLogger().info("Merged file '" + file + "' has been changed, descriptors are merged again");
+                        outputs = null;
+                        break;
+                    }
+
+                    outputs.add(content);
+                }
+
+                if (outputs != null) {
+                    for (int i = 0; i < outputs.size(); i++) {
+                        addResourceToArchive(previousManifest.getOutputs().get(i), outputs.get(i), archiver);
+                    }
+
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            throw new ArchiverException("Error reading merge manifest '" + manifestFile + "'. Reason: "
+                + e.getMessage(), e);
+        }
+
+        // outputs are going to be overwritten
+        manifestFile.delete();
+        mergeManifest = manifest;
+        return false;
+    }
+
+    private void processBufferedEntries() {
+        for (BufferedEntry entry : bufferedEntries) {
+            currentLocation = entry.getLocation();
+            try {
+                processContents(entry.getName(), new ByteArrayInputStream(entry.getContents()));
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            } catch (JDOMException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            } finally {
+                currentLocation = null;
+            }
+        }
+    }
+
+    private void writeMergeManifest() throws ArchiverException {
+        File manifestFile = getManifestFile();
+        try {
+            mergeManifest.write(manifestFile);
+        } catch (IOException e) {
+            throw new ArchiverException("Error writing merge manifest '" + manifestFile + "'. Reason: "
+                + e.getMessage(), e);
+        }
+    }
+
+    private ExecutorService getParsingExecutor() {
+        if (parsingExecutor == null) {
+            parsingExecutor = Executors.newFixedThreadPool(parallelism, new ParserThreadFactory());
+        }
+
+        return parsingExecutor;
+    }
+
+    private void processPendingDocuments() throws ArchiverException {
+        try {
+            // import is not thread-safe and namespace prefixes are assigned in import order, so documents are processed
+            // sequentially in the order they were encountered
+            for (PendingDocument pendingDocument : pendingDocuments) {
+                String resource = pendingDocument.getResource();
+                Document document;
+                try {
+                    document = pendingDocument.getDocument().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ArchiverException("Interrupted while parsing '" + resource + "'", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw new ArchiverException("Error parsing '" + resource + "'. Reason: " + cause.getMessage(), cause);
+                }
+
+                currentLocation = pendingDocument.getLocation();
+                try {
+                    processDocument(resource, document);
+                } catch (JDOMException e) {
+                    throw new RuntimeException(e.getMessage(), e);
+                } finally {
+                    currentLocation = null;
+                }
+            }
+        } finally {
+            pendingDocuments.clear();
+            if (parsingExecutor != null) {
+                parsingExecutor.shutdownNow();
+                parsingExecutor = null;
+            }
+        }
+    }
+
     protected void resetTransformer() {
+        cachedImports.clear();
         namespacesFactory = new NamespacesTracker();
         hasProcessedConfigFiles = false;
     }
@@ -233,25 +948,33 @@ public abstract class BaseFacesResourceTransformer implements ContainerDescripto
                 return true;
             }
 
+            Archiver drainingArchiver = ResourcesDrainCoordinator.getDrainingArchiver();
+            if (finalized && drainingArchiver != null && drainingArchiver != finalizedArchiver) {
+                // handler is reused for another archive, its resources are drained before it's finalized again
+                finalized = false;
+            }
+
+            if (finalized) {
+                // merged files have been already written, original files are still excluded from archive
+                return false;
+            }
+
             hasProcessedConfigFiles = true;
-            InputStream is = fileInfo.getContents();
+            metrics.addFile();
+            InputStream is = new CountingInputStream(fileInfo.getContents(), metrics);
             try {
-                SAXBuilder builder = new SAXBuilder(false);
-                builder.setExpandEntities(false);
-                // TODO nick - namespace aware?
-                builder.setEntityResolver(new EntityResolver() {
-
-                    @Override
-                    public InputSource resolveEntity(final String publicId, final String systemId) throws SAXException,
-                            IOException {
-                        return new InputSource(new StringReader(""));
-                    }
-                });
-                Document document = builder.build(is);
-                processDocument(fileInfo.getName(), document);
+                if (incremental || reproducible) {
+                    // descriptors are processed only if merged files can't be reused, or in canonical order
+                    bufferedEntries.add(new BufferedEntry(fileInfo.getName(), getLocation(fileInfo),
+                        readContents(is)));
+                } else {
+                    currentLocation = getLocation(fileInfo);
+                    processContents(fileInfo.getName(), is);
+                }
             } catch (JDOMException e) {
                 throw new RuntimeException(e.getMessage(), e);
             } finally {
+                currentLocation = null;
                 try {
                     is.close();
                 } catch (IOException e) {
@@ -267,16 +990,50 @@ public abstract class BaseFacesResourceTransformer implements ContainerDescripto
 
     @Override
     public final void finalizeArchiveCreation(final Archiver archiver) throws ArchiverException {
-        for (final ResourceIterator it = archiver.getResources(); it.hasNext();) {
-            it.next();
-        }
+        ResourcesDrainCoordinator.drain(archiver);
+        finalized = true;
+        finalizedArchiver = archiver;
 
-        if (hasProcessedConfigFiles) {
-            try {
-                writeMergedConfigFiles(archiver);
-            } finally {
+        try {
+            if (reproducible) {
+                Collections.sort(bufferedEntries);
+            }
+
+            if (incremental && hasProcessedConfigFiles && reusePreviousOutput(archiver)) {
                 resetTransformer();
+                return;
             }
+
+            processBufferedEntries();
+            processPendingDocuments();
+
+            if (hasProcessedConfigFiles) {
+                try {
+                    writeMergedConfigFiles(archiver);
+                    if (mergeManifest != null) {
+                        writeMergeManifest();
+                    }
+                } finally {
+                    resetTransformer();
+                }
+            }
+        } finally {
+            bufferedEntries.clear();
+            mergeManifest = null;
+
+            if (descriptorCache != null) {
+                descriptorCache.evict();
+                getLogger().info(descriptorCache.toString());
+            }
+
+            if (metrics.getFilesHandled() != 0) {
+                getLogger().info(getClass().getSimpleName() + ": " + metrics);
+                if (writeMetrics) {
+                    writeMetricsReport();
+                }
+            }
+
+            metrics.reset();
         }
     }
 
@@ -291,4 +1048,205 @@ public abstract class BaseFacesResourceTransformer implements ContainerDescripto
         return hasProcessedConfigFiles;
     }
 
+    /**
+     * Children of root element of merged document, see {@link BaseFacesResourceTransformer#addToArchive(String, Document,
+     * ElementSource, Archiver)}.
+     */
+    protected interface ElementSource {
+
+        /**
+         * @return next child or <code>null</code> if there are no more children
+         */
+        Element next() throws IOException;
+    }
+
+    /**
+     * Import state of document loaded through descriptor cache.
+     */
+    private static final class CachedImport {
+
+        private final String key;
+
+        private boolean hit;
+
+        private final List<Namespace[]> namespaces = new ArrayList<Namespace[]>();
+
+        // imported elements of document read from cache
+        private final Set<Element> importedElements = Collections.newSetFromMap(new IdentityHashMap<Element, Boolean>());
+
+        // imported elements of parsed document, mapped from their source elements
+        private final Map<Element, Element> substitutions = new IdentityHashMap<Element, Element>();
+
+        private Boolean namespacesTracked;
+
+        public CachedImport(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public boolean isHit() {
+            return hit;
+        }
+
+        public void setHit() {
+            hit = true;
+        }
+
+        public List<Namespace[]> getNamespaces() {
+            return namespaces;
+        }
+
+        public Set<Element> getImportedElements() {
+            return importedElements;
+        }
+
+        public Map<Element, Element> getSubstitutions() {
+            return substitutions;
+        }
+
+        /**
+         * Cached namespaces are looked up once, when the first imported element is requested, as its import would do.
+         *
+         * @return <code>true</code> if element has been imported already and its namespaces are tracked the same way
+         */
+        public boolean isImported(Element element, NamespacesTracker tracker) {
+            if (!importedElements.contains(element)) {
+                return false;
+            }
+
+            if (namespacesTracked == null) {
+                namespacesTracked = Boolean.valueOf(tracker.replay(namespaces));
+            }
+
+            return namespacesTracked.booleanValue();
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final TransformerMetrics metrics;
+
+        public CountingInputStream(InputStream in, TransformerMetrics metrics) {
+            super(in);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                metrics.addBytesIn(1);
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                metrics.addBytesIn(count);
+            }
+
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = super.skip(n);
+            metrics.addBytesIn(count);
+            return count;
+        }
+    }
+
+    private static final class BufferedEntry implements Comparable<BufferedEntry> {
+
+        private final String name;
+
+        private final String location;
+
+        private final byte[] contents;
+
+        public BufferedEntry(String name, String location, byte[] contents) {
+            this.name = name;
+            this.location = location;
+            this.contents = contents;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public byte[] getContents() {
+            return contents;
+        }
+
+        /**
+         * Orders entries by name, then by contents, as descriptors of different jars usually have the same name.
+         */
+        public int compareTo(BufferedEntry o) {
+            int result = name.compareTo(o.name);
+            if (result != 0) {
+                return result;
+            }
+
+            int length = Math.min(contents.length, o.contents.length);
+            for (int i = 0; i < length; i++) {
+                int b1 = contents[i] & 0xFF;
+                int b2 = o.contents[i] & 0xFF;
+                if (b1 != b2) {
+                    return b1 < b2 ? -1 : 1;
+                }
+            }
+
+            return contents.length - o.contents.length;
+        }
+    }
+
+    private static final class PendingDocument {
+
+        private final String resource;
+
+        private final String location;
+
+        private final Future<Document> document;
+
+        public PendingDocument(String resource, String location, Future<Document> document) {
+            this.resource = resource;
+            this.location = location;
+            this.document = document;
+        }
+
+        public String getResource() {
+            return resource;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public Future<Document> getDocument() {
+            return document;
+        }
+    }
+
+    private static final class ParserThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "descriptor-parser-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 }
@@ -29,7 +29,6 @@ import java.util.List;
 import org.apache.maven.plugin.assembly.filter.ContainerDescriptorHandler;
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.ArchiverException;
-import org.codehaus.plexus.archiver.ResourceIterator;
 import org.codehaus.plexus.archiver.UnArchiver;
 import org.codehaus.plexus.components.io.fileselectors.FileInfo;
 
@@ -42,6 +41,12 @@ public abstract class BaseResourceTransformer implements ContainerDescriptorHand
 
     private boolean hasProcessedFiles;
 
+    private boolean finalized;
+
+    private Archiver finalizedArchiver;
+
+    private String currentLocation;
+
     protected void resetTransformer() {
         hasProcessedFiles = false;
     }
@@ -51,14 +56,25 @@ public abstract class BaseResourceTransformer implements ContainerDescriptorHand
     @Override
     public final boolean isSelected(final FileInfo fileInfo) throws IOException {
         if (isHandled(fileInfo)) {
+            Archiver drainingArchiver = ResourcesDrainCoordinator.getDrainingArchiver();
+            if (finalized && drainingArchiver != null && drainingArchiver != finalizedArchiver) {
+                // handler is reused for another archive, its resources are drained before it's finalized again
+                finalized = false;
+            }
+
+            if (finalized) {
+                // merged file has been already written, original files are still excluded from archive
+                return false;
+            }
+
             hasProcessedFiles = true;
 
+            currentLocation = BaseFacesResourceTransformer.getLocation(fileInfo);
             InputStream is = fileInfo.getContents();
             try {
-                processFile(fileInfo);
-            } catch (Exception e) {
-                throw new RuntimeException(e.getMessage(), e);
+                processContents(fileInfo.getName(), is);
             } finally {
+                currentLocation = null;
                 try {
                     is.close();
                 } catch (IOException e) {
@@ -72,13 +88,23 @@ public abstract class BaseResourceTransformer implements ContainerDescriptorHand
         }
     }
 
-    protected abstract void processFile(FileInfo fileInfo);
+    /**
+     * @return name of the file being processed qualified by its location, used in messages about its content
+     */
+    protected String describeResource(final String resource) {
+        return currentLocation != null ? currentLocation : resource;
+    }
+
+    /**
+     * Processes contents of handled file. The stream is the only one opened for the file, it's closed by caller.
+     */
+    protected abstract void processContents(String resource, InputStream is) throws IOException;
 
     @Override
     public final void finalizeArchiveCreation(final Archiver archiver) throws ArchiverException {
-        for (final ResourceIterator it = archiver.getResources(); it.hasNext();) {
-            it.next();
-        }
+        ResourcesDrainCoordinator.drain(archiver);
+        finalized = true;
+        finalizedArchiver = archiver;
 
         if (hasProcessedFiles) {
             try {
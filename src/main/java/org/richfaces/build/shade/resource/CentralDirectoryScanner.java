@@ -0,0 +1,402 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+
+/**
+ * Reads entries of jar file through its central directory, without walking the whole archive: jar is memory-mapped,
+ * only central directory records are parsed and only accepted entries are inflated. Zip64 archives are not supported,
+ * {@link #scan(EntryFilter)} returns <code>null</code> for them.
+ * <p/>
+ * Entries are readable until scanner is closed, closing unmaps the jar, so that it's neither locked nor kept in address
+ * space until mapping is garbage collected. Sizes and offsets of entries are checked before they are read.
+ */
+final class CentralDirectoryScanner implements Closeable {
+
+    /**
+     * Decides which entries are read, by their names.
+     */
+    interface EntryFilter {
+
+        boolean accept(String name);
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+    private static final int END_SIZE = 22;
+
+    private static final int CENTRAL_SIZE = 46;
+
+    private static final int LOCAL_SIZE = 30;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int ZIP64_MAGIC = 0xFFFFFFFF;
+
+    private static final int STORED = 0;
+
+    private static final int DEFLATED = 8;
+
+    /**
+     * Maximum compression ratio of deflate format.
+     */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private static final int ENCRYPTED_FLAG = 1;
+
+    private final File file;
+
+    private MappedByteBuffer buffer;
+
+    private CentralDirectoryScanner(File file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return scanner of memory-mapped file, <code>null</code> if file can't be mapped
+     */
+    public static CentralDirectoryScanner open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer buffer;
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            // mapping stays valid after channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            // e.g. address space is exhausted
+            return null;
+        } finally {
+            raf.close();
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        return new CentralDirectoryScanner(file, buffer);
+    }
+
+    private ZipException createException(String message) {
+        return new ZipException(message + " of '" + file + "'");
+    }
+
+    private ByteBuffer getBuffer() throws IOException {
+        if (buffer == null) {
+            throw new IOException("'" + file + "' has been closed");
+        }
+
+        return buffer;
+    }
+
+    /**
+     * @return accepted file entries in central directory order, <code>null</code> if archive can't be read this way
+     */
+    public List<FileInfo> scan(EntryFilter filter) throws IOException {
+        ByteBuffer buffer = getBuffer();
+        int endOffset = findEndRecord(buffer);
+        if (endOffset < 0) {
+            throw new ZipException("'" + file + "' is not a zip file");
+        }
+
+        int entriesCount = buffer.getShort(endOffset + 10) & 0xFFFF;
+        int centralOffset = buffer.getInt(endOffset + 16);
+        if (entriesCount == 0xFFFF || centralOffset == ZIP64_MAGIC) {
+            return null;
+        }
+
+        if (centralOffset < 0 || centralOffset > endOffset) {
+            throw createException("Invalid central directory offset");
+        }
+
+        List<FileInfo> result = new ArrayList<FileInfo>();
+        int offset = centralOffset;
+        for (int i = 0; i < entriesCount; i++) {
+            if (CENTRAL_SIZE > endOffset - offset || buffer.getInt(offset) != CENTRAL_SIGNATURE) {
+                throw createException("Invalid central directory");
+            }
+
+            int nameLength = buffer.getShort(offset + 28) & 0xFFFF;
+            int extraLength = buffer.getShort(offset + 30) & 0xFFFF;
+            int commentLength = buffer.getShort(offset + 32) & 0xFFFF;
+            if (nameLength > endOffset - offset - CENTRAL_SIZE) {
+                throw createException("Invalid central directory");
+            }
+
+            String name = decodeName(buffer, offset + CENTRAL_SIZE, nameLength);
+            if (!name.endsWith("/") && filter.accept(name)) {
+                int method = buffer.getShort(offset + 10) & 0xFFFF;
+                int compressedSize = buffer.getInt(offset + 20);
+                int size = buffer.getInt(offset + 24);
+                int localOffset = buffer.getInt(offset + 42);
+                if (compressedSize == ZIP64_MAGIC || size == ZIP64_MAGIC || localOffset == ZIP64_MAGIC) {
+                    return null;
+                }
+
+                // local header and data precede central directory
+                if (localOffset < 0 || LOCAL_SIZE > centralOffset - localOffset) {
+                    throw createException("Invalid local header offset of '" + name + "'");
+                }
+
+                if (compressedSize < 0 || compressedSize > centralOffset - localOffset - LOCAL_SIZE) {
+                    throw createException("Invalid compressed size of '" + name + "'");
+                }
+
+                if (size < 0 || (method == STORED && size != compressedSize)
+                    || (method == DEFLATED && size > (long) compressedSize * MAX_DEFLATE_RATIO)) {
+                    throw createException("Invalid size of '" + name + "'");
+                }
+
+                result.add(new MappedEntry(name, buffer.getShort(offset + 8) & 0xFFFF, method,
+                    buffer.getInt(offset + 16), compressedSize, size, localOffset));
+            }
+
+            offset += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        return result;
+    }
+
+    /**
+     * Unmaps the file, entries can't be read any more.
+     */
+    public void close() {
+        MappedByteBuffer mappedBuffer = buffer;
+        buffer = null;
+        if (mappedBuffer != null) {
+            unmap(mappedBuffer);
+        }
+    }
+
+    /**
+     * Releases mapping without waiting for garbage collection, if runtime allows it: through cleaner of the buffer up to
+     * Java 8, through {@link sun.misc.Unsafe} since Java 9. Otherwise mapping is released when buffer is collected.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+
+            return;
+        } catch (Exception e) {
+            // not accessible since Java 9
+        }
+
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafeField.setAccessible(true);
+            Method invokeCleanerMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleanerMethod.invoke(theUnsafeField.get(null), buffer);
+        } catch (Exception e) {
+            // left to garbage collector
+        }
+    }
+
+    private static int findEndRecord(ByteBuffer buffer) {
+        int minOffset = Math.max(0, buffer.limit() - END_SIZE - MAX_COMMENT_SIZE);
+        for (int offset = buffer.limit() - END_SIZE; offset >= minOffset; offset--) {
+            if (buffer.getInt(offset) == END_SIGNATURE) {
+                return offset;
+            }
+        }
+
+        return -1;
+    }
+
+    private static String decodeName(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private final class MappedEntry implements PlexusIoResource {
+
+        private final String name;
+
+        private final int flags;
+
+        private final int method;
+
+        private final int crc;
+
+        private final int compressedSize;
+
+        private final int size;
+
+        private final int localOffset;
+
+        public MappedEntry(String name, int flags, int method, int crc, int compressedSize, int size,
+            int localOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localOffset = localOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isFile() {
+            return true;
+        }
+
+        public boolean isDirectory() {
+            return false;
+        }
+
+        public boolean isExisting() {
+            return true;
+        }
+
+        public long getLastModified() {
+            return UNKNOWN_MODIFICATION_DATE;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public URL getURL() throws IOException {
+            return new URL("jar:" + file.toURI().toURL() + "!/" + name);
+        }
+
+        private ZipException createException(String message) {
+            return new ZipException(message + " of '" + name + "' in '" + file + "'");
+        }
+
+        private byte[] readData() throws IOException {
+            ByteBuffer buffer = getBuffer();
+            if (buffer.getInt(localOffset) != LOCAL_SIGNATURE) {
+                throw createException("Invalid local header");
+            }
+
+            int dataOffset = localOffset + LOCAL_SIZE + (buffer.getShort(localOffset + 26) & 0xFFFF)
+                + (buffer.getShort(localOffset + 28) & 0xFFFF);
+            if (compressedSize > buffer.limit() - dataOffset) {
+                throw createException("Truncated data");
+            }
+
+            byte[] data = new byte[compressedSize];
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(dataOffset);
+            duplicate.get(data);
+            return data;
+        }
+
+        private byte[] inflate(byte[] data) throws IOException {
+            byte[] result = new byte[size];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data);
+                boolean dummyByteAdded = false;
+                int count = 0;
+                while (count < size) {
+                    int inflated = inflater.inflate(result, count, size - count);
+                    if (inflated == 0) {
+                        if (inflater.finished() || inflater.needsDictionary() || dummyByteAdded) {
+                            break;
+                        }
+
+                        // inflater without zlib header may need an extra dummy byte
+                        inflater.setInput(new byte[1]);
+                        dummyByteAdded = true;
+                    }
+                    count += inflated;
+                }
+
+                if (count != size) {
+                    throw createException("Unexpected size");
+                }
+            } catch (DataFormatException e) {
+                throw createException("Invalid compressed data (" + e.getMessage() + ")");
+            } finally {
+                inflater.end();
+            }
+
+            return result;
+        }
+
+        public InputStream getContents() throws IOException {
+            if ((flags & ENCRYPTED_FLAG) != 0) {
+                throw createException("Encrypted contents");
+            }
+
+            byte[] contents;
+            if (method == STORED) {
+                contents = readData();
+            } else if (method == DEFLATED) {
+                contents = inflate(readData());
+            } else {
+                throw createException("Unsupported compression method " + method);
+            }
+
+            CRC32 checksum = new CRC32();
+            checksum.update(contents);
+            if ((int) checksum.getValue() != crc) {
+                throw createException("Invalid checksum");
+            }
+
+            return new ByteArrayInputStream(contents);
+        }
+    }
+}
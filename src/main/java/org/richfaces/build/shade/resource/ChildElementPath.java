@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.util.List;
+
+import org.jdom.Element;
+
+/**
+ * Direct lookup of child elements for "./javaee:name|./name" expressions, the only XPath shape used by transformers.
+ * Instances are immutable and can be shared between threads.
+ */
+final class ChildElementPath {
+
+    private final String namespaceUri;
+
+    private final String name;
+
+    public ChildElementPath(String namespaceUri, String name) {
+        super();
+        this.namespaceUri = namespaceUri;
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return first child element with the given name, either in the path namespace or in no namespace
+     */
+    public Element selectElement(Element context) {
+        @SuppressWarnings("unchecked")
+        List<Element> children = context.getChildren();
+        for (Element child : children) {
+            if (name.equals(child.getName())) {
+                String childNamespaceUri = child.getNamespaceURI();
+                if (childNamespaceUri.length() == 0 || namespaceUri.equals(childNamespaceUri)) {
+                    return child;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return string value of the selected element, empty string if there is no such element
+     */
+    public String valueOf(Element context) {
+        Element element = selectElement(context);
+        return element != null ? element.getValue() : "";
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reader of binary index of merged faces-config.xml, written next to it by {@link FacesConfigXmlResourceTransformer}
+ * if {@link FacesConfigXmlResourceTransformer#setComponentRegistry(boolean)} is set. Index is loaded without XML
+ * parsing and depends on JDK only.
+ * <p>
+ * Format: magic, version, sorted table of UTF-8 strings with offsets array, then for every {@link Section} entries
+ * count and arrays of key and value indexes in the strings table, keys are sorted.
+ */
+public final class ComponentRegistry {
+
+    public static final String REGISTRY_FILE_PATH = "META-INF/faces-config.registry";
+
+    /**
+     * Default render kit id, used for render kits without id.
+     */
+    public static final String HTML_BASIC_RENDER_KIT = "HTML_BASIC";
+
+    static final int MAGIC = 0x46435247;
+
+    static final int VERSION = 1;
+
+    /**
+     * Separator of parts of composite keys, the character can't appear in XML.
+     */
+    static final char KEY_SEPARATOR = '\u0000';
+
+    private static final String UTF_8 = "UTF-8";
+
+    /**
+     * Maps of the registry, keys are mapped to class names.
+     */
+    public enum Section {
+        COMPONENT,
+        CONVERTER,
+        CONVERTER_FOR_CLASS,
+        VALIDATOR,
+        BEHAVIOR,
+        /**
+         * Key is render kit id, component family and renderer type joined by {@link ComponentRegistry#KEY_SEPARATOR}.
+         */
+        RENDERER,
+        /**
+         * Key is render kit id and client behavior renderer type joined by {@link ComponentRegistry#KEY_SEPARATOR}.
+         */
+        CLIENT_BEHAVIOR_RENDERER
+    }
+
+    private final String[] strings;
+
+    private final int[][] keys;
+
+    private final int[][] values;
+
+    private ComponentRegistry(String[] strings, int[][] keys, int[][] values) {
+        this.strings = strings;
+        this.keys = keys;
+        this.values = values;
+    }
+
+    private static int[] readInts(DataInputStream is, int count) throws IOException {
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = is.readInt();
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads registry from the stream, the stream is not closed.
+     */
+    public static ComponentRegistry read(InputStream stream) throws IOException {
+        DataInputStream is = new DataInputStream(stream);
+        if (is.readInt() != MAGIC) {
+            throw new IOException("Not a component registry");
+        }
+
+        int version = is.readUnsignedShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported component registry version " + version);
+        }
+
+        int stringsCount = is.readInt();
+        int[] offsets = readInts(is, stringsCount + 1);
+        byte[] bytes = new byte[offsets[stringsCount]];
+        is.readFully(bytes);
+
+        String[] strings = new String[stringsCount];
+        for (int i = 0; i < stringsCount; i++) {
+            strings[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], UTF_8);
+        }
+
+        int sectionsCount = is.readUnsignedByte();
+        Section[] sections = Section.values();
+        int[][] keys = new int[sections.length][];
+        int[][] values = new int[sections.length][];
+        for (int i = 0; i < sections.length; i++) {
+            if (i < sectionsCount) {
+                int entriesCount = is.readInt();
+                keys[i] = readInts(is, entriesCount);
+                values[i] = readInts(is, entriesCount);
+            } else {
+                keys[i] = new int[0];
+                values[i] = new int[0];
+            }
+        }
+
+        return new ComponentRegistry(strings, keys, values);
+    }
+
+    /**
+     * @return class name mapped to the key in the section, <code>null</code> if there is no such key
+     */
+    public String get(Section section, String key) {
+        int stringIndex = Arrays.binarySearch(strings, key);
+        if (stringIndex < 0) {
+            return null;
+        }
+
+        int entryIndex = Arrays.binarySearch(keys[section.ordinal()], stringIndex);
+        if (entryIndex < 0) {
+            return null;
+        }
+
+        return strings[values[section.ordinal()][entryIndex]];
+    }
+
+    /**
+     * @return all entries of the section, sorted by keys
+     */
+    public Map<String, String> getEntries(Section section) {
+        int[] sectionKeys = keys[section.ordinal()];
+        int[] sectionValues = values[section.ordinal()];
+
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (int i = 0; i < sectionKeys.length; i++) {
+            result.put(strings[sectionKeys[i]], strings[sectionValues[i]]);
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    public String getComponentClass(String componentType) {
+        return get(Section.COMPONENT, componentType);
+    }
+
+    public String getConverterClass(String converterId) {
+        return get(Section.CONVERTER, converterId);
+    }
+
+    public String getConverterClassForClass(String forClass) {
+        return get(Section.CONVERTER_FOR_CLASS, forClass);
+    }
+
+    public String getValidatorClass(String validatorId) {
+        return get(Section.VALIDATOR, validatorId);
+    }
+
+    public String getBehaviorClass(String behaviorId) {
+        return get(Section.BEHAVIOR, behaviorId);
+    }
+
+    public String getRendererClass(String renderKitId, String componentFamily, String rendererType) {
+        return get(Section.RENDERER, renderKitId + KEY_SEPARATOR + componentFamily + KEY_SEPARATOR + rendererType);
+    }
+
+    public String getClientBehaviorRendererClass(String renderKitId, String rendererType) {
+        return get(Section.CLIENT_BEHAVIOR_RENDERER, renderKitId + KEY_SEPARATOR + rendererType);
+    }
+}
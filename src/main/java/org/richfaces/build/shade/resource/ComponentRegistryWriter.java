@@ -0,0 +1,229 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jdom.Element;
+import org.richfaces.build.shade.resource.ComponentRegistry.Section;
+
+/**
+ * Collects class names of components, converters, validators, behaviors and renderers from merged faces-config.xml
+ * and writes them in {@link ComponentRegistry} format. Later definitions override earlier ones, as in JSF runtime.
+ * Streaming merge has no merged document, so it adds {@link Definitions} of the elements in the order they are
+ * written instead.
+ */
+final class ComponentRegistryWriter {
+
+    private static final String JAVAEE_URI = BaseFacesResourceTransformer.JAVAEE_URI;
+
+    private final Map<Section, Map<String, String>> sections = new EnumMap<Section, Map<String, String>>(
+        Section.class);
+
+    public ComponentRegistryWriter() {
+        super();
+        for (Section section : Section.values()) {
+            sections.put(section, new TreeMap<String, String>());
+        }
+    }
+
+    private static boolean isJavaEEOrDefaultNamespace(Element element) {
+        String namespaceUri = element.getNamespaceURI();
+        return namespaceUri.length() == 0 || JAVAEE_URI.equals(namespaceUri);
+    }
+
+    private static String valueOf(Element element, String childName) {
+        return new ChildElementPath(JAVAEE_URI, childName).valueOf(element).trim();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Element> getChildren(Element element) {
+        return element.getChildren();
+    }
+
+    /**
+     * @return definitions of the top-level child of faces-config, <code>null</code> if there are none
+     */
+    static Definitions collect(Element child) {
+        if (!isJavaEEOrDefaultNamespace(child)) {
+            return null;
+        }
+
+        Definitions definitions = new Definitions();
+        String name = child.getName();
+        if ("component".equals(name)) {
+            definitions.put(Section.COMPONENT, valueOf(child, "component-type"), valueOf(child, "component-class"));
+        } else if ("converter".equals(name)) {
+            String converterClass = valueOf(child, "converter-class");
+            definitions.put(Section.CONVERTER, valueOf(child, "converter-id"), converterClass);
+            definitions.put(Section.CONVERTER_FOR_CLASS, valueOf(child, "converter-for-class"), converterClass);
+        } else if ("validator".equals(name)) {
+            definitions.put(Section.VALIDATOR, valueOf(child, "validator-id"), valueOf(child, "validator-class"));
+        } else if ("behavior".equals(name)) {
+            definitions.put(Section.BEHAVIOR, valueOf(child, "behavior-id"), valueOf(child, "behavior-class"));
+        }
+
+        return definitions.isEmpty() ? null : definitions;
+    }
+
+    /**
+     * @param renderKitId value of render-kit-id element, default render kit is used if it's empty
+     * @return definitions of the child of render-kit, <code>null</code> if there are none
+     */
+    static Definitions collect(Element child, String renderKitId) {
+        if (!isJavaEEOrDefaultNamespace(child)) {
+            return null;
+        }
+
+        String trimmedRenderKitId = renderKitId.trim();
+        if (trimmedRenderKitId.length() == 0) {
+            trimmedRenderKitId = ComponentRegistry.HTML_BASIC_RENDER_KIT;
+        }
+
+        Definitions definitions = new Definitions();
+        String name = child.getName();
+        if ("renderer".equals(name)) {
+            String family = valueOf(child, "component-family");
+            String type = valueOf(child, "renderer-type");
+            if (family.length() != 0 && type.length() != 0) {
+                definitions.put(Section.RENDERER, trimmedRenderKitId + ComponentRegistry.KEY_SEPARATOR + family
+                    + ComponentRegistry.KEY_SEPARATOR + type, valueOf(child, "renderer-class"));
+            }
+        } else if ("client-behavior-renderer".equals(name)) {
+            String type = valueOf(child, "client-behavior-renderer-type");
+            if (type.length() != 0) {
+                definitions.put(Section.CLIENT_BEHAVIOR_RENDERER, trimmedRenderKitId
+                    + ComponentRegistry.KEY_SEPARATOR + type, valueOf(child, "client-behavior-renderer-class"));
+            }
+        }
+
+        return definitions.isEmpty() ? null : definitions;
+    }
+
+    /**
+     * Adds definitions from faces-config root element.
+     */
+    public void add(Element facesConfig) {
+        for (Element child : getChildren(facesConfig)) {
+            if ("render-kit".equals(child.getName()) && isJavaEEOrDefaultNamespace(child)) {
+                String renderKitId = valueOf(child, "render-kit-id");
+                for (Element renderKitChild : getChildren(child)) {
+                    add(collect(renderKitChild, renderKitId));
+                }
+            } else {
+                add(collect(child));
+            }
+        }
+    }
+
+    /**
+     * @param definitions definitions of a single element, can be <code>null</code>
+     */
+    public void add(Definitions definitions) {
+        if (definitions == null) {
+            return;
+        }
+
+        for (int i = 0; i < definitions.sections.size(); i++) {
+            sections.get(definitions.sections.get(i)).put(definitions.keys.get(i), definitions.values.get(i));
+        }
+    }
+
+    public byte[] toByteArray() throws IOException {
+        TreeSet<String> stringsSet = new TreeSet<String>();
+        for (Map<String, String> section : sections.values()) {
+            stringsSet.addAll(section.keySet());
+            stringsSet.addAll(section.values());
+        }
+
+        List<String> strings = new ArrayList<String>(stringsSet);
+        Map<String, Integer> indexes = new HashMap<String, Integer>();
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        int[] offsets = new int[strings.size() + 1];
+        for (int i = 0; i < strings.size(); i++) {
+            String s = strings.get(i);
+            indexes.put(s, Integer.valueOf(i));
+            offsets[i] = stringBytes.size();
+            stringBytes.write(s.getBytes("UTF-8"));
+        }
+        offsets[strings.size()] = stringBytes.size();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream os = new DataOutputStream(bytes);
+        os.writeInt(ComponentRegistry.MAGIC);
+        os.writeShort(ComponentRegistry.VERSION);
+
+        os.writeInt(strings.size());
+        for (int offset : offsets) {
+            os.writeInt(offset);
+        }
+        stringBytes.writeTo(os);
+
+        os.writeByte(sections.size());
+        for (Map<String, String> section : sections.values()) {
+            os.writeInt(section.size());
+            // keys are sorted the same way as strings table, so their indexes are sorted too
+            for (String key : section.keySet()) {
+                os.writeInt(indexes.get(key).intValue());
+            }
+            for (String value : section.values()) {
+                os.writeInt(indexes.get(value).intValue());
+            }
+        }
+
+        os.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Registry entries defined by a single element of faces-config.xml.
+     */
+    static final class Definitions {
+
+        private final List<Section> sections = new ArrayList<Section>(2);
+
+        private final List<String> keys = new ArrayList<String>(2);
+
+        private final List<String> values = new ArrayList<String>(2);
+
+        private void put(Section section, String key, String value) {
+            if (key.length() != 0 && value.length() != 0) {
+                sections.add(section);
+                keys.add(key);
+                values.add(value);
+            }
+        }
+
+        private boolean isEmpty() {
+            return sections.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+
+/**
+ * On-disk cache of imported descriptors, keyed by format version, transformer and SHA-1 hash of descriptor content.
+ * Documents are stored in {@link DescriptorCodec} form, with elements that have been imported by transformer in place
+ * of the source ones, together with namespaces the import has looked up. File modification time is used as last access
+ * time, so least recently used entries are evicted first when the cache grows over its size limit. The directory may
+ * be shared with other files: only files named as cache entries are ever deleted.
+ */
+final class DescriptorCache {
+
+    private static final String FILE_EXTENSION = ".bin";
+
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    private static final String KEY_PREFIX = "v" + DescriptorCodec.FORMAT_VERSION + "-";
+
+    private static final String HASH_PATTERN = "[0-9a-f]{40}";
+
+    private static final String KEY_PATTERN = "v\\d+-[\\w$]*-" + HASH_PATTERN;
+
+    private static final Pattern ENTRY_PATTERN = Pattern.compile(KEY_PATTERN + Pattern.quote(FILE_EXTENSION));
+
+    // entries of the first format, keyed by the content hash only
+    private static final Pattern LEGACY_ENTRY_PATTERN = Pattern.compile(HASH_PATTERN + "\\.jdom");
+
+    // File.createTempFile() inserts random number between the key and the extension
+    private static final Pattern TEMP_FILE_PATTERN = Pattern.compile("(?:" + KEY_PATTERN + "|" + HASH_PATTERN
+        + ")\\d+" + Pattern.quote(TEMP_FILE_EXTENSION));
+
+    // temporary files of a crashed build, younger ones may still be written by a concurrent build
+    private static final long TEMP_FILE_EXPIRATION = TimeUnit.HOURS.toMillis(1);
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+
+    private final long maxSize;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DescriptorCache(File directory, long maxSize) {
+        super();
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param kind kind of descriptors, entries of different transformers are kept apart
+     */
+    static String key(String kind, byte[] content) {
+        return KEY_PREFIX + kind + "-" + hash(content);
+    }
+
+    static String hash(byte[] content) {
+        return toHex(createDigest().digest(content));
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+
+        return new String(chars);
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + FILE_EXTENSION);
+    }
+
+    /**
+     * @param namespaces receives namespaces looked up by import of the document
+     * @param importedElements receives imported elements of the document
+     * @return cached document or <code>null</code>
+     */
+    public Document get(String key, List<Namespace[]> namespaces, Set<Element> importedElements) {
+        File file = getFile(key);
+        if (file.isFile()) {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    Document document = DescriptorCodec.decode(in, file.length(), namespaces, importedElements);
+                    file.setLastModified(System.currentTimeMillis());
+                    hits.incrementAndGet();
+                    return document;
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                // corrupted or truncated entry - parse descriptor again
+                discard(file, namespaces, importedElements);
+            } catch (RuntimeException e) {
+                // corrupted names or structure rejected by JDOM
+                discard(file, namespaces, importedElements);
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private static void discard(File file, List<Namespace[]> namespaces, Set<Element> importedElements) {
+        namespaces.clear();
+        importedElements.clear();
+        file.delete();
+    }
+
+    /**
+     * @param substitutions imported elements mapped from the source elements they have been imported from
+     * @param namespaces source namespaces looked up by the import, mapped to the tracked ones
+     */
+    public void put(String key, Document document, Map<Element, Element> substitutions, List<Namespace[]> namespaces)
+        throws IOException {
+        directory.mkdirs();
+
+        // entry becomes visible only when completely written
+        File tempFile = File.createTempFile(key, TEMP_FILE_EXTENSION, directory);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                DescriptorCodec.encode(document, substitutions, namespaces, out);
+            } finally {
+                out.close();
+            }
+
+            File file = getFile(key);
+            if (!tempFile.renameTo(file)) {
+                file.delete();
+                tempFile.renameTo(file);
+            }
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    public void evict() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+
+            @Override
+            public int compare(File o1, File o2) {
+                long l1 = o1.lastModified();
+                long l2 = o2.lastModified();
+                return l1 > l2 ? -1 : (l1 == l2 ? 0 : 1);
+            }
+        });
+
+        long expiredTempFileTime = System.currentTimeMillis() - TEMP_FILE_EXPIRATION;
+        long size = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (TEMP_FILE_PATTERN.matcher(name).matches()) {
+                if (file.lastModified() < expiredTempFileTime) {
+                    file.delete();
+                }
+
+                continue;
+            }
+
+            boolean entry = ENTRY_PATTERN.matcher(name).matches();
+            if (!entry && !LEGACY_ENTRY_PATTERN.matcher(name).matches()) {
+                // not a cache file
+                continue;
+            }
+
+            if (!entry || !name.startsWith(KEY_PREFIX)) {
+                // written in another format, can't be read anymore
+                if (file.delete()) {
+                    evictions.incrementAndGet();
+                }
+
+                continue;
+            }
+
+            size += file.length();
+            if (size > maxSize && file.delete()) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "descriptor cache " + directory + ": " + hits + " hits, " + misses + " misses, " + evictions
+            + " evicted";
+    }
+}
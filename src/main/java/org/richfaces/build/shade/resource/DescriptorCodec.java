@@ -0,0 +1,368 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jdom.Attribute;
+import org.jdom.CDATA;
+import org.jdom.Comment;
+import org.jdom.Content;
+import org.jdom.DocType;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.EntityRef;
+import org.jdom.Namespace;
+import org.jdom.Parent;
+import org.jdom.ProcessingInstruction;
+import org.jdom.Text;
+import org.jdom.UncheckedJDOMFactory;
+
+/**
+ * Compact binary form of descriptor documents kept by {@link DescriptorCache} and of elements spilled to disk by
+ * {@link SortedRuns}. Names, namespaces and other strings are written once and then referenced by index. Format doesn't depend on JDOM classes, so entries stay readable after JDOM
+ * upgrades; {@link #FORMAT_VERSION} is a part of cache keys and has to be changed together with the format.
+ */
+final class DescriptorCodec {
+
+    static final int FORMAT_VERSION = 2;
+
+    private static final int ELEMENT = 1;
+
+    private static final int TEXT = 2;
+
+    private static final int CDATA_SECTION = 3;
+
+    private static final int COMMENT = 4;
+
+    private static final int PROCESSING_INSTRUCTION = 5;
+
+    private static final int ENTITY_REF = 6;
+
+    private static final int DOC_TYPE = 7;
+
+    private static final int IMPORTED_ELEMENT = 8;
+
+    private static final int NULL_STRING = -1;
+
+    private static final int NEW_STRING = -2;
+
+    // decoded content has been valid when it was encoded
+    private static final UncheckedJDOMFactory FACTORY = new UncheckedJDOMFactory();
+
+    private DescriptorCodec() {
+    }
+
+    /**
+     * @param substitutions elements that are written instead of the document elements they are mapped to
+     */
+    public static void encode(Document document, Map<Element, Element> substitutions, List<Namespace[]> namespaces,
+        DataOutputStream out) throws IOException {
+        Writer writer = new Writer(out, substitutions);
+        out.writeInt(FORMAT_VERSION);
+
+        out.writeInt(namespaces.size());
+        for (Namespace[] pair : namespaces) {
+            writer.writeNamespace(pair[0]);
+            writer.writeNamespace(pair[1]);
+        }
+
+        writer.writeContent(document.getContent());
+    }
+
+    /**
+     * @param limit size of the encoded data, no string or list read can be longer
+     * @param namespaces receives namespaces written by {@link #encode(Document, Map, List, DataOutputStream)}
+     * @param importedElements receives elements that have been written in place of the substituted ones
+     */
+    public static Document decode(DataInputStream in, long limit, List<Namespace[]> namespaces,
+        Set<Element> importedElements) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version");
+        }
+
+        Reader reader = new Reader(in, limit, importedElements);
+
+        int namespacesCount = reader.readCount();
+        for (int i = 0; i < namespacesCount; i++) {
+            namespaces.add(new Namespace[] {reader.readNamespace(), reader.readNamespace()});
+        }
+
+        Document document = new Document();
+        reader.readContent(document);
+        return document;
+    }
+
+    /**
+     * Writes single element with its own strings table, elements written one after another are read back one by one
+     * without keeping strings of the previous ones in memory.
+     */
+    public static void encode(Element element, DataOutputStream out) throws IOException {
+        new Writer(out, Collections.<Element, Element>emptyMap()).writeElement(element);
+    }
+
+    /**
+     * @param limit size of the encoded data, no string or list read can be longer
+     * @return detached element written by {@link #encode(Element, DataOutputStream)}
+     */
+    public static Element decodeElement(DataInputStream in, long limit) throws IOException {
+        return new Reader(in, limit, Collections.<Element>emptySet()).readElement();
+    }
+
+    private static final class Writer {
+
+        private final DataOutputStream out;
+
+        private final Map<Element, Element> substitutions;
+
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        public Writer(DataOutputStream out, Map<Element, Element> substitutions) {
+            this.out = out;
+            this.substitutions = substitutions;
+        }
+
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                out.writeInt(NULL_STRING);
+                return;
+            }
+
+            Integer index = strings.get(s);
+            if (index != null) {
+                out.writeInt(index.intValue());
+                return;
+            }
+
+            strings.put(s, Integer.valueOf(strings.size()));
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(NEW_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        void writeNamespace(Namespace namespace) throws IOException {
+            writeString(namespace.getPrefix());
+            writeString(namespace.getURI());
+        }
+
+        void writeContent(List<?> content) throws IOException {
+            out.writeInt(content.size());
+            for (int i = 0; i < content.size(); i++) {
+                Object node = content.get(i);
+                if (node instanceof Element) {
+                    Element element = (Element) node;
+                    Element substitution = substitutions.get(element);
+                    if (substitution != null) {
+                        out.writeByte(IMPORTED_ELEMENT);
+                        writeElement(substitution);
+                    } else {
+                        out.writeByte(ELEMENT);
+                        writeElement(element);
+                    }
+                } else if (node instanceof CDATA) {
+                    out.writeByte(CDATA_SECTION);
+                    writeString(((CDATA) node).getText());
+                } else if (node instanceof Text) {
+                    out.writeByte(TEXT);
+                    writeString(((Text) node).getText());
+                } else if (node instanceof Comment) {
+                    out.writeByte(COMMENT);
+                    writeString(((Comment) node).getText());
+                } else if (node instanceof ProcessingInstruction) {
+                    ProcessingInstruction pi = (ProcessingInstruction) node;
+                    out.writeByte(PROCESSING_INSTRUCTION);
+                    writeString(pi.getTarget());
+                    writeString(pi.getData());
+                } else if (node instanceof EntityRef) {
+                    EntityRef entityRef = (EntityRef) node;
+                    out.writeByte(ENTITY_REF);
+                    writeString(entityRef.getName());
+                    writeString(entityRef.getPublicID());
+                    writeString(entityRef.getSystemID());
+                } else if (node instanceof DocType) {
+                    DocType docType = (DocType) node;
+                    out.writeByte(DOC_TYPE);
+                    writeString(docType.getElementName());
+                    writeString(docType.getPublicID());
+                    writeString(docType.getSystemID());
+                    writeString(docType.getInternalSubset());
+                } else {
+                    throw new IOException("Unsupported content: " + node);
+                }
+            }
+        }
+
+        private void writeElement(Element element) throws IOException {
+            writeString(element.getName());
+            writeNamespace(element.getNamespace());
+
+            List<?> additionalNamespaces = element.getAdditionalNamespaces();
+            out.writeInt(additionalNamespaces.size());
+            for (int i = 0; i < additionalNamespaces.size(); i++) {
+                writeNamespace((Namespace) additionalNamespaces.get(i));
+            }
+
+            List<?> attributes = element.getAttributes();
+            out.writeInt(attributes.size());
+            for (int i = 0; i < attributes.size(); i++) {
+                Attribute attribute = (Attribute) attributes.get(i);
+                writeString(attribute.getName());
+                writeNamespace(attribute.getNamespace());
+                writeString(attribute.getValue());
+                out.writeInt(attribute.getAttributeType());
+            }
+
+            writeContent(element.getContent());
+        }
+    }
+
+    private static final class Reader {
+
+        private final DataInputStream in;
+
+        private final long limit;
+
+        private final Set<Element> importedElements;
+
+        private final List<String> strings = new ArrayList<String>();
+
+        public Reader(DataInputStream in, long limit, Set<Element> importedElements) {
+            this.in = in;
+            this.limit = limit;
+            this.importedElements = importedElements;
+        }
+
+        // every item takes at least one byte, so damaged data can't make reader allocate more than its size
+        int readCount() throws IOException {
+            int count = in.readInt();
+            if (count < 0 || count > limit) {
+                throw new IOException("Invalid length: " + count);
+            }
+
+            return count;
+        }
+
+        String readString() throws IOException {
+            int index = in.readInt();
+            if (index == NULL_STRING) {
+                return null;
+            }
+
+            if (index != NEW_STRING) {
+                if (index < 0 || index >= strings.size()) {
+                    throw new IOException("Invalid string index: " + index);
+                }
+
+                return strings.get(index);
+            }
+
+            byte[] bytes = new byte[readCount()];
+            in.readFully(bytes);
+            String s = new String(bytes, "UTF-8");
+            strings.add(s);
+            return s;
+        }
+
+        Namespace readNamespace() throws IOException {
+            String prefix = readString();
+            return Namespace.getNamespace(prefix, readString());
+        }
+
+        void readContent(Parent parent) throws IOException {
+            int size = readCount();
+            for (int i = 0; i < size; i++) {
+                Content content;
+                int type = in.readByte();
+                switch (type) {
+                    case ELEMENT:
+                        content = readElement();
+                        break;
+                    case IMPORTED_ELEMENT:
+                        Element element = readElement();
+                        importedElements.add(element);
+                        content = element;
+                        break;
+                    case TEXT:
+                        content = FACTORY.text(readString());
+                        break;
+                    case CDATA_SECTION:
+                        content = FACTORY.cdata(readString());
+                        break;
+                    case COMMENT:
+                        content = FACTORY.comment(readString());
+                        break;
+                    case PROCESSING_INSTRUCTION:
+                        String target = readString();
+                        content = FACTORY.processingInstruction(target, readString());
+                        break;
+                    case ENTITY_REF:
+                        String name = readString();
+                        String publicId = readString();
+                        content = FACTORY.entityRef(name, publicId, readString());
+                        break;
+                    case DOC_TYPE:
+                        String elementName = readString();
+                        String docTypePublicId = readString();
+                        DocType docType = FACTORY.docType(elementName, docTypePublicId, readString());
+                        docType.setInternalSubset(readString());
+                        content = docType;
+                        break;
+                    default:
+                        throw new IOException("Invalid content type: " + type);
+                }
+
+                FACTORY.addContent(parent, content);
+            }
+        }
+
+        private Element readElement() throws IOException {
+            String name = readString();
+            Element element = FACTORY.element(name, readNamespace());
+
+            int additionalNamespacesCount = readCount();
+            for (int i = 0; i < additionalNamespacesCount; i++) {
+                FACTORY.addNamespaceDeclaration(element, readNamespace());
+            }
+
+            int attributesCount = readCount();
+            for (int i = 0; i < attributesCount; i++) {
+                String attributeName = readString();
+                Namespace attributeNamespace = readNamespace();
+                String value = readString();
+                FACTORY.setAttribute(element, FACTORY.attribute(attributeName, value, in.readInt(),
+                    attributeNamespace));
+            }
+
+            readContent(element);
+            return element;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.codehaus.plexus.logging.Logger;
+
+/**
+ * Hash index of merged entries by their identifying key (component type, renderer family and type, tag name, etc.),
+ * duplicate definitions are resolved as entries are imported, before the merged lists are sorted.
+ */
+final class DuplicatesIndex<T> {
+
+    public enum DuplicatePolicy {
+        KEEP_FIRST, KEEP_LAST, FAIL, WARN;
+
+        public static DuplicatePolicy forName(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ENGLISH).replace('-', '_'));
+        }
+    }
+
+    private final DuplicatePolicy policy;
+
+    private final Logger logger;
+
+    private final Map<String, Entry<T>> entries = new HashMap<String, Entry<T>>();
+
+    private int duplicatesCount;
+
+    public DuplicatesIndex(DuplicatePolicy policy, Logger logger) {
+        super();
+        this.policy = policy;
+        this.logger = logger;
+    }
+
+    private static String describe(String resource) {
+        return resource != null ? resource : "unknown resource";
+    }
+
+    /**
+     * Adds item to the list, unless it duplicates an already added item and policy says otherwise. With
+     * {@link DuplicatePolicy#KEEP_LAST} the previously added item is replaced in its list, so that list shouldn't be
+     * reordered until all items are added.
+     * 
+     * @param key identifying key of the item, <code>null</code> if item has no key
+     * @param resource name of the file item comes from, used in messages
+     */
+    public void add(String key, String resource, T item, List<T> list) {
+        add(key, resource, item, list, false);
+    }
+
+    /**
+     * Adds item that overrides previously added items with the same key, like renderers registered in a render kit. It
+     * works as {@link #add(String, String, Object, List)}, except that {@link DuplicatePolicy#WARN} keeps only the last
+     * item, which is the one that takes effect at runtime anyway.
+     */
+    public void addOverriding(String key, String resource, T item, List<T> list) {
+        add(key, resource, item, list, true);
+    }
+
+    private void add(String key, String resource, T item, List<T> list, boolean overriding) {
+        Entry<T> entry = key != null ? entries.get(key) : null;
+        if (entry == null) {
+            list.add(item);
+            if (key != null) {
+                entries.put(key, new Entry<T>(resource, list, list.size() - 1));
+            }
+
+            return;
+        }
+
+        duplicatesCount++;
+        String message = MessageFormat.format("Duplicate {0} in ''{1}'' and ''{2}''", key, describe(entry.resource),
+            describe(resource));
+
+        switch (policy) {
+            case KEEP_FIRST:
+                logger.debug(message + ", keeping the first one");
+                break;
+            case KEEP_LAST:
+                logger.debug(message + ", keeping the last one");
+                entry.list.set(entry.index, item);
+                entry.resource = resource;
+                break;
+            case FAIL:
+                throw new IllegalArgumentException(message);
+            default:
+                if (overriding) {
+                    logger.warn(message + ", keeping the last one");
+                    entry.list.set(entry.index, item);
+                    entry.resource = resource;
+                } else {
+                    logger.warn(message);
+                    list.add(item);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Registers item that can't be replaced once it's added, e.g. because it's spilled to disk, and returns whether it
+     * should be added. With {@link DuplicatePolicy#KEEP_LAST} all items are added, then {@link #isLast(String)} tells
+     * which of them to keep.
+     */
+    public boolean register(String key, String resource) {
+        if (key == null) {
+            return true;
+        }
+
+        Entry<T> entry = entries.get(key);
+        if (entry == null) {
+            entries.put(key, new Entry<T>(resource, null, -1));
+            return true;
+        }
+
+        entry.count++;
+        duplicatesCount++;
+        String message = MessageFormat.format("Duplicate {0} in ''{1}'' and ''{2}''", key, describe(entry.resource),
+            describe(resource));
+
+        switch (policy) {
+            case KEEP_FIRST:
+                logger.debug(message + ", keeping the first one");
+                return false;
+            case KEEP_LAST:
+                logger.debug(message + ", keeping the last one");
+                entry.resource = resource;
+                return true;
+            case FAIL:
+                throw new IllegalArgumentException(message);
+            default:
+                logger.warn(message);
+                return true;
+        }
+    }
+
+    /**
+     * Should be called for registered items in the order they were added, returns <code>false</code> for items
+     * replaced by later duplicates.
+     */
+    public boolean isLast(String key) {
+        if (key == null || policy != DuplicatePolicy.KEEP_LAST) {
+            return true;
+        }
+
+        Entry<T> entry = entries.get(key);
+        entry.count--;
+        return entry.count == 0;
+    }
+
+    public DuplicatePolicy getPolicy() {
+        return policy;
+    }
+
+    public int getDuplicatesCount() {
+        return duplicatesCount;
+    }
+
+    private static final class Entry<T> {
+
+        private String resource;
+
+        private final List<T> list;
+
+        private final int index;
+
+        private int count = 1;
+
+        public Entry(String resource, List<T> list, int index) {
+            this.resource = resource;
+            this.list = list;
+            this.index = index;
+        }
+    }
+}
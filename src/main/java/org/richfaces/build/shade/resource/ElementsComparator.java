@@ -21,13 +21,15 @@
  */
 package org.richfaces.build.shade.resource;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 
 import org.jdom.Element;
-import org.jdom.JDOMException;
-import org.jdom.xpath.XPath;
 
 /**
  * @author Nick Belaevski
@@ -37,56 +39,162 @@ class ElementsComparator implements Comparator<Element> {
 
     private String namespaceUri;
 
-    private List<String> orderedElementNames;
+    private Map<String, Integer> elementIndexes;
 
-    private Map<String, XPath> comparisonPaths;
+    // composite values are joined with the character that can't appear in XML
+    private static final char VALUES_SEPARATOR = '\u0000';
 
-    public ElementsComparator(String namespaceUri, List<String> orderedElementNames, Map<String, XPath> comparisonPaths) {
+    private Map<String, List<ChildElementPath>> comparisonPaths;
+
+    /**
+     * @param comparisonPaths paths of identifying children per element name, elements with several paths (e.g.
+     *            renderer by component family and renderer type) are compared by the values in the given order
+     */
+    public ElementsComparator(String namespaceUri, List<String> orderedElementNames,
+        Map<String, List<ChildElementPath>> comparisonPaths) {
         super();
         this.namespaceUri = namespaceUri;
-        this.orderedElementNames = orderedElementNames;
         this.comparisonPaths = comparisonPaths;
+
+        elementIndexes = new HashMap<String, Integer>();
+        for (int i = orderedElementNames.size() - 1; i >= 0; i--) {
+            elementIndexes.put(orderedElementNames.get(i), i);
+        }
     }
 
     private String maskNullString(String s) {
         return s != null ? s : "";
     }
 
-    public int compare(Element o1, Element o2) {
-        if (!namespaceUri.equals(o1.getNamespaceURI()) || !namespaceUri.equals(o2.getNamespaceURI())) {
-            return 0;
+    /**
+     * Folds characters the same way {@link String#compareToIgnoreCase(String)} does, so that folded strings can be
+     * compared with {@link String#compareTo(String)}.
+     */
+    private static String foldCase(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
         }
 
-        String firstName = o1.getName();
-        String secondName = o2.getName();
-
-        if (firstName.equals(secondName)) {
-            XPath comparisonPath = comparisonPaths.get(firstName);
+        return new String(chars);
+    }
 
-            if (comparisonPath != null) {
-                try {
-                    String firstEltValue = maskNullString(comparisonPath.valueOf(o1));
-                    String secondEltValue = maskNullString(comparisonPath.valueOf(o2));
+    public SortKey createKey(Element element) {
+        String value = null;
 
-                    return firstEltValue.compareToIgnoreCase(secondEltValue);
-                } catch (JDOMException e) {
-                    throw new RuntimeException(e.getMessage(), e);
+        List<ChildElementPath> paths = comparisonPaths.get(element.getName());
+        if (paths != null) {
+            if (paths.size() == 1) {
+                value = paths.get(0).valueOf(element);
+            } else {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < paths.size(); i++) {
+                    if (i != 0) {
+                        sb.append(VALUES_SEPARATOR);
+                    }
+                    sb.append(paths.get(i).valueOf(element));
                 }
+                value = sb.toString();
             }
+        }
+
+        return createKey(element.getNamespaceURI(), element.getName(), value);
+    }
 
-            return 0;
-        } else {
-            int firstNameIdx = orderedElementNames.indexOf(firstName);
-            int secondNameIdx = orderedElementNames.indexOf(secondName);
+    public SortKey createKey(String elementNamespaceUri, String elementName, String comparisonValue) {
+        if (!namespaceUri.equals(elementNamespaceUri)) {
+            return SortKey.UNORDERED;
+        }
 
-            if (firstNameIdx < secondNameIdx) {
-                return -1;
-            } else if (firstNameIdx == secondNameIdx) {
-                return 0;
-            } else {
-                return 1;
+        Integer index = elementIndexes.get(elementName);
+        String foldedValue = null;
+        if (comparisonPaths.containsKey(elementName)) {
+            foldedValue = foldCase(maskNullString(comparisonValue));
+        }
+
+        return new SortKey(index != null ? index.intValue() : -1, foldedValue);
+    }
+
+    public int compare(Element o1, Element o2) {
+        return createKey(o1).compareTo(createKey(o2));
+    }
+
+    /**
+     * Stable sort of elements, keys are computed once per element.
+     */
+    public void sort(List<Element> elements) {
+        List<SortKey> keys = new ArrayList<SortKey>(elements.size());
+        for (Element element : elements) {
+            keys.add(createKey(element));
+        }
+
+        sort(elements, keys);
+    }
+
+    /**
+     * Stable sort of items by their keys, keys list should match items list by position.
+     */
+    static <T> void sort(List<T> items, List<SortKey> keys) {
+        List<KeyedItem<T>> keyedItems = new ArrayList<KeyedItem<T>>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            keyedItems.add(new KeyedItem<T>(keys.get(i), items.get(i)));
+        }
+
+        Collections.sort(keyedItems);
+
+        ListIterator<T> iterator = items.listIterator();
+        for (KeyedItem<T> keyedItem : keyedItems) {
+            iterator.next();
+            iterator.set(keyedItem.item);
+        }
+    }
+
+    /**
+     * Precomputed sorting data of a single element: index of element name in the ordered names list and case-folded
+     * value of its identifying children (component-type, tag-name, component-family and renderer-type, etc.). Keys
+     * are totally ordered, so that they can be used by merge of sorted runs as well as by stable sort.
+     */
+    static final class SortKey implements Comparable<SortKey> {
+
+        // elements from foreign namespaces go after all other elements, in the order they have been added
+        static final SortKey UNORDERED = new SortKey(Integer.MAX_VALUE, null);
+
+        private final int nameIndex;
+
+        private final String value;
+
+        private SortKey(int nameIndex, String value) {
+            this.nameIndex = nameIndex;
+            this.value = value;
+        }
+
+        public int compareTo(SortKey o) {
+            if (nameIndex != o.nameIndex) {
+                return nameIndex < o.nameIndex ? -1 : 1;
+            }
+
+            if (value == null || o.value == null) {
+                // elements without identifying children go first
+                return value == o.value ? 0 : (value == null ? -1 : 1);
             }
+
+            return value.compareTo(o.value);
         }
     }
 
+    private static final class KeyedItem<T> implements Comparable<KeyedItem<T>> {
+
+        private final SortKey key;
+
+        private final T item;
+
+        public KeyedItem(SortKey key, T item) {
+            this.key = key;
+            this.item = item;
+        }
+
+        public int compareTo(KeyedItem<T> o) {
+            return key.compareTo(o.key);
+        }
+    }
 }
@@ -0,0 +1,534 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jdom.Attribute;
+import org.jdom.CDATA;
+import org.jdom.Comment;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.EntityRef;
+import org.jdom.JDOMException;
+import org.jdom.Namespace;
+import org.jdom.ProcessingInstruction;
+import org.jdom.Text;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+import org.richfaces.build.shade.resource.ComponentRegistryWriter.Definitions;
+import org.richfaces.build.shade.resource.ElementsComparator.SortKey;
+import org.richfaces.build.shade.resource.StreamingXmlSerializer.OutputMode;
+import org.richfaces.build.shade.resource.TransformerMetrics.Phase;
+
+/**
+ * StAX based counterpart of {@link FacesConfigXmlResourceTransformer} document processing. Every top-level child of
+ * faces-config.xml (or child of aggregator/render-kit element) is read into a short-living element, imported and
+ * serialized into {@link XmlFragment} immediately, so only the serialized form is kept until the merged file is
+ * written. Serialization is delegated to {@link XMLOutputter} in pretty output mode and to {@link StreamingXmlSerializer}
+ * otherwise, so the merged file is the same as the one produced from the JDOM trees. Component registry entries of the elements are collected while
+ * they are read, for the same reason.
+ */
+final class FacesConfigStreamingMerger {
+
+    private static final String REPORT_CDATA_PROPERTY = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // elements used to render fragments at proper nesting level, never appear in the output
+    private static final String SCOPE = "scope";
+
+    private static final String PLACEHOLDER = "placeholder";
+
+    private final FacesConfigXmlResourceTransformer transformer;
+
+    private final XMLInputFactory inputFactory;
+
+    private final OutputMode outputMode;
+
+    private final XMLOutputter outputter;
+
+    private final Format format;
+
+    private final ElementsComparator elementsComparator;
+
+    private final Map<String, List<XmlFragment>> aggregatorElements = new TreeMap<String, List<XmlFragment>>();
+
+    private final Map<String, List<XmlFragment>> renderkitElements = new TreeMap<String, List<XmlFragment>>();
+
+    private final List<XmlFragment> simpleElements = new ArrayList<XmlFragment>();
+
+    private final DuplicatesIndex<XmlFragment> duplicatesIndex;
+
+    public FacesConfigStreamingMerger(FacesConfigXmlResourceTransformer transformer) throws JDOMException {
+        this.transformer = transformer;
+        this.outputMode = transformer.getOutputModeSetting();
+        // in pretty mode fragments are spliced by line separators and indents, other modes have neither
+        this.format = BaseFacesResourceTransformer.getPrettyFormat();
+        this.outputter = new XMLOutputter(format);
+        this.elementsComparator = FacesConfigXmlResourceTransformer.getElementsComparator();
+        this.duplicatesIndex = transformer.createDuplicatesIndex();
+
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        if (inputFactory.isPropertySupported(REPORT_CDATA_PROPERTY)) {
+            inputFactory.setProperty(REPORT_CDATA_PROPERTY, Boolean.TRUE);
+        }
+        inputFactory.setXMLResolver(new XMLResolver() {
+
+            @Override
+            public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace)
+                    throws XMLStreamException {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+        });
+    }
+
+    private static String maskNullString(String s) {
+        return s != null ? s : "";
+    }
+
+    public void process(String resource, InputStream is) throws XMLStreamException, JDOMException, IOException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(is);
+        try {
+            while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                // skip prolog
+            }
+
+            transformer.checkRootElement(new Element(reader.getLocalName(), maskNullString(reader.getPrefix()),
+                    maskNullString(reader.getNamespaceURI())));
+            transformer.updateMetadataComplete(getAttributeValue(reader,
+                    FacesConfigXmlResourceTransformer.METADATA_COMPLETE));
+
+            // register JavaEE namespace first, as DOM-based processing does
+            transformer.getJavaEENamespace();
+
+            for (int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    processRootChild(resource, reader);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private String getAttributeValue(XMLStreamReader reader, String localName) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (localName.equals(reader.getAttributeLocalName(i))
+                    && maskNullString(reader.getAttributeNamespace(i)).length() == 0) {
+
+                return reader.getAttributeValue(i);
+            }
+        }
+
+        return null;
+    }
+
+    private void processRootChild(String resource, XMLStreamReader reader) throws XMLStreamException, JDOMException,
+            IOException {
+        if (!BaseFacesResourceTransformer.JAVAEE_URI.equals(reader.getNamespaceURI())) {
+            simpleElements.add(importFragment(readElement(reader), 1, null));
+            return;
+        }
+
+        String name = reader.getLocalName();
+
+        if (FacesConfigXmlResourceTransformer.UNHANDLED_ELEMENTS_NAME_SET.contains(name)) {
+            transformer.skipUnhandledElement(resource, name);
+            skipElement(reader);
+        } else if (FacesConfigXmlResourceTransformer.NAME.equals(name)) {
+            transformer.updateConfigName(readElement(reader).getTextTrim());
+        } else if (FacesConfigXmlResourceTransformer.AGGREGATOR_ELEMENTS_NAME_SET.contains(name)) {
+            List<XmlFragment> elementsList = getFragmentsList(aggregatorElements, name);
+
+            for (int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    elementsList.add(importFragment(readElement(reader), 2, null));
+                }
+            }
+        } else if (FacesConfigXmlResourceTransformer.RENDER_KIT.equals(name)) {
+            String renderkitId = null;
+            List<Element> renderkitChildElements = new ArrayList<Element>();
+
+            for (int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    Element child = readElement(reader);
+
+                    if (FacesConfigXmlResourceTransformer.RENDER_KIT_ID.equals(child.getName())
+                            && transformer.isJavaEEOrDefaultNamespace(child)) {
+
+                        if (renderkitId == null) {
+                            renderkitId = child.getValue();
+                        }
+
+                        if (BaseFacesResourceTransformer.JAVAEE_URI.equals(child.getNamespaceURI())) {
+                            continue;
+                        }
+                    }
+
+                    renderkitChildElements.add(child);
+                }
+            }
+
+            // children are imported when render kit id is known, in the order they have been read
+            renderkitId = maskNullString(renderkitId);
+            List<XmlFragment> elementsList = getFragmentsList(renderkitElements, renderkitId);
+            for (Element child : renderkitChildElements) {
+                XmlFragment fragment = importFragment(child, 2, transformer.isComponentRegistry()
+                        ? ComponentRegistryWriter.collect(child, renderkitId) : null);
+                duplicatesIndex.addOverriding(FacesConfigXmlResourceTransformer.getDuplicateKey(child, renderkitId),
+                        transformer.describeResource(resource), fragment, elementsList);
+            }
+        } else {
+            Element element = readElement(reader);
+            XmlFragment fragment = importFragment(element, 1, transformer.isComponentRegistry()
+                    ? ComponentRegistryWriter.collect(element) : null);
+            duplicatesIndex.add(FacesConfigXmlResourceTransformer.getDuplicateKey(element, null),
+                    transformer.describeResource(resource), fragment, simpleElements);
+        }
+    }
+
+    private List<XmlFragment> getFragmentsList(Map<String, List<XmlFragment>> map, String key) {
+        List<XmlFragment> elementsList = map.get(key);
+        if (elementsList == null) {
+            elementsList = new ArrayList<XmlFragment>();
+            map.put(key, elementsList);
+        }
+
+        return elementsList;
+    }
+
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth != 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private Element readElement(XMLStreamReader reader) throws XMLStreamException {
+        Element element = new Element(reader.getLocalName(), maskNullString(reader.getPrefix()),
+                maskNullString(reader.getNamespaceURI()));
+
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            Namespace namespace = Namespace.getNamespace(maskNullString(reader.getNamespacePrefix(i)),
+                    maskNullString(reader.getNamespaceURI(i)));
+
+            if (namespace != element.getNamespace()) {
+                element.addNamespaceDeclaration(namespace);
+            }
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = maskNullString(reader.getAttributePrefix(i));
+            Namespace namespace = Namespace.NO_NAMESPACE;
+            if (prefix.length() != 0) {
+                namespace = Namespace.getNamespace(prefix, reader.getAttributeNamespace(i));
+            }
+
+            element.setAttribute(new Attribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i), namespace));
+        }
+
+        StringBuilder text = new StringBuilder();
+        boolean cdata = false;
+
+        for (int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+            switch (event) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.CDATA:
+                    boolean cdataEvent = event == XMLStreamConstants.CDATA;
+                    if (cdataEvent != cdata) {
+                        flushText(element, text, cdata);
+                        cdata = cdataEvent;
+                    }
+
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case XMLStreamConstants.START_ELEMENT:
+                    flushText(element, text, cdata);
+                    element.addContent(readElement(reader));
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    flushText(element, text, cdata);
+                    element.addContent(new Comment(reader.getText()));
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    flushText(element, text, cdata);
+                    element.addContent(new ProcessingInstruction(reader.getPITarget(),
+                            maskNullString(reader.getPIData())));
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    flushText(element, text, cdata);
+                    element.addContent(new EntityRef(reader.getLocalName()));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        flushText(element, text, cdata);
+
+        return element;
+    }
+
+    private void flushText(Element element, StringBuilder text, boolean cdata) {
+        if (text.length() != 0) {
+            element.addContent(cdata ? new CDATA(text.toString()) : new Text(text.toString()));
+            text.setLength(0);
+        }
+    }
+
+    private XmlFragment importFragment(Element element, int level, Definitions definitions) throws JDOMException,
+            IOException {
+        transformer.importElement(element);
+        transformer.getMetrics().retainElements(1);
+
+        return new XmlFragment(element.getNamespaceURI(), element.getName(), elementsComparator.createKey(element),
+                render(element, level).getBytes(UTF_8), definitions);
+    }
+
+    private XmlFragment createTextFragment(String name, String text, int level) throws IOException {
+        Element element = new Element(name, transformer.getJavaEENamespace());
+        element.setText(text);
+
+        return new XmlFragment(element.getNamespaceURI(), name, elementsComparator.createKey(element), render(element,
+                level).getBytes(UTF_8), null);
+    }
+
+    private XmlFragment createContainerFragment(String name, List<XmlFragment> children) {
+        String namespaceUri = BaseFacesResourceTransformer.JAVAEE_URI;
+        return new XmlFragment(namespaceUri, name, elementsComparator.createKey(namespaceUri, name, null), children);
+    }
+
+    private String getIndent(int level) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < level; i++) {
+            sb.append(format.getIndent());
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Renders element as if it was nested at the given level of merged document, including the leading indent.
+     */
+    private String render(Element element, int level) throws IOException {
+        Namespace javaEENamespace = transformer.getJavaEENamespace();
+
+        Element scopeElement = new Element(SCOPE, javaEENamespace);
+        for (Namespace namespace : transformer.getNamespacesTracker().getNamespaces()) {
+            if (namespace.getPrefix().length() != 0) {
+                scopeElement.addNamespaceDeclaration(namespace);
+            }
+        }
+
+        if (outputMode != OutputMode.PRETTY) {
+            // no indentation, so the nesting level doesn't matter
+            StringWriter writer = new StringWriter();
+            StreamingXmlSerializer serializer = new StreamingXmlSerializer(outputMode == OutputMode.COMPACT);
+            serializer.startChildren(writer, scopeElement);
+            serializer.writeChild(element);
+            serializer.endChildren();
+
+            return writer.toString();
+        }
+
+        Element parent = scopeElement;
+        for (int i = 1; i < level; i++) {
+            Element child = new Element(SCOPE, javaEENamespace);
+            parent.addContent(child);
+            parent = child;
+        }
+        parent.addContent(element);
+
+        String rendered = outputter.outputString(scopeElement);
+        String lineSeparator = format.getLineSeparator();
+
+        int start = 0;
+        int end = rendered.length();
+        for (int i = 0; i < level; i++) {
+            start = rendered.indexOf(lineSeparator, start) + lineSeparator.length();
+            end = rendered.lastIndexOf(lineSeparator, end - 1);
+        }
+
+        return rendered.substring(start, end);
+    }
+
+    private String renderDocument(Document document) throws IOException {
+        if (outputMode == OutputMode.PRETTY) {
+            return outputter.outputString(document);
+        }
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new StreamingXmlSerializer(outputMode == OutputMode.COMPACT).output(document, os);
+
+        return os.toString(UTF_8.name());
+    }
+
+    private String[] splitAtPlaceholder(String rendered, int level) {
+        String marker = "<" + PLACEHOLDER + " />";
+        if (outputMode == OutputMode.PRETTY) {
+            marker = getIndent(level + 1) + marker;
+        }
+        int idx = rendered.indexOf(marker);
+
+        return new String[] {rendered.substring(0, idx), rendered.substring(idx + marker.length())};
+    }
+
+    /**
+     * @param registryWriter receives component registry entries of the written elements, in the order they are
+     *            written; can be <code>null</code>
+     */
+    public void write(OutputStream os, ComponentRegistryWriter registryWriter) throws IOException {
+        Namespace javaEENamespace = transformer.getJavaEENamespace();
+        Element rootElement = transformer.createRootElement();
+
+        List<XmlFragment> rootElementChildren = new ArrayList<XmlFragment>();
+
+        String configName = transformer.getConfigName();
+        if (configName != null) {
+            rootElementChildren.add(createTextFragment(FacesConfigXmlResourceTransformer.NAME, configName, 1));
+        }
+
+        rootElementChildren.addAll(simpleElements);
+
+        TransformerMetrics metrics = transformer.getMetrics();
+        for (XmlFragment fragment : simpleElements) {
+            metrics.addMergedElements(fragment.getName(), 1);
+        }
+
+        for (Map.Entry<String, List<XmlFragment>> entry : aggregatorElements.entrySet()) {
+            metrics.addMergedElements(entry.getKey(), entry.getValue().size());
+            rootElementChildren.add(createContainerFragment(entry.getKey(), entry.getValue()));
+        }
+
+        for (Map.Entry<String, List<XmlFragment>> entry : renderkitElements.entrySet()) {
+            String renderkitId = entry.getKey();
+            List<XmlFragment> renderkitElementChildren = entry.getValue();
+            metrics.addMergedElements(FacesConfigXmlResourceTransformer.RENDER_KIT, renderkitElementChildren.size());
+
+            if (renderkitId.length() != 0) {
+                renderkitElementChildren.add(createTextFragment(FacesConfigXmlResourceTransformer.RENDER_KIT_ID,
+                        renderkitId, 2));
+            }
+
+            rootElementChildren.add(createContainerFragment(FacesConfigXmlResourceTransformer.RENDER_KIT,
+                    renderkitElementChildren));
+        }
+
+        Collection<Namespace> namespaces = transformer.getNamespacesTracker().getNamespaces();
+        for (Namespace namespace : namespaces) {
+            if (namespace.getPrefix().length() == 0) {
+                continue;
+            }
+            rootElement.addNamespaceDeclaration(namespace);
+        }
+
+        Document document = new Document(rootElement);
+
+        OutputStream out = new BufferedOutputStream(os);
+        if (rootElementChildren.isEmpty()) {
+            out.write(renderDocument(document).getBytes(UTF_8));
+        } else {
+            rootElement.addContent(new Element(PLACEHOLDER, javaEENamespace));
+            String[] shell = splitAtPlaceholder(renderDocument(document), 0);
+
+            out.write(shell[0].getBytes(UTF_8));
+            writeFragments(out, rootElementChildren, 1, registryWriter);
+            out.write(shell[1].getBytes(UTF_8));
+        }
+        out.flush();
+    }
+
+    private void writeFragments(OutputStream out, List<XmlFragment> fragments, int level,
+            ComponentRegistryWriter registryWriter) throws IOException {
+        long start = System.nanoTime();
+        List<SortKey> keys = new ArrayList<SortKey>(fragments.size());
+        for (XmlFragment fragment : fragments) {
+            keys.add(fragment.getSortKey());
+        }
+        ElementsComparator.sort(fragments, keys);
+        transformer.getMetrics().addTime(Phase.SORT, System.nanoTime() - start);
+
+        byte[] lineSeparator = outputMode == OutputMode.PRETTY ? format.getLineSeparator().getBytes(UTF_8)
+                : new byte[0];
+        boolean first = true;
+        for (XmlFragment fragment : fragments) {
+            if (!first) {
+                out.write(lineSeparator);
+            }
+            first = false;
+
+            writeFragment(out, fragment, level, registryWriter);
+        }
+    }
+
+    private void writeFragment(OutputStream out, XmlFragment fragment, int level,
+            ComponentRegistryWriter registryWriter) throws IOException {
+        if (!fragment.isContainer()) {
+            out.write(fragment.getContent());
+            if (registryWriter != null) {
+                registryWriter.add(fragment.getDefinitions());
+            }
+
+            return;
+        }
+
+        Element element = new Element(fragment.getName(), transformer.getJavaEENamespace());
+        List<XmlFragment> children = fragment.getChildren();
+        if (children.isEmpty()) {
+            out.write(render(element, level).getBytes(UTF_8));
+        } else {
+            element.addContent(new Element(PLACEHOLDER, transformer.getJavaEENamespace()));
+            String[] shell = splitAtPlaceholder(render(element, level), level);
+
+            out.write(shell[0].getBytes(UTF_8));
+            writeFragments(out, children, level + 1, registryWriter);
+            out.write(shell[1].getBytes(UTF_8));
+        }
+    }
+}
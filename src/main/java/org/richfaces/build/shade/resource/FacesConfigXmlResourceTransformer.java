@@ -21,16 +21,21 @@
  */
 package org.richfaces.build.shade.resource;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.ArchiverException;
@@ -41,7 +46,7 @@ import org.jdom.JDOMException;
 import org.jdom.Namespace;
 import org.jdom.filter.ElementFilter;
 import org.jdom.filter.Filter;
-import org.jdom.xpath.XPath;
+import org.richfaces.build.shade.resource.TransformerMetrics.Phase;
 
 /**
  * @author Nick Belaevski
@@ -82,7 +87,7 @@ public class FacesConfigXmlResourceTransformer extends BaseFacesResourceTransfor
 
     private static final String NAVIGATION_RULE = "navigation-rule";
 
-    private static final String NAME = "name";
+    static final String NAME = "name";
 
     private static final String MANAGED_BEAN = "managed-bean";
 
@@ -102,13 +107,13 @@ public class FacesConfigXmlResourceTransformer extends BaseFacesResourceTransfor
 
     private static final String RENDER_KIT_CLASS = "render-kit-class";
 
-    private static final String RENDER_KIT_ID = "render-kit-id";
+    static final String RENDER_KIT_ID = "render-kit-id";
 
-    private static final String RENDER_KIT = "render-kit";
+    static final String RENDER_KIT = "render-kit";
 
     private static final String FACES_CONFIG = "faces-config";
 
-    private static final String METADATA_COMPLETE = "metadata-complete";
+    static final String METADATA_COMPLETE = "metadata-complete";
 
     private static final String CURRENT_VERSION = "2.0";
 
@@ -118,63 +123,147 @@ public class FacesConfigXmlResourceTransformer extends BaseFacesResourceTransfor
 
     private static final String DOT_FACES_CONFIG_FILE_NAME = ".faces-config.xml";
 
-    private static final Set<String> AGGREGATOR_ELEMENTS_NAME_SET = new HashSet<String>(Arrays.asList(APPLICATION, FACTORY,
+    static final Set<String> AGGREGATOR_ELEMENTS_NAME_SET = new HashSet<String>(Arrays.asList(APPLICATION, FACTORY,
             LIFECYCLE));
 
-    private static final Set<String> UNHANDLED_ELEMENTS_NAME_SET = new HashSet<String>(Arrays.asList(ORDERING,
+    static final Set<String> UNHANDLED_ELEMENTS_NAME_SET = new HashSet<String>(Arrays.asList(ORDERING,
             ABSOLUTE_ORDERING));
 
-    private static final String RENDER_KIT_ID_EXPRESSION = MessageFormat
-            .format("./{0}:{1}|./{1}", JAVAEE_PREFIX, RENDER_KIT_ID);
+    private static final ChildElementPath RENDER_KIT_ID_PATH = new ChildElementPath(JAVAEE_URI, RENDER_KIT_ID);
+
+    private static final ChildElementPath COMPONENT_TYPE_PATH = new ChildElementPath(JAVAEE_URI, COMPONENT_TYPE);
+
+    private static final ChildElementPath CONVERTER_ID_PATH = new ChildElementPath(JAVAEE_URI, CONVERTER_ID);
+
+    private static final ChildElementPath CONVERTER_FOR_CLASS_PATH = new ChildElementPath(JAVAEE_URI,
+            "converter-for-class");
+
+    private static final ChildElementPath VALIDATOR_ID_PATH = new ChildElementPath(JAVAEE_URI, VALIDATOR_ID);
+
+    private static final ChildElementPath BEHAVIOR_ID_PATH = new ChildElementPath(JAVAEE_URI, BEHAVIOR_ID);
+
+    private static final ChildElementPath COMPONENT_FAMILY_PATH = new ChildElementPath(JAVAEE_URI, "component-family");
+
+    private static final ChildElementPath RENDERER_TYPE_PATH = new ChildElementPath(JAVAEE_URI, "renderer-type");
+
+    private static final ChildElementPath CLIENT_BEHAVIOR_RENDERER_TYPE_PATH = new ChildElementPath(JAVAEE_URI,
+            "client-behavior-renderer-type");
 
     private static final String FACES_CONFIG_FILE_PATH = META_INF_PATH + FACES_CONFIG_FILE_NAME;
 
-    private enum ThreeState {
+    private static final String FACES_CONFIG_SCHEMA_LOCATION = "http://java.sun.com/xml/ns/javaee/web-facesconfig_2_0.xsd";
+
+    private static final List<String> ORDERED_ELEMENT_NAMES = Collections.unmodifiableList(Arrays.asList(APPLICATION, ORDERING,
+            ABSOLUTE_ORDERING, FACTORY, COMPONENT, CONVERTER, MANAGED_BEAN, NAME, NAVIGATION_RULE, REFERENCED_BEAN,
+            RENDER_KIT, LIFECYCLE, VALIDATOR, BEHAVIOR, FACES_CONFIG_EXTENSION,
+            /* lifecycle inners */PHASE_LISTENER, LIFECYCLE_EXTENSION, /* lifecycle inners end */
+            /* render-kit inners */DESCRIPTION, DISPLAY_NAME, ICON, RENDER_KIT_ID, RENDER_KIT_CLASS, RENDERER,
+            CLIENT_BEHAVIOR_RENDERER, RENDER_KIT_EXTENSION /* render-kit inners end */));
+
+    enum ThreeState {
         UNDEFINED,
         FALSE,
         TRUE
     }
 
-    private final Map<String, List<Element>> aggregatorElements = new HashMap<String, List<Element>>();
+    private final Map<String, List<Element>> aggregatorElements = new TreeMap<String, List<Element>>();
 
-    private final Map<String, List<Element>> renderkitElements = new HashMap<String, List<Element>>();
+    private final Map<String, List<Element>> renderkitElements = new TreeMap<String, List<Element>>();
 
     private final List<Element> simpleElements = new ArrayList<Element>();
 
+    private DuplicatesIndex<Element> duplicatesIndex;
+
     private String configName = null;
 
     private boolean hasProcessedConfigFiles;
 
     private ThreeState metadataComplete = ThreeState.UNDEFINED;
 
-    private Comparator<Element> createElementsComparator() throws JDOMException {
-        List<String> elements = Arrays.asList(APPLICATION, ORDERING, ABSOLUTE_ORDERING, FACTORY, COMPONENT, CONVERTER,
-                MANAGED_BEAN, NAME, NAVIGATION_RULE, REFERENCED_BEAN, RENDER_KIT, LIFECYCLE, VALIDATOR, BEHAVIOR,
-                FACES_CONFIG_EXTENSION,
-                /* lifecycle inners */PHASE_LISTENER, LIFECYCLE_EXTENSION, /* lifecycle inners end */
-                /* render-kit inners */DESCRIPTION, DISPLAY_NAME, ICON, RENDER_KIT_ID, RENDER_KIT_CLASS, RENDERER,
-                CLIENT_BEHAVIOR_RENDERER, RENDER_KIT_EXTENSION /* render-kit inners end */);
+    private boolean streaming = false;
 
-        Map<String, XPath> elementNameExpressions = new HashMap<String, XPath>();
+    private boolean componentRegistry = false;
 
-        String componentTypeExpr = MessageFormat.format("./{0}:{1}|./{1}", JAVAEE_PREFIX, COMPONENT_TYPE);
-        elementNameExpressions.put(COMPONENT, createXPath(componentTypeExpr));
+    private FacesConfigStreamingMerger streamingMerger;
+
+    private static final ElementsComparator ELEMENTS_COMPARATOR = new ElementsComparator(JAVAEE_URI,
+            ORDERED_ELEMENT_NAMES, createComparisonPaths());
+
+    static ElementsComparator getElementsComparator() {
+        return ELEMENTS_COMPARATOR;
+    }
 
-        String converterIdExpr = MessageFormat.format("./{0}:{1}|./{1}", JAVAEE_PREFIX, CONVERTER_ID);
-        elementNameExpressions.put(CONVERTER, createXPath(converterIdExpr));
+    private static Map<String, List<ChildElementPath>> createComparisonPaths() {
+        Map<String, List<ChildElementPath>> elementNamePaths = new HashMap<String, List<ChildElementPath>>();
+
+        elementNamePaths.put(COMPONENT, Collections.singletonList(COMPONENT_TYPE_PATH));
+        elementNamePaths.put(CONVERTER, Collections.singletonList(CONVERTER_ID_PATH));
+        elementNamePaths.put(VALIDATOR, Collections.singletonList(VALIDATOR_ID_PATH));
+        elementNamePaths.put(BEHAVIOR, Collections.singletonList(BEHAVIOR_ID_PATH));
+
+        // render-kit inners, renderers are identified by the pair of component family and renderer type
+        elementNamePaths.put(RENDERER, Arrays.asList(COMPONENT_FAMILY_PATH, RENDERER_TYPE_PATH));
+        elementNamePaths.put(CLIENT_BEHAVIOR_RENDERER, Collections.singletonList(CLIENT_BEHAVIOR_RENDERER_TYPE_PATH));
+
+        return elementNamePaths;
+    }
+
+    private static String createDuplicateKey(final String description, final String... values) {
+        StringBuilder sb = new StringBuilder(description);
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i].trim();
+            if (value.length() == 0) {
+                return null;
+            }
+
+            sb.append(i == 0 ? " '" : ", '").append(value).append('\'');
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Identifying key of element for duplicates detection, <code>null</code> if element isn't identified.
+     */
+    static String getDuplicateKey(final Element element, final String renderkitId) {
+        if (!JAVAEE_URI.equals(element.getNamespaceURI())) {
+            return null;
+        }
+
+        String name = element.getName();
+        if (COMPONENT.equals(name)) {
+            return createDuplicateKey(name, COMPONENT_TYPE_PATH.valueOf(element));
+        } else if (CONVERTER.equals(name)) {
+            String converterId = CONVERTER_ID_PATH.valueOf(element);
+            if (converterId.trim().length() != 0) {
+                return createDuplicateKey(name, converterId);
+            }
 
-        String validatorIdExpr = MessageFormat.format("./{0}:{1}|./{1}", JAVAEE_PREFIX, VALIDATOR_ID);
-        elementNameExpressions.put(VALIDATOR, createXPath(validatorIdExpr));
+            return createDuplicateKey("converter for class", CONVERTER_FOR_CLASS_PATH.valueOf(element));
+        } else if (VALIDATOR.equals(name)) {
+            return createDuplicateKey(name, VALIDATOR_ID_PATH.valueOf(element));
+        } else if (BEHAVIOR.equals(name)) {
+            return createDuplicateKey(name, BEHAVIOR_ID_PATH.valueOf(element));
+        } else if (RENDERER.equals(name) && renderkitId != null) {
+            return createDuplicateKey("renderer of render kit '" + renderkitId + "'", COMPONENT_FAMILY_PATH
+                .valueOf(element), RENDERER_TYPE_PATH.valueOf(element));
+        } else if (CLIENT_BEHAVIOR_RENDERER.equals(name) && renderkitId != null) {
+            return createDuplicateKey("client behavior renderer of render kit '" + renderkitId + "'",
+                CLIENT_BEHAVIOR_RENDERER_TYPE_PATH.valueOf(element));
+        }
 
-        String behaviorIdExpr = MessageFormat.format("./{0}:{1}|./{1}", JAVAEE_PREFIX, BEHAVIOR_ID);
-        elementNameExpressions.put(BEHAVIOR, createXPath(behaviorIdExpr));
+        return null;
+    }
 
-        // renderer | client-behavior-renderer
+    DuplicatesIndex<Element> getDuplicatesIndex() {
+        if (duplicatesIndex == null) {
+            duplicatesIndex = createDuplicatesIndex();
+        }
 
-        return new ElementsComparator(JAVAEE_URI, elements, elementNameExpressions);
+        return duplicatesIndex;
     }
 
-    private void checkRootElement(final Element element) {
+    void checkRootElement(final Element element) {
         if (!FACES_CONFIG.equals(element.getName())) {
             throw new IllegalArgumentException("Root element name: " + element.getName());
         }
@@ -191,41 +280,26 @@ public class FacesConfigXmlResourceTransformer extends BaseFacesResourceTransfor
         Element rootElement = document.getRootElement();
         checkRootElement(rootElement);
 
-        if (metadataComplete == ThreeState.UNDEFINED || Boolean.TRUE.equals(metadataComplete)) {
-            String metadataCompleteString = rootElement.getAttributeValue(METADATA_COMPLETE);
-            if (!"true".equals(metadataCompleteString)) {
-                metadataComplete = ThreeState.FALSE;
-            }
-        }
+        updateMetadataComplete(rootElement.getAttributeValue(METADATA_COMPLETE));
 
         Filter renderkitIdFilter = new ElementFilter().and(new ElementFilter(RENDER_KIT_ID, getJavaEENamespace()).negate());
-        XPath renderKitIdXPath = createXPath(RENDER_KIT_ID_EXPRESSION);
-        List<Element> children = checkedList(rootElement.getChildren(), Element.class);
+        TransformerMetrics metrics = getMetrics();
+        // imported children can be detached from the document
+        List<Element> children = new ArrayList<Element>(checkedList(rootElement.getChildren(), Element.class));
         for (Element child : children) {
             if (!JAVAEE_URI.equals(child.getNamespaceURI())) {
                 simpleElements.add(child);
+                metrics.retainElements(1);
             } else {
                 String name = child.getName();
 
                 if (UNHANDLED_ELEMENTS_NAME_SET.contains(name)) {
-                    // TODO nick - log
+                    skipUnhandledElement(resource, name);
                     continue;
                 }
 
                 if (NAME.equals(name)) {
-                    String childConfigName = child.getTextTrim();
-
-                    if (childConfigName.length() != 0) {
-                        if (configName != null && !configName.equals(childConfigName)) {
-                            throw new IllegalArgumentException(MessageFormat.format(
-                                    "Conflicting <name> elements detected in faces-config.xml files: ''{0}'' & ''{1}''",
-                                    configName, childConfigName));
-                        }
-
-                        if (configName == null) {
-                            configName = childConfigName;
-                        }
-                    }
+                    updateConfigName(child.getTextTrim());
                 } else if (AGGREGATOR_ELEMENTS_NAME_SET.contains(name)) {
                     List<Element> elementsList = aggregatorElements.get(name);
                     if (elementsList == null) {
@@ -235,8 +309,9 @@ public class FacesConfigXmlResourceTransformer extends BaseFacesResourceTransfor
 
                     List<Element> aggregatorChildren = checkedList(child.getChildren(), Element.class);
                     elementsList.addAll(cloneAndImportElements(aggregatorChildren));
+                    metrics.retainElements(aggregatorChildren.size());
                 } else if (RENDER_KIT.equals(name)) {
-                    String renderkitId = renderKitIdXPath.valueOf(child);
+                    String renderkitId = RENDER_KIT_ID_PATH.valueOf(child);
                     if (renderkitId == null) {
                         renderkitId = "";
                     }
@@ -248,12 +323,95 @@ public class FacesConfigXmlResourceTransformer extends BaseFacesResourceTransfor
                     }
 
                     List<Element> renderkitChildren = checkedList(child.getContent(renderkitIdFilter), Element.class);
-                    elementsList.addAll(cloneAndImportElements(renderkitChildren));
+                    for (Element renderkitChild : cloneAndImportElements(renderkitChildren)) {
+                        getDuplicatesIndex().addOverriding(getDuplicateKey(renderkitChild, renderkitId),
+                            describeResource(resource), renderkitChild, elementsList);
+                    }
+                    metrics.retainElements(renderkitChildren.size());
                 } else {
-                    simpleElements.add(cloneAndImportElement(child));
+                    Element importedChild = cloneAndImportElement(child);
+                    getDuplicatesIndex().add(getDuplicateKey(importedChild, null), describeResource(resource),
+                        importedChild, simpleElements);
+                    metrics.retainElements(1);
                 }
             }
         }
+
+        importCompleted(document);
+    }
+
+    void updateMetadataComplete(final String metadataCompleteString) {
+        if (metadataComplete == ThreeState.UNDEFINED || Boolean.TRUE.equals(metadataComplete)) {
+            if (!"true".equals(metadataCompleteString)) {
+                metadataComplete = ThreeState.FALSE;
+            }
+        }
+    }
+
+    /**
+     * Ordering elements relate the descriptor to other jars, they make no sense for the merged descriptor.
+     */
+    void skipUnhandledElement(final String resource, final String name) {
+        getLogger().warn("Ignoring <" + name + "> element in '" + describeResource(resource)
+            + "', ordering of merged faces-config.xml files is not preserved");
+    }
+
+    void updateConfigName(final String childConfigName) {
+        if (childConfigName.length() != 0) {
+            if (configName != null && !configName.equals(childConfigName)) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "Conflicting <name> elements detected in faces-config.xml files: ''{0}'' & ''{1}''",
+                        configName, childConfigName));
+            }
+
+            if (configName == null) {
+                configName = childConfigName;
+            }
+        }
+    }
+
+    String getConfigName() {
+        return configName;
+    }
+
+    ThreeState getMetadataComplete() {
+        return metadataComplete;
+    }
+
+    Element createRootElement() {
+        Element rootElement = new Element(FACES_CONFIG, getJavaEENamespace());
+        rootElement.setAttribute(VERSION, CURRENT_VERSION);
+
+        if (metadataComplete != ThreeState.UNDEFINED) {
+            rootElement.setAttribute(METADATA_COMPLETE, String.valueOf(metadataComplete == ThreeState.TRUE));
+        }
+        addSchemaLocation(rootElement, FACES_CONFIG_SCHEMA_LOCATION);
+
+        return rootElement;
+    }
+
+    NamespacesTracker getNamespacesTracker() {
+        return namespacesFactory;
+    }
+
+    @Override
+    protected void processContents(final String resource, final InputStream is) throws IOException, JDOMException {
+        if (!streaming) {
+            super.processContents(resource, is);
+            return;
+        }
+
+        hasProcessedConfigFiles = true;
+
+        if (streamingMerger == null) {
+            streamingMerger = new FacesConfigStreamingMerger(this);
+        }
+
+        try {
+            streamingMerger.process(resource, is);
+        } catch (XMLStreamException e) {
+            throw new IOException("Error reading '" + resource + "'. Reason: " + e.getMessage(), e);
+        }
     }
 
     @Override
@@ -261,6 +419,8 @@ public class FacesConfigXmlResourceTransformer extends BaseFacesResourceTransfor
         super.resetTransformer();
 
         metadataComplete = ThreeState.UNDEFINED;
+        streamingMerger = null;
+        duplicatesIndex = null;
 
         simpleElements.clear();
         aggregatorElements.clear();
@@ -269,22 +429,18 @@ public class FacesConfigXmlResourceTransformer extends BaseFacesResourceTransfor
 
     @Override
     protected void writeMergedConfigFiles(final Archiver archiver) throws ArchiverException {
-        Comparator<Element> comparator;
-        try {
-            comparator = createElementsComparator();
-        } catch (JDOMException e) {
-            throw new RuntimeException(e.getMessage(), e);
+        if (streamingMerger != null) {
+            writeStreamedConfigFile(archiver);
+            return;
         }
 
+        ElementsComparator comparator = getElementsComparator();
+        TransformerMetrics metrics = getMetrics();
+        long sortTime = 0;
+
         Document document = new Document();
         Namespace javaEENamespace = getJavaEENamespace();
-        Element rootElement = new Element(FACES_CONFIG, javaEENamespace);
-        rootElement.setAttribute(VERSION, CURRENT_VERSION);
-
-        if (metadataComplete != ThreeState.UNDEFINED) {
-            rootElement.setAttribute(METADATA_COMPLETE, String.valueOf(metadataComplete == ThreeState.TRUE));
-        }
-        addSchemaLocation(rootElement, "http://java.sun.com/xml/ns/javaee/web-facesconfig_2_0.xsd");
+        Element rootElement = createRootElement();
         document.addContent(rootElement);
 
         List<Element> rootElementChildren = new ArrayList<Element>();
@@ -296,21 +452,28 @@ public class FacesConfigXmlResourceTransformer extends BaseFacesResourceTransfor
         }
 
         rootElementChildren.addAll(simpleElements);
+        for (Element element : simpleElements) {
+            metrics.addMergedElements(element.getName(), 1);
+        }
 
         for (Map.Entry<String, List<Element>> entry : aggregatorElements.entrySet()) {
             String elementName = entry.getKey();
             List<Element> aggregatorElementChildren = entry.getValue();
+            metrics.addMergedElements(elementName, aggregatorElementChildren.size());
 
             Element aggregatorElement = new Element(elementName, javaEENamespace);
             rootElementChildren.add(aggregatorElement);
 
-            Collections.sort(aggregatorElementChildren, comparator);
+            long start = System.nanoTime();
+            comparator.sort(aggregatorElementChildren);
+            sortTime += System.nanoTime() - start;
             aggregatorElement.addContent(aggregatorElementChildren);
         }
 
         for (Map.Entry<String, List<Element>> entry : renderkitElements.entrySet()) {
             String renderkitId = entry.getKey();
             List<Element> renderkitElementChildren = entry.getValue();
+            metrics.addMergedElements(RENDER_KIT, renderkitElementChildren.size());
 
             Element renderkitElement = new Element(RENDER_KIT, javaEENamespace);
             rootElementChildren.add(renderkitElement);
@@ -321,21 +484,94 @@ public class FacesConfigXmlResourceTransformer extends BaseFacesResourceTransfor
                 renderkitElementChildren.add(renderkitIdElement);
             }
 
-            Collections.sort(renderkitElementChildren, comparator);
+            long start = System.nanoTime();
+            comparator.sort(renderkitElementChildren);
+            sortTime += System.nanoTime() - start;
             renderkitElement.addContent(renderkitElementChildren);
         }
 
-        Collections.sort(rootElementChildren, comparator);
+        long start = System.nanoTime();
+        comparator.sort(rootElementChildren);
+        metrics.addTime(Phase.SORT, sortTime + System.nanoTime() - start);
 
         rootElement.addContent(rootElementChildren);
 
         addToArchive(FACES_CONFIG_FILE_PATH, document, archiver);
+
+        if (componentRegistry) {
+            ComponentRegistryWriter writer = new ComponentRegistryWriter();
+            writer.add(rootElement);
+            addComponentRegistry(writer, archiver);
+        }
+    }
+
+    private void addComponentRegistry(final ComponentRegistryWriter writer, final Archiver archiver)
+        throws ArchiverException {
+        byte[] content;
+        try {
+            content = writer.toByteArray();
+        } catch (IOException e) {
+            throw new ArchiverException("Error adding '" + ComponentRegistry.REGISTRY_FILE_PATH
+                    + "' to archive. Reason: " + e.getMessage(), e);
+        }
+
+        addToArchive(ComponentRegistry.REGISTRY_FILE_PATH, content, archiver);
+    }
+
+    private void writeStreamedConfigFile(final Archiver archiver) throws ArchiverException {
+        // streamed file has no document, so registry is collected from the written fragments
+        ComponentRegistryWriter registryWriter = componentRegistry ? new ComponentRegistryWriter() : null;
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            streamingMerger.write(os, registryWriter);
+        } catch (IOException e) {
+            throw new ArchiverException("Error adding '" + FACES_CONFIG_FILE_PATH + "' to archive. Reason: "
+                    + e.getMessage(), e);
+        }
+
+        addToArchive(FACES_CONFIG_FILE_PATH, os.toByteArray(), archiver);
+
+        if (registryWriter != null) {
+            addComponentRegistry(registryWriter, archiver);
+        }
+    }
+
+    @Override
+    protected String getConfiguration() {
+        return super.getConfiguration() + ";streaming=" + streaming + ";componentRegistry=" + componentRegistry;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Merges faces-config.xml files without building their documents; merged file is the same as in the default mode.
+     */
+    public void setStreaming(final boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isComponentRegistry() {
+        return componentRegistry;
+    }
+
+    /**
+     * Enables binary index of components, converters, validators, behaviors and renderers class names, written next
+     * to merged file as <code>META-INF/faces-config.registry</code> and read by {@link ComponentRegistry}.
+     */
+    public void setComponentRegistry(final boolean componentRegistry) {
+        this.componentRegistry = componentRegistry;
     }
 
     @SuppressWarnings("rawtypes")
     @Override
     public List getVirtualFiles() {
         if (hasProcessedConfigFiles) {
+            if (componentRegistry) {
+                return Arrays.asList(FACES_CONFIG_FILE_PATH, ComponentRegistry.REGISTRY_FILE_PATH);
+            }
+
             return Collections.singletonList(FACES_CONFIG_FILE_PATH);
         }
 
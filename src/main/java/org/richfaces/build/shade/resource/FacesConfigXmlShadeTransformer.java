@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+
+import org.apache.maven.plugins.shade.relocation.Relocator;
+import org.apache.maven.plugins.shade.resource.ReproducibleResourceTransformer;
+import org.codehaus.plexus.archiver.ArchiverException;
+
+/**
+ * Merges <code>faces-config.xml</code> files inside maven-shade-plugin pass, with the same configuration as {@link FacesConfigXmlResourceTransformer}.
+ * Maven-assembly-plugin should be added to shade plugin dependencies, as transformers implement its handler API.
+ * Relocations are not applied to merged files. Merged entries get modification time of the latest source entry.
+ */
+public class FacesConfigXmlShadeTransformer extends FacesConfigXmlResourceTransformer implements ReproducibleResourceTransformer {
+
+    private long time = ShadeTransformerSupport.UNKNOWN_TIME;
+
+    public FacesConfigXmlShadeTransformer() {
+        super();
+        setOutputDirectoryRequired(false);
+    }
+
+    @Override
+    public boolean canTransformResource(String resource) {
+        return isHandled(ShadeTransformerSupport.createFileInfo(resource, null));
+    }
+
+    /**
+     * @deprecated shade plugin calls {@link #processResource(String, InputStream, List, long)} instead
+     */
+    @Deprecated
+    @Override
+    public void processResource(String resource, InputStream is, List<Relocator> relocators) throws IOException {
+        isSelected(ShadeTransformerSupport.createFileInfo(resource, is));
+    }
+
+    @Override
+    public void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
+        throws IOException {
+        isSelected(ShadeTransformerSupport.createFileInfo(resource, is));
+        this.time = Math.max(this.time, time);
+    }
+
+    @Override
+    public boolean hasTransformedResource() {
+        return hasProcessedConfigFiles();
+    }
+
+    @Override
+    public void modifyOutputStream(JarOutputStream os) throws IOException {
+        try {
+            finalizeArchiveCreation(ShadeTransformerSupport.createArchiver(os, time));
+        } catch (ArchiverException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            time = ShadeTransformerSupport.UNKNOWN_TIME;
+        }
+    }
+}
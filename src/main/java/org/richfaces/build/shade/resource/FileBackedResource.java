@@ -0,0 +1,58 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import org.codehaus.plexus.components.io.resources.AbstractPlexusIoResource;
+
+/**
+ * Archive resource backed by file, used to add merged files that are written straight to disk.
+ */
+final class FileBackedResource extends AbstractPlexusIoResource {
+
+    private final File file;
+
+    public FileBackedResource(String name, File file) {
+        super();
+        this.file = file;
+
+        setName(name);
+        setSize(file.length());
+        setLastModified(System.currentTimeMillis());
+        setFile(true);
+        setDirectory(false);
+        setExisting(true);
+    }
+
+    public InputStream getContents() throws IOException {
+        return new FileInputStream(file);
+    }
+
+    public URL getURL() throws IOException {
+        return file.toURI().toURL();
+    }
+}
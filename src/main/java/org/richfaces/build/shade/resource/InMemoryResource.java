@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.TimeZone;
+
+import org.codehaus.plexus.components.io.resources.AbstractPlexusIoResource;
+
+/**
+ * Archive resource backed by byte array, used to add merged files without temporary files.
+ */
+final class InMemoryResource extends AbstractPlexusIoResource {
+
+    /**
+     * 1980-01-01T00:00:02Z. Zip format can store times from 1980-01-01 00:00:00, but java.util.zip treats that time as
+     * one before 1980 and adds extended timestamp field with UTC time to the entry, so the next one (two seconds
+     * precision) is used.
+     */
+    private static final long EARLIEST_ZIP_TIME = 315532802000L;
+
+    private final byte[] content;
+
+    public InMemoryResource(String name, byte[] content) {
+        super();
+        this.content = content;
+
+        setName(name);
+        setSize(content.length);
+        setLastModified(System.currentTimeMillis());
+        setFile(true);
+        setDirectory(false);
+        setExisting(true);
+    }
+
+    /**
+     * Modification time of merged files in reproducible mode. Zip stores local date and time of the default time zone,
+     * so the time is shifted by its offset to be stored as 1980-01-01 00:00:02 whatever the time zone is; without the
+     * shift it would be stored as a different time in each zone, or clamped to the earliest time west of UTC.
+     */
+    static long getReproducibleLastModified() {
+        return EARLIEST_ZIP_TIME - TimeZone.getDefault().getOffset(EARLIEST_ZIP_TIME);
+    }
+
+    public InputStream getContents() throws IOException {
+        return new ByteArrayInputStream(content);
+    }
+
+    public URL getURL() throws IOException {
+        return null;
+    }
+}
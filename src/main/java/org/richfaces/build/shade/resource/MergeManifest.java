@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Names and content hashes of descriptors merged by transformer, together with hash of transformer settings and paths
+ * and content hashes of generated files. Merged files from the previous build can be reused as is when the same
+ * descriptors are merged again with the same settings and generated files haven't been changed since.
+ */
+final class MergeManifest {
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final String CONFIG_PREFIX = "config ";
+
+    private static final String INPUT_PREFIX = "input ";
+
+    private static final String OUTPUT_PREFIX = "output ";
+
+    private String config;
+
+    private final List<String> inputs = new ArrayList<String>();
+
+    private final List<String> outputs = new ArrayList<String>();
+
+    private final List<String> outputHashes = new ArrayList<String>();
+
+    /**
+     * @param configuration settings of transformer that affect content of generated files
+     */
+    public void setConfiguration(String configuration) {
+        try {
+            config = DescriptorCache.hash(configuration.getBytes(CHARSET));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    public void addInput(String name, byte[] contents) {
+        inputs.add(DescriptorCache.hash(contents) + " " + name);
+    }
+
+    public void addOutput(String path, String hash) {
+        outputs.add(path);
+        outputHashes.add(hash);
+    }
+
+    public List<String> getOutputs() {
+        return outputs;
+    }
+
+    public String getOutputHash(int index) {
+        return outputHashes.get(index);
+    }
+
+    /**
+     * @return <code>true</code> if both manifests have the same inputs and configuration
+     */
+    public boolean matches(MergeManifest manifest) {
+        return config != null && config.equals(manifest.config) && inputs.equals(manifest.inputs);
+    }
+
+    public static MergeManifest read(File file) throws IOException {
+        BufferedReader reader;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+            MergeManifest manifest = new MergeManifest();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(CONFIG_PREFIX)) {
+                    manifest.config = line.substring(CONFIG_PREFIX.length());
+                } else if (line.startsWith(INPUT_PREFIX)) {
+                    manifest.inputs.add(line.substring(INPUT_PREFIX.length()));
+                } else if (line.startsWith(OUTPUT_PREFIX)) {
+                    String output = line.substring(OUTPUT_PREFIX.length());
+                    int idx = output.indexOf(' ');
+                    if (idx < 0) {
+                        // written by older version, outputs can't be verified
+                        return null;
+                    }
+
+                    manifest.addOutput(output.substring(idx + 1), output.substring(0, idx));
+                }
+            }
+
+            return manifest;
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void write(File file) throws IOException {
+        file.getParentFile().mkdirs();
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), CHARSET);
+        try {
+            if (config != null) {
+                writer.write(CONFIG_PREFIX);
+                writer.write(config);
+                writer.write('\n');
+            }
+
+            for (String input : inputs) {
+                writer.write(INPUT_PREFIX);
+                writer.write(input);
+                writer.write('\n');
+            }
+
+            for (int i = 0; i < outputs.size(); i++) {
+                writer.write(OUTPUT_PREFIX);
+                writer.write(outputHashes.get(i));
+                writer.write(' ');
+                writer.write(outputs.get(i));
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
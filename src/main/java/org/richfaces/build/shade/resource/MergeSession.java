@@ -0,0 +1,338 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.maven.plugin.assembly.filter.ContainerDescriptorHandler;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Merges descriptors of jars or exploded directories without assembly plugin or Plexus container. Handlers are
+ * configured by their setters; by default faces-config, taglib and resource mappings transformers are used.
+ * 
+ * <pre>
+ * java org.richfaces.build.shade.resource.MergeSession -o &lt;output directory&gt; &lt;jar or directory&gt;...
+ * </pre>
+ */
+public class MergeSession {
+
+    private final List<ContainerDescriptorHandler> handlers;
+
+    private final List<File> inputs = new ArrayList<File>();
+
+    private boolean centralDirectoryScan = true;
+
+    public MergeSession() {
+        this(new FacesConfigXmlResourceTransformer(), new TaglibXmlResourceTransformer(),
+            new ResourceMappingsPropertiesTransformer());
+    }
+
+    public MergeSession(ContainerDescriptorHandler... handlers) {
+        super();
+        this.handlers = Arrays.asList(handlers);
+
+        for (ContainerDescriptorHandler handler : handlers) {
+            if (handler instanceof BaseFacesResourceTransformer) {
+                ((BaseFacesResourceTransformer) handler).setOutputDirectoryRequired(false);
+            }
+        }
+    }
+
+    public List<ContainerDescriptorHandler> getHandlers() {
+        return handlers;
+    }
+
+    public boolean isCentralDirectoryScan() {
+        return centralDirectoryScan;
+    }
+
+    /**
+     * Enables reading of jars through memory-mapped central directory (default), so that only entries handled by
+     * handlers are inflated and passed to them. Jars are read entry by entry if disabled, or if handlers are not known
+     * transformers, or if a jar can't be read this way.
+     */
+    public void setCentralDirectoryScan(boolean centralDirectoryScan) {
+        this.centralDirectoryScan = centralDirectoryScan;
+    }
+
+    /**
+     * Adds jar file or exploded directory, inputs are merged in the order they were added.
+     */
+    public MergeSession addInput(File input) {
+        inputs.add(input);
+        return this;
+    }
+
+    private void select(FileInfo fileInfo) throws IOException {
+        for (ContainerDescriptorHandler handler : handlers) {
+            handler.isSelected(fileInfo);
+        }
+    }
+
+    private boolean isHandled(String name) {
+        FileInfo fileInfo = new InputFile(name, null) {
+
+            public InputStream getContents() throws IOException {
+                throw new IOException("Contents of '" + getName() + "' are not read by filter");
+            }
+        };
+
+        for (ContainerDescriptorHandler handler : handlers) {
+            boolean handled;
+            if (handler instanceof BaseFacesResourceTransformer) {
+                handled = ((BaseFacesResourceTransformer) handler).isHandled(fileInfo);
+            } else {
+                handled = ((BaseResourceTransformer) handler).isHandled(fileInfo);
+            }
+
+            if (handled) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return filter of entries handled by handlers, <code>null</code> if some handler needs all entries
+     */
+    private CentralDirectoryScanner.EntryFilter createEntryFilter() {
+        for (ContainerDescriptorHandler handler : handlers) {
+            if (!(handler instanceof BaseFacesResourceTransformer) && !(handler instanceof BaseResourceTransformer)) {
+                return null;
+            }
+        }
+
+        return new CentralDirectoryScanner.EntryFilter() {
+
+            public boolean accept(String name) {
+                return isHandled(name);
+            }
+        };
+    }
+
+    private void selectJar(File input) throws IOException {
+        CentralDirectoryScanner.EntryFilter filter = centralDirectoryScan ? createEntryFilter() : null;
+        CentralDirectoryScanner scanner = filter != null ? CentralDirectoryScanner.open(input) : null;
+        if (scanner != null) {
+            try {
+                // handlers read contents of selected entries before the jar is unmapped
+                List<FileInfo> entries = scanner.scan(filter);
+                if (entries != null) {
+                    for (FileInfo entry : entries) {
+                        select(entry);
+                    }
+
+                    return;
+                }
+            } finally {
+                scanner.close();
+            }
+        }
+
+        final String jarUrl = "jar:" + input.toURI().toURL() + "!/";
+        final JarFile jarFile = new JarFile(input);
+        try {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    select(new InputFile(entry.getName(), new URL(jarUrl + entry.getName())) {
+
+                        public InputStream getContents() throws IOException {
+                            return jarFile.getInputStream(entry);
+                        }
+                    });
+                }
+            }
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    private void selectDirectory(File directory, String path) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Can't list directory '" + directory + "'");
+        }
+        Arrays.sort(files);
+
+        for (final File file : files) {
+            String name = path + file.getName();
+            if (file.isDirectory()) {
+                selectDirectory(file, name + "/");
+            } else {
+                select(new InputFile(name, file.toURI().toURL()) {
+
+                    public InputStream getContents() throws IOException {
+                        return new FileInputStream(file);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Runs handlers over entries of all inputs. Handlers are finalized, so session can be merged only once.
+     * 
+     * @return merged files by their paths
+     */
+    public Map<String, byte[]> merge() throws IOException {
+        for (File input : inputs) {
+            if (input.isDirectory()) {
+                selectDirectory(input, "");
+            } else if (input.isFile()) {
+                selectJar(input);
+            } else {
+                throw new IOException("Input '" + input + "' doesn't exist");
+            }
+        }
+
+        final Map<String, byte[]> result = new TreeMap<String, byte[]>();
+        ArchiverAdapter archiverAdapter = new ArchiverAdapter() {
+
+            @Override
+            protected void addResource(String path, PlexusIoResource resource) throws IOException {
+                InputStream is = resource.getContents();
+                try {
+                    result.put(path, IOUtil.toByteArray(is));
+                } finally {
+                    is.close();
+                }
+            }
+        };
+
+        try {
+            for (ContainerDescriptorHandler handler : handlers) {
+                handler.finalizeArchiveCreation(archiverAdapter.getArchiver());
+            }
+        } catch (ArchiverException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Merges inputs and writes merged files to the given directory.
+     */
+    public Map<String, byte[]> writeTo(File directory) throws IOException {
+        Map<String, byte[]> result = merge();
+        for (Map.Entry<String, byte[]> entry : result.entrySet()) {
+            File file = new File(directory, entry.getKey());
+            file.getParentFile().mkdirs();
+
+            OutputStream os = new FileOutputStream(file);
+            try {
+                os.write(entry.getValue());
+            } finally {
+                os.close();
+            }
+        }
+
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        File outputDirectory = null;
+        MergeSession session = new MergeSession();
+        boolean hasInputs = false;
+
+        for (int i = 0; i < args.length; i++) {
+            if ("-o".equals(args[i]) && i + 1 < args.length) {
+                outputDirectory = new File(args[++i]);
+            } else {
+                session.addInput(new File(args[i]));
+                hasInputs = true;
+            }
+        }
+
+        if (outputDirectory == null || !hasInputs) {
+            System.err.println("Usage: java " + MergeSession.class.getName()
+                + " -o <output directory> <jar or directory>...");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        Map<String, byte[]> files = session.writeTo(outputDirectory);
+        System.out.println("Merged " + files.size() + " files to '" + outputDirectory + "' in "
+            + ((System.nanoTime() - start) / 1000000) + " ms");
+    }
+
+    private abstract static class InputFile implements PlexusIoResource {
+
+        private final String name;
+
+        private final URL url;
+
+        public InputFile(String name, URL url) {
+            this.name = name;
+            this.url = url;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isFile() {
+            return true;
+        }
+
+        public boolean isDirectory() {
+            return false;
+        }
+
+        public boolean isExisting() {
+            return true;
+        }
+
+        public long getLastModified() {
+            return UNKNOWN_MODIFICATION_DATE;
+        }
+
+        public long getSize() {
+            return UNKNOWN_RESOURCE_SIZE;
+        }
+
+        public URL getURL() {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.jdom.Attribute;
+import org.jdom.Comment;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+import org.richfaces.build.shade.resource.StreamingXmlSerializer.OutputMode;
+
+/**
+ * Writes document with children of root element passed one by one, so that the whole document is never kept in memory.
+ * Output is the same as if the children were added to the root element and the document was written by
+ * {@link XMLOutputter} in pretty mode or by {@link StreamingXmlSerializer} otherwise.
+ */
+final class MergedDocumentWriter {
+
+    private static final String MARKER = "merged-document-child";
+
+    private final OutputMode outputMode;
+
+    private final Format prettyFormat;
+
+    private Writer out;
+
+    private ChildOutputter childOutputter;
+
+    private StreamingXmlSerializer serializer;
+
+    private String separator;
+
+    private String tail;
+
+    private boolean hasChildren;
+
+    public MergedDocumentWriter(OutputMode outputMode, Format prettyFormat) {
+        super();
+        this.outputMode = outputMode;
+        this.prettyFormat = prettyFormat;
+    }
+
+    /**
+     * Writes XML declaration and start tag of root element of the document, document should have no other content.
+     */
+    public void start(Document document, OutputStream os) throws IOException {
+        Element rootElement = document.getRootElement();
+
+        // text around children is taken from the document written with two placeholders
+        rootElement.addContent(new Comment(MARKER));
+        rootElement.addContent(new Comment(MARKER));
+        String text;
+        try {
+            text = writeDocument(document);
+        } finally {
+            rootElement.removeContent();
+        }
+
+        String marker = "<!--" + MARKER + "-->";
+        int first = text.indexOf(marker);
+        int second = text.indexOf(marker, first + marker.length());
+
+        out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
+        out.write(text, 0, first);
+        separator = text.substring(first + marker.length(), second);
+        tail = text.substring(second + marker.length());
+        hasChildren = false;
+
+        if (outputMode == OutputMode.PRETTY) {
+            childOutputter = new ChildOutputter(prettyFormat, rootElement);
+        } else {
+            serializer = new StreamingXmlSerializer(outputMode == OutputMode.COMPACT);
+            serializer.startChildren(out, rootElement);
+        }
+    }
+
+    public void write(Element element) throws IOException {
+        if (hasChildren) {
+            out.write(separator);
+        }
+
+        if (childOutputter != null) {
+            childOutputter.writeChild(out, element);
+        } else {
+            serializer.writeChild(element);
+        }
+
+        hasChildren = true;
+    }
+
+    /**
+     * Writes end tag of root element, at least one child should have been written. Output stream is not closed.
+     */
+    public void end() throws IOException {
+        if (serializer != null) {
+            serializer.endChildren();
+            serializer = null;
+        }
+
+        childOutputter = null;
+        out.write(tail);
+        out.flush();
+        out = null;
+    }
+
+    private String writeDocument(Document document) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        if (outputMode == OutputMode.PRETTY) {
+            new XMLOutputter(prettyFormat).output(document, os);
+        } else {
+            new StreamingXmlSerializer(outputMode == OutputMode.COMPACT).output(document, os);
+        }
+
+        return os.toString("UTF-8");
+    }
+
+    /**
+     * Gives access to element printing of {@link XMLOutputter} with namespaces of root element in scope.
+     */
+    private static final class ChildOutputter extends XMLOutputter {
+
+        private final NamespaceStack namespaces = new NamespaceStack() {
+        };
+
+        public ChildOutputter(Format format, Element rootElement) {
+            super(format);
+
+            Namespace namespace = rootElement.getNamespace();
+            if (namespace != Namespace.XML_NAMESPACE && namespace != Namespace.NO_NAMESPACE) {
+                declareNamespace(namespace);
+            }
+
+            List<?> additionalNamespaces = rootElement.getAdditionalNamespaces();
+            for (int i = 0; i < additionalNamespaces.size(); i++) {
+                declareNamespace((Namespace) additionalNamespaces.get(i));
+            }
+
+            List<?> attributes = rootElement.getAttributes();
+            for (int i = 0; i < attributes.size(); i++) {
+                Namespace attributeNamespace = ((Attribute) attributes.get(i)).getNamespace();
+                if (attributeNamespace != Namespace.NO_NAMESPACE && attributeNamespace != Namespace.XML_NAMESPACE) {
+                    declareNamespace(attributeNamespace);
+                }
+            }
+        }
+
+        private void declareNamespace(Namespace namespace) {
+            if (!namespace.getURI().equals(namespaces.getURI(namespace.getPrefix()))) {
+                namespaces.push(namespace);
+            }
+        }
+
+        public void writeChild(Writer out, Element element) throws IOException {
+            printElement(out, element, 1, namespaces);
+        }
+    }
+}
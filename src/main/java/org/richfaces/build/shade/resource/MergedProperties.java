@@ -0,0 +1,239 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Merges properties files entry by entry. Entries are kept in their original textual form (escapes and continuation
+ * lines are preserved) and sorted by key; comments and blank lines are dropped.
+ */
+final class MergedProperties {
+
+    /**
+     * Defines which entry is kept when several files declare the same key with different values.
+     */
+    public enum ConflictPolicy {
+        FIRST_WINS, LAST_WINS, FAIL;
+
+        public static ConflictPolicy forName(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ENGLISH).replace('-', '_'));
+        }
+    }
+
+    private final ConflictPolicy conflictPolicy;
+
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+
+    public MergedProperties(ConflictPolicy conflictPolicy) {
+        super();
+        this.conflictPolicy = conflictPolicy;
+    }
+
+    /**
+     * @param resource name of the loaded file qualified by its location, used in conflict messages
+     * @throws IOException if entries conflict and policy is {@link ConflictPolicy#FAIL}
+     */
+    public void load(String resource, Reader reader) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        StringBuilder logicalLine = new StringBuilder();
+
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            if (logicalLine.length() == 0) {
+                String trimmedLine = trimLeadingWhitespace(line);
+                if (trimmedLine.length() == 0 || trimmedLine.charAt(0) == '#' || trimmedLine.charAt(0) == '!') {
+                    continue;
+                }
+            } else {
+                logicalLine.append('\n');
+            }
+
+            logicalLine.append(line);
+            if (!isContinued(line)) {
+                addEntry(resource, logicalLine.toString());
+                logicalLine.setLength(0);
+            }
+        }
+
+        if (logicalLine.length() != 0) {
+            addEntry(resource, logicalLine.toString());
+        }
+    }
+
+    public void write(Writer writer) throws IOException {
+        for (Entry entry : entries.values()) {
+            writer.write(entry.getText());
+            writer.write('\n');
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void addEntry(String resource, String text) throws IOException {
+        Entry entry = new Entry(resource, text);
+        Entry existingEntry = entries.get(entry.getKey());
+        if (existingEntry == null || conflictPolicy == ConflictPolicy.LAST_WINS) {
+            entries.put(entry.getKey(), entry);
+        } else if (conflictPolicy == ConflictPolicy.FAIL && !existingEntry.getValue().equals(entry.getValue())) {
+            throw new IOException("Conflicting values for key '" + entry.getKey() + "' in '"
+                + existingEntry.getResource() + "' and '" + resource + "'");
+        }
+    }
+
+    private static String trimLeadingWhitespace(String s) {
+        int i = 0;
+        while (i < s.length() && isWhitespace(s.charAt(i))) {
+            i++;
+        }
+
+        return s.substring(i);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+
+    private static boolean isContinued(String line) {
+        int backslashes = 0;
+        for (int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+
+        return backslashes % 2 != 0;
+    }
+
+    /**
+     * Logical line of properties file, key and value are unescaped as {@link java.util.Properties} does it.
+     */
+    private static final class Entry {
+
+        private final String resource;
+
+        private final String text;
+
+        private final String key;
+
+        private final String value;
+
+        public Entry(String resource, String text) {
+            this.resource = resource;
+            this.text = text;
+
+            StringBuilder builder = new StringBuilder();
+            int i = trimLeadingWhitespaceIndex(text, 0);
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (c == '=' || c == ':' || isWhitespace(c)) {
+                    break;
+                }
+
+                i = unescape(text, i, builder);
+            }
+
+            this.key = builder.toString();
+
+            i = trimLeadingWhitespaceIndex(text, i);
+            if (i < text.length() && (text.charAt(i) == '=' || text.charAt(i) == ':')) {
+                i = trimLeadingWhitespaceIndex(text, i + 1);
+            }
+
+            builder.setLength(0);
+            while (i < text.length()) {
+                i = unescape(text, i, builder);
+            }
+
+            this.value = builder.toString();
+        }
+
+        private static int trimLeadingWhitespaceIndex(String s, int start) {
+            int i = start;
+            while (i < s.length() && isWhitespace(s.charAt(i))) {
+                i++;
+            }
+
+            return i;
+        }
+
+        private static int unescape(String s, int start, StringBuilder builder) {
+            char c = s.charAt(start);
+            if (c != '\\' || start + 1 == s.length()) {
+                builder.append(c);
+                return start + 1;
+            }
+
+            char escaped = s.charAt(start + 1);
+            switch (escaped) {
+                case '\n':
+                    // line continuation
+                    return trimLeadingWhitespaceIndex(s, start + 2);
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'u':
+                    if (start + 6 <= s.length()) {
+                        builder.append((char) Integer.parseInt(s.substring(start + 2, start + 6), 16));
+                        return start + 6;
+                    }
+
+                    throw new IllegalArgumentException("Malformed \\uxxxx encoding in: " + s);
+                default:
+                    builder.append(escaped);
+            }
+
+            return start + 2;
+        }
+
+        public String getResource() {
+            return resource;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+}
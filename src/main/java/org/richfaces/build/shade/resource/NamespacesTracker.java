@@ -26,6 +26,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -46,12 +47,26 @@ final class NamespacesTracker {
 
     private int prefixGeneratorCounter = 0;
 
+    // elements usually come from the same namespace, so the last lookup is remembered
+    private Namespace lastSourceNamespace;
+
+    private Namespace lastNamespace;
+
+    private List<Namespace[]> recordedNamespaces;
+
     private String maskEmptyString(String s) {
-        if (s == null || s.trim().length() == 0) {
+        if (s == null) {
             return "";
         }
 
-        return s;
+        // same as s.trim().length() == 0, without allocating trimmed string
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > ' ') {
+                return s;
+            }
+        }
+
+        return "";
     }
 
     private Namespace createNamespace(String uri, String prefix) {
@@ -81,7 +96,60 @@ final class NamespacesTracker {
     }
 
     public Namespace getNamespace(Namespace namespace) {
-        return getNamespace(namespace.getURI(), namespace.getPrefix());
+        // namespace returned for URI never changes, JDOM namespaces are compared by URI
+        if (namespace != lastSourceNamespace) {
+            lastNamespace = getNamespace(namespace.getURI(), namespace.getPrefix());
+            lastSourceNamespace = namespace;
+
+            if (recordedNamespaces != null) {
+                recordNamespace(namespace, lastNamespace);
+            }
+        }
+
+        return lastNamespace;
+    }
+
+    private void recordNamespace(Namespace namespace, Namespace trackedNamespace) {
+        // JDOM namespaces are shared instances, but equals() ignores prefix
+        for (Namespace[] pair : recordedNamespaces) {
+            if (pair[0] == namespace) {
+                return;
+            }
+        }
+
+        recordedNamespaces.add(new Namespace[] {namespace, trackedNamespace});
+    }
+
+    /**
+     * Starts recording of distinct namespaces passed to {@link #getNamespace(Namespace)} together with the tracked
+     * namespaces returned for them, in order of the first lookup.
+     */
+    public void startRecording(List<Namespace[]> namespacePairs) {
+        recordedNamespaces = namespacePairs;
+        lastSourceNamespace = null;
+    }
+
+    public void stopRecording() {
+        recordedNamespaces = null;
+        lastSourceNamespace = null;
+    }
+
+    /**
+     * Looks up namespaces recorded by another import of the same content; lookups change the tracker the same way the
+     * import does.
+     *
+     * @return <code>true</code> if all namespaces are tracked with the same prefixes as they were then
+     */
+    public boolean replay(List<Namespace[]> namespacePairs) {
+        boolean result = true;
+        for (Namespace[] pair : namespacePairs) {
+            Namespace trackedNamespace = getNamespace(pair[0]);
+            if (!trackedNamespace.getPrefix().equals(pair[1].getPrefix())) {
+                result = false;
+            }
+        }
+
+        return result;
     }
 
     public Collection<Namespace> getNamespaces() {
@@ -1,29 +1,78 @@
 package org.richfaces.build.shade.resource;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.Set;
-import java.util.TreeSet;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.richfaces.build.shade.resource.MergedProperties.ConflictPolicy;
 
 public class ResourceMappingsPropertiesTransformer extends BaseResourceTransformer {
 
     private static final String RESOURCE_MAPPINGS_FILE_PATH = "META-INF/richfaces/resource-mappings.properties";
 
-    private Set<String> records = new TreeSet<String>();
+    /**
+     * Encoding of properties files as defined by {@link java.util.Properties#load(InputStream)}.
+     */
+    private String encoding = "ISO-8859-1";
+
+    private ConflictPolicy conflictPolicy = ConflictPolicy.FIRST_WINS;
+
+    private boolean reproducible;
+
+    private MergedProperties records;
+
+    private final List<BufferedFile> bufferedFiles = new ArrayList<BufferedFile>();
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    public String getConflictPolicy() {
+        return conflictPolicy.name().toLowerCase(Locale.ENGLISH).replace('_', '-');
+    }
+
+    /**
+     * Sets how entries with the same key and different values are merged: <code>first-wins</code>,
+     * <code>last-wins</code> or <code>fail</code>.
+     */
+    public void setConflictPolicy(String conflictPolicy) {
+        this.conflictPolicy = ConflictPolicy.forName(conflictPolicy);
+    }
+
+    public boolean isReproducible() {
+        return reproducible;
+    }
+
+    /**
+     * Enables byte-identical output for the same set of files regardless of the order they come in: files are buffered
+     * and merged in the order of their contents, so that conflicting entries are resolved the same way, and merged file
+     * is added to archive with fixed modification time.
+     */
+    public void setReproducible(boolean reproducible) {
+        this.reproducible = reproducible;
+    }
 
     @Override
     protected void resetTransformer() {
         super.resetTransformer();
+        records = null;
+        bufferedFiles.clear();
     }
 
     @Override
@@ -40,38 +89,45 @@ public class ResourceMappingsPropertiesTransformer extends BaseResourceTransform
     }
 
     @Override
-    protected void processFile(FileInfo fileInfo) {
-        InputStream is = null;
-        StringBuffer buffer = new StringBuffer();
-        try {
-            is = fileInfo.getContents();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                buffer.append(line);
-                buffer.append("\n");
+    protected void processContents(String resource, InputStream is) throws IOException {
+        if (reproducible) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = is.read(buffer); read >= 0; read = is.read(buffer)) {
+                os.write(buffer, 0, read);
             }
+            bufferedFiles.add(new BufferedFile(describeResource(resource), os.toByteArray()));
+            return;
+        }
 
-            records.add(buffer.toString());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        } finally {
-            closeSafely(is);
+        loadContents(describeResource(resource), is);
+    }
+
+    private void loadContents(String location, InputStream is) throws IOException {
+        if (records == null) {
+            records = new MergedProperties(conflictPolicy);
         }
+
+        records.load(location, new InputStreamReader(is, encoding));
     }
 
     @Override
     protected void writeMergedConfigFiles(Archiver archiver) throws ArchiverException {
-        File f;
-        BufferedWriter writer = null;
-        try {
-            f = File.createTempFile("richfaces-assembly-transform.", ".tmp");
-            f.deleteOnExit();
+        Collections.sort(bufferedFiles);
+        for (BufferedFile file : bufferedFiles) {
+            try {
+                loadContents(file.location, new ByteArrayInputStream(file.contents));
+            } catch (IOException e) {
+                throw new ArchiverException(e.getMessage(), e);
+            }
+        }
 
-            writer = new BufferedWriter(new FileWriter(f));
-            for (String buffer : records) {
-                writer.append(buffer);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(os, encoding);
+            if (records != null) {
+                records.write(writer);
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -79,7 +135,11 @@ public class ResourceMappingsPropertiesTransformer extends BaseResourceTransform
             closeSafely(writer);
         }
 
-        archiver.addFile(f, RESOURCE_MAPPINGS_FILE_PATH);
+        InMemoryResource resource = new InMemoryResource(RESOURCE_MAPPINGS_FILE_PATH, os.toByteArray());
+        if (reproducible) {
+            resource.setLastModified(InMemoryResource.getReproducibleLastModified());
+        }
+        archiver.addResource(resource, RESOURCE_MAPPINGS_FILE_PATH, archiver.getOverrideFileMode());
     }
 
     private void closeSafely(Closeable closeable) {
@@ -92,4 +152,32 @@ public class ResourceMappingsPropertiesTransformer extends BaseResourceTransform
             System.err.println(e);
         }
     }
+
+    private static final class BufferedFile implements Comparable<BufferedFile> {
+
+        private final String location;
+
+        private final byte[] contents;
+
+        public BufferedFile(String location, byte[] contents) {
+            this.location = location;
+            this.contents = contents;
+        }
+
+        /**
+         * Orders files by contents, as all of them have the same name.
+         */
+        public int compareTo(BufferedFile o) {
+            int length = Math.min(contents.length, o.contents.length);
+            for (int i = 0; i < length; i++) {
+                int b1 = contents[i] & 0xFF;
+                int b2 = o.contents[i] & 0xFF;
+                if (b1 != b2) {
+                    return b1 < b2 ? -1 : 1;
+                }
+            }
+
+            return contents.length - o.contents.length;
+        }
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.ResourceIterator;
+
+/**
+ * Iterates archiver resources once for all container descriptor handlers. Iteration invokes
+ * {@link org.codehaus.plexus.components.io.fileselectors.FileSelector#isSelected} of every handler registered for the
+ * archive, so the first handler to be finalized drains resources on behalf of the rest of them.
+ * <p/>
+ * Handlers of different archivers don't contend: each archiver gets its own drain, handlers of the same archiver wait
+ * for the drain started by the first one of them.
+ */
+final class ResourcesDrainCoordinator {
+
+    private static final ConcurrentMap<ArchiverKey, Drain> DRAINS = new ConcurrentHashMap<ArchiverKey, Drain>();
+
+    private static final ReferenceQueue<Archiver> COLLECTED_ARCHIVERS = new ReferenceQueue<Archiver>();
+
+    private static final ThreadLocal<Archiver> DRAINING_ARCHIVER = new ThreadLocal<Archiver>();
+
+    private static final AtomicLong DRAIN_PASSES = new AtomicLong();
+
+    private static final AtomicLong SKIPPED_PASSES = new AtomicLong();
+
+    private ResourcesDrainCoordinator() {
+    }
+
+    /**
+     * Weak identity key, archivers don't define equality and must not be retained after archive has been created.
+     */
+    private static final class ArchiverKey extends WeakReference<Archiver> {
+
+        private final int hash;
+
+        public ArchiverKey(Archiver archiver, ReferenceQueue<Archiver> queue) {
+            super(archiver, queue);
+            this.hash = System.identityHashCode(archiver);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof ArchiverKey)) {
+                return false;
+            }
+
+            Archiver archiver = get();
+            return archiver != null && archiver == ((ArchiverKey) obj).get();
+        }
+    }
+
+    private static final class Drain {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private ArchiverException failure;
+
+        public void run(Archiver archiver) throws ArchiverException {
+            DRAINING_ARCHIVER.set(archiver);
+            try {
+                for (final ResourceIterator it = archiver.getResources(); it.hasNext();) {
+                    it.next();
+                }
+
+                DRAIN_PASSES.incrementAndGet();
+            } catch (ArchiverException e) {
+                failure = e;
+                throw e;
+            } catch (RuntimeException e) {
+                failure = new ArchiverException(e.getMessage(), e);
+                throw e;
+            } finally {
+                DRAINING_ARCHIVER.remove();
+                done.countDown();
+            }
+        }
+
+        public void await() throws ArchiverException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ArchiverException("Interrupted while waiting for archiver resources", e);
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private static void expungeCollectedArchivers() {
+        Reference<? extends Archiver> reference;
+        while ((reference = COLLECTED_ARCHIVERS.poll()) != null) {
+            DRAINS.remove(reference);
+        }
+    }
+
+    public static void drain(Archiver archiver) throws ArchiverException {
+        expungeCollectedArchivers();
+
+        ArchiverKey key = new ArchiverKey(archiver, COLLECTED_ARCHIVERS);
+        Drain drain = new Drain();
+        Drain existingDrain = DRAINS.putIfAbsent(key, drain);
+        if (existingDrain != null) {
+            key.clear();
+            SKIPPED_PASSES.incrementAndGet();
+            existingDrain.await();
+            return;
+        }
+
+        try {
+            drain.run(archiver);
+        } catch (ArchiverException e) {
+            // next handler retries
+            DRAINS.remove(key, drain);
+            throw e;
+        } catch (RuntimeException e) {
+            DRAINS.remove(key, drain);
+            throw e;
+        }
+    }
+
+    /**
+     * @return archiver which resources are being drained by the current thread, <code>null</code> if resources are
+     *         iterated outside of {@link #drain(Archiver)}
+     */
+    public static Archiver getDrainingArchiver() {
+        return DRAINING_ARCHIVER.get();
+    }
+
+    /**
+     * @return number of passes over archiver resources done so far
+     */
+    public static long getDrainPasses() {
+        return DRAIN_PASSES.get();
+    }
+
+    /**
+     * @return number of passes saved because archiver resources had already been drained
+     */
+    public static long getSkippedPasses() {
+        return SKIPPED_PASSES.get();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Bridges maven-shade-plugin resource transformation to container descriptor handlers: shaded resources are passed
+ * to handlers as {@link FileInfo} and merged files are written to shaded jar through {@link Archiver}.
+ */
+final class ShadeTransformerSupport {
+
+    // shade plugin hasn't passed time of any source entry
+    static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+    private ShadeTransformerSupport() {
+    }
+
+    /**
+     * @param is resource contents owned by shade plugin, can be <code>null</code> if only the name is checked
+     */
+    public static FileInfo createFileInfo(String resource, InputStream is) {
+        return new ShadeResource(resource, is);
+    }
+
+    /**
+     * @param time modification time of the added entries, time of the resources is used if {@link #UNKNOWN_TIME}
+     * @return archiver adding resources as entries of the given jar
+     */
+    public static Archiver createArchiver(final JarOutputStream os, final long time) {
+        return new ArchiverAdapter() {
+
+            @Override
+            protected void addResource(String path, PlexusIoResource resource) throws IOException {
+                JarEntry entry = new JarEntry(path);
+                entry.setTime(time != UNKNOWN_TIME ? time : resource.getLastModified());
+                os.putNextEntry(entry);
+
+                InputStream is = resource.getContents();
+                try {
+                    IOUtil.copy(is, os);
+                } finally {
+                    is.close();
+                }
+
+                os.closeEntry();
+            }
+        }.getArchiver();
+    }
+
+    private static final class ShadeResource implements FileInfo {
+
+        private final String name;
+
+        private final InputStream is;
+
+        public ShadeResource(String name, InputStream is) {
+            this.name = name;
+            this.is = is;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public InputStream getContents() throws IOException {
+            if (is == null) {
+                throw new IOException("Contents of '" + name + "' are not available");
+            }
+
+            // stream is closed by shade plugin
+            return new FilterInputStream(is) {
+
+                @Override
+                public void close() throws IOException {
+                }
+            };
+        }
+
+        public boolean isFile() {
+            return true;
+        }
+
+        public boolean isDirectory() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.jdom.Attribute;
+import org.jdom.Element;
+import org.jdom.Text;
+import org.richfaces.build.shade.resource.ElementsComparator.SortKey;
+
+/**
+ * Elements of a single merged document that are kept in memory until they are spilled to a temporary file as a
+ * sorted run. All elements are then read back in sorted order by k-way merge of the runs, only the current element of
+ * each run is kept in memory while they are read. Elements that compare as equal keep the order in which they have been
+ * added, the same as {@link ElementsComparator#sort(List)} does. Runs are written in {@link DescriptorCodec} form.
+ */
+final class SortedRuns {
+
+    private static final String FILE_PREFIX = "sorted-run";
+
+    private static final String FILE_EXTENSION = ".bin";
+
+    // rough per-node overhead of JDOM objects, strings are counted as two bytes per character
+    private static final int NODE_SIZE = 48;
+
+    private final ElementsComparator comparator;
+
+    private final File directory;
+
+    private final List<Element> buffer = new ArrayList<Element>();
+
+    private final List<File> runFiles = new ArrayList<File>();
+
+    private final List<Integer> runSizes = new ArrayList<Integer>();
+
+    private long bufferedSize;
+
+    /**
+     * @param directory directory for temporary run files, default temporary directory is used if <code>null</code>
+     */
+    public SortedRuns(ElementsComparator comparator, File directory) {
+        super();
+        this.comparator = comparator;
+        this.directory = directory;
+    }
+
+    /**
+     * Approximate heap size retained by element and its content.
+     */
+    static long estimateSize(Element element) {
+        long size = NODE_SIZE + 2L * element.getName().length();
+
+        List<?> attributes = element.getAttributes();
+        for (int i = 0; i < attributes.size(); i++) {
+            Attribute attribute = (Attribute) attributes.get(i);
+            size += NODE_SIZE + 2L * (attribute.getName().length() + attribute.getValue().length());
+        }
+
+        List<?> content = element.getContent();
+        for (int i = 0; i < content.size(); i++) {
+            Object child = content.get(i);
+            if (child instanceof Element) {
+                size += estimateSize((Element) child);
+            } else if (child instanceof Text) {
+                size += NODE_SIZE + 2L * ((Text) child).getText().length();
+            } else {
+                size += NODE_SIZE;
+            }
+        }
+
+        return size;
+    }
+
+    public void add(Element element) {
+        buffer.add(element);
+        bufferedSize += estimateSize(element);
+    }
+
+    /**
+     * Approximate heap size of elements that haven't been spilled yet.
+     */
+    public long getBufferedSize() {
+        return bufferedSize;
+    }
+
+    public int getBufferedCount() {
+        return buffer.size();
+    }
+
+    public int getRunsCount() {
+        return runFiles.size();
+    }
+
+    /**
+     * Sorts buffered elements and writes them to a new run file.
+     */
+    public void spill() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+
+        comparator.sort(buffer);
+
+        File file = File.createTempFile(FILE_PREFIX, FILE_EXTENSION, directory);
+        runFiles.add(file);
+        runSizes.add(buffer.size());
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            for (Element element : buffer) {
+                DescriptorCodec.encode(element, out);
+            }
+        } finally {
+            out.close();
+        }
+
+        buffer.clear();
+        bufferedSize = 0;
+    }
+
+    /**
+     * Starts reading of all added elements in sorted order. Run files are deleted when returned merge is closed.
+     */
+    public Merge merge() throws IOException {
+        Merge merge = new Merge();
+        try {
+            for (int i = 0; i < runFiles.size(); i++) {
+                merge.addRun(new FileRun(i, runFiles.get(i), runSizes.get(i)));
+            }
+
+            comparator.sort(buffer);
+            merge.addRun(new ListRun(runFiles.size(), buffer));
+        } catch (IOException e) {
+            merge.close();
+            throw e;
+        }
+
+        return merge;
+    }
+
+    /**
+     * Drops buffered elements and deletes run files.
+     */
+    public void dispose() {
+        buffer.clear();
+        bufferedSize = 0;
+
+        for (File file : runFiles) {
+            file.delete();
+        }
+
+        runFiles.clear();
+        runSizes.clear();
+    }
+
+    /**
+     * Sorted elements read from the heads of the runs.
+     */
+    public final class Merge {
+
+        private final PriorityQueue<Run> queue = new PriorityQueue<Run>();
+
+        private Merge() {
+        }
+
+        private void addRun(Run run) throws IOException {
+            if (run.advance()) {
+                queue.add(run);
+            } else {
+                run.close();
+            }
+        }
+
+        /**
+         * @return next element in sorted order or <code>null</code> if all elements have been read
+         */
+        public Element next() throws IOException {
+            Run run = queue.poll();
+            if (run == null) {
+                return null;
+            }
+
+            Element element = run.getElement();
+            addRun(run);
+            return element;
+        }
+
+        /**
+         * Number of elements currently kept in memory, at most one per run.
+         */
+        public int getHeldCount() {
+            return queue.size();
+        }
+
+        public void close() throws IOException {
+            try {
+                for (Run run : queue) {
+                    run.close();
+                }
+            } finally {
+                queue.clear();
+                dispose();
+            }
+        }
+    }
+
+    private abstract class Run implements Comparable<Run> {
+
+        private final int index;
+
+        private Element element;
+
+        private SortKey key;
+
+        protected Run(int index) {
+            this.index = index;
+        }
+
+        protected abstract Element readElement() throws IOException;
+
+        public boolean advance() throws IOException {
+            element = readElement();
+            key = element != null ? comparator.createKey(element) : null;
+            return element != null;
+        }
+
+        public Element getElement() {
+            return element;
+        }
+
+        public void close() throws IOException {
+        }
+
+        public int compareTo(Run o) {
+            int result = key.compareTo(o.key);
+            if (result == 0) {
+                // elements from earlier runs have been added first
+                result = index < o.index ? -1 : (index == o.index ? 0 : 1);
+            }
+
+            return result;
+        }
+    }
+
+    private final class ListRun extends Run {
+
+        private final Iterator<Element> iterator;
+
+        public ListRun(int index, List<Element> elements) {
+            super(index);
+            this.iterator = elements.iterator();
+        }
+
+        @Override
+        protected Element readElement() {
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+    }
+
+    private final class FileRun extends Run {
+
+        private final DataInputStream in;
+
+        private final long length;
+
+        private int remaining;
+
+        public FileRun(int index, File file, int size) throws IOException {
+            super(index);
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            this.length = file.length();
+            this.remaining = size;
+        }
+
+        @Override
+        protected Element readElement() throws IOException {
+            if (remaining == 0) {
+                return null;
+            }
+
+            remaining--;
+            return DescriptorCodec.decodeElement(in, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
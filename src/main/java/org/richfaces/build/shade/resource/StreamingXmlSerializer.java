@@ -0,0 +1,595 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.xml.transform.Result;
+
+import org.jdom.Attribute;
+import org.jdom.CDATA;
+import org.jdom.Comment;
+import org.jdom.DocType;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.EntityRef;
+import org.jdom.Namespace;
+import org.jdom.ProcessingInstruction;
+import org.jdom.Text;
+import org.jdom.Verifier;
+
+/**
+ * Writes documents without indentation straight to UTF-8 output. Output is the same as of {@link org.jdom.output.XMLOutputter}
+ * with {@link org.jdom.output.Format#getCompactFormat()} or {@link org.jdom.output.Format#getRawFormat()}, but text is
+ * escaped and normalized while it is written, without building intermediate strings.
+ */
+final class StreamingXmlSerializer {
+
+    /**
+     * Formatting of merged files.
+     */
+    public enum OutputMode {
+        /**
+         * Indented output, the default.
+         */
+        PRETTY,
+        /**
+         * No indentation, whitespace in text is normalized.
+         */
+        COMPACT,
+        /**
+         * No indentation, text is written as is.
+         */
+        RAW;
+
+        public static OutputMode forName(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    private static final String LINE_SEPARATOR = "\r\n";
+
+    private static final String XML_SPACE = "space";
+
+    private final boolean normalize;
+
+    private Writer out;
+
+    // text mode can be changed by xml:space attribute
+    private boolean currentNormalize;
+
+    private boolean escapeOutput = true;
+
+    private final List<String> namespacePrefixes = new ArrayList<String>();
+
+    private final List<String> namespaceUris = new ArrayList<String>();
+
+    /**
+     * @param normalize <code>true</code> for compact output, <code>false</code> for raw
+     */
+    public StreamingXmlSerializer(boolean normalize) {
+        super();
+        this.normalize = normalize;
+    }
+
+    public void output(Document document, OutputStream os) throws IOException {
+        out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
+        currentNormalize = normalize;
+        escapeOutput = true;
+
+        try {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.write(LINE_SEPARATOR);
+
+            List<?> content = document.getContent();
+            for (int i = 0; i < content.size(); i++) {
+                Object node = content.get(i);
+                if (node instanceof Element) {
+                    printElement((Element) node);
+                } else if (node instanceof Comment) {
+                    printComment((Comment) node);
+                } else if (node instanceof ProcessingInstruction) {
+                    printProcessingInstruction((ProcessingInstruction) node);
+                } else if (node instanceof DocType) {
+                    printDocType((DocType) node);
+                    out.write(LINE_SEPARATOR);
+                }
+            }
+
+            out.write(LINE_SEPARATOR);
+            out.flush();
+        } finally {
+            out = null;
+            namespacePrefixes.clear();
+            namespaceUris.clear();
+        }
+    }
+
+    /**
+     * Starts output of children of the given element, namespaces declared by the element are in scope of the children.
+     * The element itself is not written.
+     */
+    void startChildren(Writer writer, Element parent) {
+        out = writer;
+        escapeOutput = true;
+        currentNormalize = normalize;
+
+        String space = parent.getAttributeValue(XML_SPACE, Namespace.XML_NAMESPACE);
+        if ("preserve".equals(space)) {
+            currentNormalize = false;
+        }
+
+        Namespace namespace = parent.getNamespace();
+        if (namespace != Namespace.XML_NAMESPACE && namespace != Namespace.NO_NAMESPACE) {
+            declareNamespace(namespace);
+        }
+
+        List<?> additionalNamespaces = parent.getAdditionalNamespaces();
+        for (int i = 0; i < additionalNamespaces.size(); i++) {
+            declareNamespace((Namespace) additionalNamespaces.get(i));
+        }
+
+        List<?> attributes = parent.getAttributes();
+        for (int i = 0; i < attributes.size(); i++) {
+            Namespace attributeNamespace = ((Attribute) attributes.get(i)).getNamespace();
+            if (attributeNamespace != Namespace.NO_NAMESPACE && attributeNamespace != Namespace.XML_NAMESPACE) {
+                declareNamespace(attributeNamespace);
+            }
+        }
+    }
+
+    void writeChild(Element element) throws IOException {
+        printElement(element);
+    }
+
+    void endChildren() throws IOException {
+        try {
+            out.flush();
+        } finally {
+            out = null;
+            namespacePrefixes.clear();
+            namespaceUris.clear();
+        }
+    }
+
+    private void printDocType(DocType docType) throws IOException {
+        String publicID = docType.getPublicID();
+        String systemID = docType.getSystemID();
+        String internalSubset = docType.getInternalSubset();
+
+        out.write("<!DOCTYPE ");
+        out.write(docType.getElementName());
+        if (publicID != null) {
+            out.write(" PUBLIC \"");
+            out.write(publicID);
+            out.write('"');
+        }
+
+        if (systemID != null) {
+            if (publicID == null) {
+                out.write(" SYSTEM");
+            }
+
+            out.write(" \"");
+            out.write(systemID);
+            out.write('"');
+        }
+
+        if (internalSubset != null && internalSubset.length() != 0) {
+            out.write(" [");
+            out.write(LINE_SEPARATOR);
+            out.write(internalSubset);
+            out.write(']');
+        }
+
+        out.write('>');
+    }
+
+    private void printComment(Comment comment) throws IOException {
+        out.write("<!--");
+        out.write(comment.getText());
+        out.write("-->");
+    }
+
+    private void printProcessingInstruction(ProcessingInstruction pi) throws IOException {
+        String target = pi.getTarget();
+        if (Result.PI_DISABLE_OUTPUT_ESCAPING.equals(target)) {
+            escapeOutput = false;
+        } else if (Result.PI_ENABLE_OUTPUT_ESCAPING.equals(target)) {
+            escapeOutput = true;
+        } else {
+            String data = pi.getData();
+            out.write("<?");
+            out.write(target);
+            if (data.length() != 0) {
+                out.write(' ');
+                out.write(data);
+            }
+
+            out.write("?>");
+        }
+    }
+
+    private void printName(Namespace namespace, String name) throws IOException {
+        String prefix = namespace.getPrefix();
+        if (prefix.length() != 0) {
+            out.write(prefix);
+            out.write(':');
+        }
+
+        out.write(name);
+    }
+
+    private String getNamespaceUri(String prefix) {
+        int index = namespacePrefixes.lastIndexOf(prefix);
+        return index >= 0 ? namespaceUris.get(index) : null;
+    }
+
+    /**
+     * @return <code>false</code> if the same namespace is already in scope
+     */
+    private boolean declareNamespace(Namespace namespace) {
+        String prefix = namespace.getPrefix();
+        String uri = namespace.getURI();
+        if (uri.equals(getNamespaceUri(prefix))) {
+            return false;
+        }
+
+        namespacePrefixes.add(prefix);
+        namespaceUris.add(uri);
+        return true;
+    }
+
+    private void printNamespace(Namespace namespace) throws IOException {
+        if (!declareNamespace(namespace)) {
+            return;
+        }
+
+        String prefix = namespace.getPrefix();
+        out.write(" xmlns");
+        if (prefix.length() != 0) {
+            out.write(':');
+            out.write(prefix);
+        }
+
+        out.write("=\"");
+        writeEscapedAttribute(namespace.getURI());
+        out.write('"');
+    }
+
+    private void printElement(Element element) throws IOException {
+        List<?> attributes = element.getAttributes();
+        List<?> content = element.getContent();
+
+        boolean previousNormalize = currentNormalize;
+        String space = element.getAttributeValue(XML_SPACE, Namespace.XML_NAMESPACE);
+        if ("default".equals(space)) {
+            currentNormalize = normalize;
+        } else if ("preserve".equals(space)) {
+            currentNormalize = false;
+        }
+
+        out.write('<');
+        printName(element.getNamespace(), element.getName());
+
+        int previousNamespacesSize = namespacePrefixes.size();
+
+        Namespace namespace = element.getNamespace();
+        if (namespace != Namespace.XML_NAMESPACE
+            && !(namespace == Namespace.NO_NAMESPACE && getNamespaceUri("") == null)) {
+            printNamespace(namespace);
+        }
+
+        List<?> additionalNamespaces = element.getAdditionalNamespaces();
+        for (int i = 0; i < additionalNamespaces.size(); i++) {
+            printNamespace((Namespace) additionalNamespaces.get(i));
+        }
+
+        for (int i = 0; i < attributes.size(); i++) {
+            Attribute attribute = (Attribute) attributes.get(i);
+            Namespace attributeNamespace = attribute.getNamespace();
+            if (attributeNamespace != Namespace.NO_NAMESPACE && attributeNamespace != Namespace.XML_NAMESPACE) {
+                printNamespace(attributeNamespace);
+            }
+
+            out.write(' ');
+            printName(attributeNamespace, attribute.getName());
+            out.write("=\"");
+            writeEscapedAttribute(attribute.getValue());
+            out.write('"');
+        }
+
+        int size = content.size();
+        int start = skipLeadingWhite(content, 0);
+        if (start >= size) {
+            out.write(" />");
+        } else {
+            out.write('>');
+            if (nextNonText(content, start) < size) {
+                printContentRange(content, start, size);
+            } else {
+                printTextRange(content, start, size);
+            }
+
+            out.write("</");
+            printName(element.getNamespace(), element.getName());
+            out.write('>');
+        }
+
+        while (namespacePrefixes.size() > previousNamespacesSize) {
+            namespacePrefixes.remove(namespacePrefixes.size() - 1);
+            namespaceUris.remove(namespaceUris.size() - 1);
+        }
+
+        currentNormalize = previousNormalize;
+    }
+
+    private void printContentRange(List<?> content, int start, int end) throws IOException {
+        int index = start;
+        while (index < end) {
+            Object node = content.get(index);
+            if (node instanceof Text || node instanceof EntityRef) {
+                int first = skipLeadingWhite(content, index);
+                index = nextNonText(content, first);
+                if (first < index) {
+                    printTextRange(content, first, index);
+                }
+
+                continue;
+            }
+
+            if (node instanceof Comment) {
+                printComment((Comment) node);
+            } else if (node instanceof Element) {
+                printElement((Element) node);
+            } else if (node instanceof ProcessingInstruction) {
+                printProcessingInstruction((ProcessingInstruction) node);
+            }
+
+            index++;
+        }
+    }
+
+    private void printTextRange(List<?> content, int start, int end) throws IOException {
+        start = skipLeadingWhite(content, start);
+        if (start >= content.size()) {
+            return;
+        }
+
+        end = skipTrailingWhite(content, end);
+
+        boolean hasPrevious = false;
+        boolean previousEndsWithWhite = false;
+        for (int i = start; i < end; i++) {
+            Object node = content.get(i);
+
+            boolean startsWithWhite;
+            boolean endsWithWhite;
+            if (node instanceof EntityRef) {
+                startsWithWhite = false;
+                endsWithWhite = false;
+            } else {
+                String text = ((Text) node).getText();
+                if (text.length() == 0) {
+                    continue;
+                }
+
+                startsWithWhite = Verifier.isXMLWhitespace(text.charAt(0));
+                endsWithWhite = Verifier.isXMLWhitespace(text.charAt(text.length() - 1));
+            }
+
+            if (hasPrevious && currentNormalize && (previousEndsWithWhite || startsWithWhite)) {
+                out.write(' ');
+            }
+
+            if (node instanceof CDATA) {
+                out.write("<![CDATA[");
+                writeText(((CDATA) node).getText(), false);
+                out.write("]]>");
+            } else if (node instanceof EntityRef) {
+                out.write('&');
+                out.write(((EntityRef) node).getName());
+                out.write(';');
+            } else {
+                writeText(((Text) node).getText(), escapeOutput);
+            }
+
+            hasPrevious = true;
+            previousEndsWithWhite = endsWithWhite;
+        }
+    }
+
+    private static boolean isNormalizedWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Writes text, normalized in compact mode, escaping markup characters if requested.
+     */
+    private void writeText(String text, boolean escape) throws IOException {
+        int length = text.length();
+        int runStart = 0;
+
+        // in normalizing mode whitespace runs are written as a single space, skipped at the start and at the end
+        boolean pendingSpace = false;
+        boolean written = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+
+            if (currentNormalize && isNormalizedWhitespace(c)) {
+                if (runStart < i) {
+                    out.write(text, runStart, i - runStart);
+                    written = true;
+                }
+
+                runStart = i + 1;
+                pendingSpace = written;
+                continue;
+            }
+
+            String entity = null;
+            if (escape) {
+                switch (c) {
+                    case '<':
+                        entity = "&lt;";
+                        break;
+                    case '>':
+                        entity = "&gt;";
+                        break;
+                    case '&':
+                        entity = "&amp;";
+                        break;
+                    case '\r':
+                        entity = "&#xD;";
+                        break;
+                    case '\n':
+                        entity = LINE_SEPARATOR;
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            if (pendingSpace) {
+                out.write(' ');
+                pendingSpace = false;
+            }
+
+            if (entity != null) {
+                if (runStart < i) {
+                    out.write(text, runStart, i - runStart);
+                }
+
+                out.write(entity);
+                runStart = i + 1;
+                written = true;
+            }
+        }
+
+        if (runStart < length) {
+            out.write(text, runStart, length - runStart);
+        }
+    }
+
+    private void writeEscapedAttribute(String value) throws IOException {
+        int length = value.length();
+        int runStart = 0;
+        for (int i = 0; i < length; i++) {
+            String entity;
+            switch (value.charAt(i)) {
+                case '<':
+                    entity = "&lt;";
+                    break;
+                case '>':
+                    entity = "&gt;";
+                    break;
+                case '"':
+                    entity = "&quot;";
+                    break;
+                case '&':
+                    entity = "&amp;";
+                    break;
+                case '\r':
+                    entity = "&#xD;";
+                    break;
+                case '\t':
+                    entity = "&#x9;";
+                    break;
+                case '\n':
+                    entity = "&#xA;";
+                    break;
+                default:
+                    continue;
+            }
+
+            if (runStart < i) {
+                out.write(value, runStart, i - runStart);
+            }
+
+            out.write(entity);
+            runStart = i + 1;
+        }
+
+        if (runStart < length) {
+            out.write(value, runStart, length - runStart);
+        }
+    }
+
+    private static boolean isAllWhitespace(Object node) {
+        if (!(node instanceof Text)) {
+            return false;
+        }
+
+        String text = ((Text) node).getText();
+        for (int i = 0; i < text.length(); i++) {
+            if (!Verifier.isXMLWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int skipLeadingWhite(List<?> content, int start) {
+        int index = start;
+        if (currentNormalize) {
+            while (index < content.size() && isAllWhitespace(content.get(index))) {
+                index++;
+            }
+        }
+
+        return index;
+    }
+
+    private int skipTrailingWhite(List<?> content, int end) {
+        int index = Math.min(end, content.size());
+        if (currentNormalize) {
+            while (index > 0 && isAllWhitespace(content.get(index - 1))) {
+                index--;
+            }
+        }
+
+        return index;
+    }
+
+    private static int nextNonText(List<?> content, int start) {
+        int index = start;
+        while (index < content.size()) {
+            Object node = content.get(index);
+            if (!(node instanceof Text || node instanceof EntityRef)) {
+                return index;
+            }
+
+            index++;
+        }
+
+        return index;
+    }
+}
@@ -21,6 +21,8 @@
  */
 package org.richfaces.build.shade.resource;
 
+import java.util.regex.Pattern;
+
 /**
  * @author Nick Belaevski
  * 
@@ -31,6 +33,8 @@ public class Taglib {
 
     private String sourceNamespacesPattern;
 
+    private Pattern compiledPattern;
+
     public String getTargetNamespace() {
         return targetNamespace;
     }
@@ -45,13 +49,26 @@ public class Taglib {
 
     public void setSourceNamespacesPattern(String sourceNamespacesPattern) {
         this.sourceNamespacesPattern = sourceNamespacesPattern;
+        this.compiledPattern = null;
+    }
+
+    boolean hasPattern() {
+        return sourceNamespacesPattern != null && sourceNamespacesPattern.length() != 0;
+    }
+
+    Pattern getCompiledPattern() {
+        if (compiledPattern == null) {
+            compiledPattern = Pattern.compile(sourceNamespacesPattern);
+        }
+
+        return compiledPattern;
     }
 
     public boolean matches(String namespace) {
-        if (sourceNamespacesPattern == null || sourceNamespacesPattern.length() == 0) {
+        if (!hasPattern()) {
             return targetNamespace.equals(namespace);
         }
 
-        return namespace.matches(sourceNamespacesPattern);
+        return getCompiledPattern().matcher(namespace).matches();
     }
 }
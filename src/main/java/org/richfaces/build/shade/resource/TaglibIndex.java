@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves source namespace to target namespace of the first matching {@link Taglib}, as linear search through the
+ * taglibs would do. Exact namespaces are looked up in hash map, only taglibs with patterns are searched linearly, and
+ * resolved namespaces are memoized. Patterns are matched one by one rather than merged into a single alternation,
+ * which would renumber their backreferences and clash their named groups.
+ */
+final class TaglibIndex {
+
+    private final Map<String, Integer> exactNamespaces = new HashMap<String, Integer>();
+
+    private final List<Pattern> patterns = new ArrayList<Pattern>();
+
+    // pattern index -> taglib index
+    private final List<Integer> patternTaglibs = new ArrayList<Integer>();
+
+    private final Taglib[] taglibs;
+
+    private final Map<String, String> resolvedNamespaces = new HashMap<String, String>();
+
+    public TaglibIndex(Taglib[] taglibs) {
+        super();
+        this.taglibs = taglibs.clone();
+
+        for (int i = 0; i < this.taglibs.length; i++) {
+            Taglib taglib = this.taglibs[i];
+            if (taglib.hasPattern()) {
+                patterns.add(taglib.getCompiledPattern());
+                patternTaglibs.add(i);
+            } else if (!exactNamespaces.containsKey(taglib.getTargetNamespace())) {
+                exactNamespaces.put(taglib.getTargetNamespace(), i);
+            }
+        }
+    }
+
+    private int findPatternTaglib(String namespace) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(namespace).matches()) {
+                return patternTaglibs.get(i);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return target namespace of the first matching taglib or the namespace itself if no taglib matches
+     */
+    public String resolve(String namespace) {
+        String result = resolvedNamespaces.get(namespace);
+        if (result == null) {
+            int taglibIndex = findPatternTaglib(namespace);
+
+            Integer exactIndex = exactNamespaces.get(namespace);
+            if (exactIndex != null && (taglibIndex < 0 || exactIndex.intValue() < taglibIndex)) {
+                taglibIndex = exactIndex.intValue();
+            }
+
+            result = taglibIndex >= 0 ? taglibs[taglibIndex].getTargetNamespace() : namespace;
+            resolvedNamespaces.put(namespace, result);
+        }
+
+        return result;
+    }
+}
@@ -21,27 +21,44 @@
  */
 package org.richfaces.build.shade.resource;
 
-import java.text.MessageFormat;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.util.IOUtil;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.JDOMException;
 import org.jdom.Namespace;
 import org.jdom.filter.ElementFilter;
 import org.jdom.filter.Filter;
-import org.jdom.xpath.XPath;
+import org.richfaces.build.shade.resource.TransformerMetrics.Phase;
 
 /**
  * @author Nick Belaevski
@@ -68,30 +85,78 @@ public class TaglibXmlResourceTransformer extends BaseFacesResourceTransformer {
 
     private static final String TAGLIB_XML_FILE_EXTENSION = ".taglib.xml";
 
-    private static final String NAMESPACE_EXPRESSION = MessageFormat.format("/{0}:{1}/{0}:{2}|/{1}/{2}", JAVAEE_PREFIX,
-            FACELET_TAGLIB, NAMESPACE);
+    private static final ChildElementPath TAG_NAME_PATH = new ChildElementPath(JAVAEE_URI, TAG_NAME);
+
+    private static final ChildElementPath FUNCTION_NAME_PATH = new ChildElementPath(JAVAEE_URI, FUNCTION_NAME);
+
+    private static final ElementsComparator ELEMENTS_COMPARATOR = createElementsComparator();
 
-    private final Map<String, List<Document>> tagLibraries = new HashMap<String, List<Document>>();
+    // tags are imported as soon as source library is processed, in both in-memory and spill modes, so that generated
+    // namespace prefixes don't depend on the mode
+    private final Map<String, List<Element>> tagLibraries = new TreeMap<String, List<Element>>();
+
+    private DuplicatesIndex<Element> duplicatesIndex;
     
     // ensures that each library will be processed only once
     private final Set<String> tagLibrariesProcessed = new HashSet<String>();
 
-    private final Map<String, Document> passThroughLibraries = new HashMap<String, Document>();
+    private final Map<String, Document> passThroughLibraries = new TreeMap<String, Document>();
 
     private Taglib[] taglibs = new Taglib[0];
 
-    private Comparator<Element> createElementsComparator() throws JDOMException {
+    private TaglibIndex taglibIndex;
+
+    private long memoryBudget = 0;
+
+    private String spillDirectory;
+
+    // merged libraries in spill mode
+    private final Map<String, SortedRuns> spilledLibraries = new TreeMap<String, SortedRuns>();
+
+    private final Map<String, File> spilledPassThroughLibraries = new TreeMap<String, File>();
+
+    // original content of pass-through libraries that are copied as is
+    private final Map<String, byte[]> passThroughContents = new TreeMap<String, byte[]>();
+
+    private final Map<String, File> spilledPassThroughContents = new TreeMap<String, File>();
+
+    private boolean reformatPassThrough = false;
+
+    private XMLInputFactory inputFactory;
+
+    private long retainedSize;
+
+    private static ElementsComparator createElementsComparator() {
         List<String> elements = Arrays.asList("description", "display-name", "icon", "library-class", NAMESPACE,
                 "composite-library-name", TAG, FUNCTION, "taglib-extension");
 
-        Map<String, XPath> elementNameExpressions = new HashMap<String, XPath>();
-        String tagPathExpr = MessageFormat.format("./{0}:{1}|./{1}", JAVAEE_PREFIX, TAG_NAME);
-        elementNameExpressions.put(TAG, createXPath(tagPathExpr));
+        Map<String, List<ChildElementPath>> elementNamePaths = new HashMap<String, List<ChildElementPath>>();
+        elementNamePaths.put(TAG, Collections.singletonList(TAG_NAME_PATH));
+        elementNamePaths.put(FUNCTION, Collections.singletonList(FUNCTION_NAME_PATH));
 
-        String fnPathExpr = MessageFormat.format("./{0}:{1}|./{1}", JAVAEE_PREFIX, FUNCTION_NAME);
-        elementNameExpressions.put(FUNCTION, createXPath(fnPathExpr));
+        return new ElementsComparator(JAVAEE_URI, elements, elementNamePaths);
+    }
 
-        return new ElementsComparator(JAVAEE_URI, elements, elementNameExpressions);
+    static ElementsComparator getElementsComparator() {
+        return ELEMENTS_COMPARATOR;
+    }
+
+    /**
+     * Same as "/javaee:facelet-taglib/javaee:namespace|/facelet-taglib/namespace" expression.
+     */
+    private static String getNamespaceUri(final Document document) {
+        Element rootElement = document.getRootElement();
+        if (!FACELET_TAGLIB.equals(rootElement.getName())) {
+            return "";
+        }
+
+        String rootNamespaceUri = rootElement.getNamespaceURI();
+        if (!JAVAEE_URI.equals(rootNamespaceUri) && rootNamespaceUri.length() != 0) {
+            return "";
+        }
+
+        Element namespaceElement = rootElement.getChild(NAMESPACE, rootElement.getNamespace());
+        return namespaceElement != null ? namespaceElement.getValue() : "";
     }
 
     private String getShortName(final String namespaceUri) {
@@ -107,6 +172,40 @@ public class TaglibXmlResourceTransformer extends BaseFacesResourceTransformer {
         return META_INF_PATH + shortName + TAGLIB_XML_FILE_EXTENSION;
     }
 
+    /**
+     * Identifying key of tag or function for duplicates detection, <code>null</code> for other elements.
+     */
+    private String getDuplicateKey(final Element element, final String namespaceUri) {
+        if (!isJavaEEOrDefaultNamespace(element)) {
+            return null;
+        }
+
+        String name = element.getName();
+        ChildElementPath namePath;
+        if (TAG.equals(name)) {
+            namePath = TAG_NAME_PATH;
+        } else if (FUNCTION.equals(name)) {
+            namePath = FUNCTION_NAME_PATH;
+        } else {
+            return null;
+        }
+
+        String value = namePath.valueOf(element).trim();
+        if (value.length() == 0) {
+            return null;
+        }
+
+        return name + " '" + value + "' of library '" + namespaceUri + "'";
+    }
+
+    private DuplicatesIndex<Element> getDuplicatesIndex() {
+        if (duplicatesIndex == null) {
+            duplicatesIndex = createDuplicatesIndex();
+        }
+
+        return duplicatesIndex;
+    }
+
     private void checkRootElement(final Element element) {
         if (!FACELET_TAGLIB.equals(element.getName())) {
             throw new IllegalArgumentException("Root element name: " + element.getName());
@@ -118,7 +217,292 @@ public class TaglibXmlResourceTransformer extends BaseFacesResourceTransformer {
     }
 
     public boolean hasTransformedResource() {
-        return !tagLibraries.isEmpty() || !passThroughLibraries.isEmpty();
+        return !tagLibraries.isEmpty() || !passThroughLibraries.isEmpty() || !spilledLibraries.isEmpty()
+            || !spilledPassThroughLibraries.isEmpty() || !passThroughContents.isEmpty()
+            || !spilledPassThroughContents.isEmpty();
+    }
+
+    private XMLInputFactory getInputFactory() {
+        if (inputFactory == null) {
+            inputFactory = XMLInputFactory.newInstance();
+            inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            inputFactory.setXMLResolver(new XMLResolver() {
+
+                @Override
+                public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace)
+                    throws XMLStreamException {
+                    return new ByteArrayInputStream(new byte[0]);
+                }
+            });
+        }
+
+        return inputFactory;
+    }
+
+    private static String maskNullString(final String s) {
+        return s != null ? s : "";
+    }
+
+    /**
+     * Streaming version of {@link #getNamespaceUri(Document)}, document is read only up to the namespace element.
+     */
+    private String peekNamespaceUri(final byte[] contents) throws XMLStreamException {
+        XMLStreamReader reader = getInputFactory().createXMLStreamReader(new ByteArrayInputStream(contents));
+        try {
+            while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                // skip prolog
+            }
+
+            String rootNamespaceUri = maskNullString(reader.getNamespaceURI());
+            if (!FACELET_TAGLIB.equals(reader.getLocalName())
+                || (!JAVAEE_URI.equals(rootNamespaceUri) && rootNamespaceUri.length() != 0)) {
+                return "";
+            }
+
+            int depth = 1;
+            while (depth > 0) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (depth == 1 && NAMESPACE.equals(reader.getLocalName())
+                        && rootNamespaceUri.equals(maskNullString(reader.getNamespaceURI()))) {
+                        return reader.getElementText();
+                    }
+
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+
+            return "";
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    protected void processContents(final String resource, final InputStream is) throws IOException, JDOMException {
+        if (reformatPassThrough) {
+            super.processContents(resource, is);
+            return;
+        }
+
+        byte[] contents = readContents(is);
+
+        boolean passThrough;
+        try {
+            passThrough = peekNamespaceUri(contents).length() == 0;
+        } catch (XMLStreamException e) {
+            // let the parser report malformed document
+            passThrough = false;
+        }
+
+        if (!passThrough) {
+            super.processContents(resource, new ByteArrayInputStream(contents));
+            return;
+        }
+
+        passThroughContents.put(resource, contents);
+        if (memoryBudget > 0) {
+            retainedSize += contents.length;
+            spillIfOverBudget();
+        }
+    }
+
+    private static Filter createTagsFilter(final Namespace javaEENamespace) {
+        return new ElementFilter().and(new ElementFilter(NAMESPACE, javaEENamespace).negate());
+    }
+
+    private Document createMergedDocument(final String namespaceUri, final Namespace javaEENamespace) {
+        Document document = new org.jdom.Document();
+
+        Element rootElement = new Element(FACELET_TAGLIB, javaEENamespace);
+        rootElement.setAttribute(VERSION, CURRENT_VERSION);
+        addSchemaLocation(rootElement, "http://java.sun.com/xml/ns/javaee/web-facelettaglibrary_2_0.xsd");
+        rootElement.setAttribute(ID, getShortName(namespaceUri));
+
+        document.addContent(rootElement);
+        return document;
+    }
+
+    private Element createNamespaceElement(final String namespaceUri, final Namespace javaEENamespace) {
+        Element nsElement = new Element(NAMESPACE, javaEENamespace);
+        nsElement.setText(namespaceUri);
+        return nsElement;
+    }
+
+    private File getSpillDirectoryFile() {
+        return spillDirectory != null ? new File(spillDirectory) : null;
+    }
+
+    /**
+     * Moves retained tags and pass-through libraries to disk if their size is over the memory budget.
+     */
+    private void spillIfOverBudget() throws IOException {
+        if (retainedSize <= memoryBudget) {
+            return;
+        }
+
+        getLogger().debug("Spilling " + retainedSize + " bytes of retained taglib descriptors to disk");
+
+        TransformerMetrics metrics = getMetrics();
+        long start = System.nanoTime();
+        for (SortedRuns runs : spilledLibraries.values()) {
+            metrics.releaseElements(runs.getBufferedCount());
+            runs.spill();
+        }
+
+        metrics.addTime(Phase.SORT, System.nanoTime() - start);
+
+        for (Map.Entry<String, Document> entry : passThroughLibraries.entrySet()) {
+            File file = File.createTempFile("pass-through", ".bin", getSpillDirectoryFile());
+            spilledPassThroughLibraries.put(entry.getKey(), file);
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                DescriptorCodec.encode(entry.getValue(), Collections.<Element, Element>emptyMap(), Collections
+                    .<Namespace[]>emptyList(), out);
+            } finally {
+                out.close();
+            }
+        }
+
+        passThroughLibraries.clear();
+
+        for (Map.Entry<String, byte[]> entry : passThroughContents.entrySet()) {
+            File file = File.createTempFile("pass-through", ".xml", getSpillDirectoryFile());
+            spilledPassThroughContents.put(entry.getKey(), file);
+            OutputStream os = new FileOutputStream(file);
+            try {
+                os.write(entry.getValue());
+            } finally {
+                os.close();
+            }
+        }
+
+        passThroughContents.clear();
+        retainedSize = 0;
+    }
+
+    private Document readSpilledDocument(final File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return DescriptorCodec.decode(in, file.length(), new ArrayList<Namespace[]>(), new HashSet<Element>());
+        } finally {
+            in.close();
+        }
+    }
+
+    private void processMergedDocument(final String resource, final String namespaceUri, final Document document) {
+        Element sourceRootElement = document.getRootElement();
+        checkRootElement(sourceRootElement);
+
+        List<Element> elements = tagLibraries.get(namespaceUri);
+        if (elements == null) {
+            elements = new ArrayList<Element>();
+            // namespace element is added first, so it goes before other elements that compare as equal
+            elements.add(createNamespaceElement(namespaceUri, getJavaEENamespace()));
+            tagLibraries.put(namespaceUri, elements);
+        }
+
+        Filter filter = createTagsFilter(getJavaEENamespace());
+        List<Element> tagsContent = new ArrayList<Element>(checkedList(sourceRootElement.getContent(filter),
+            Element.class));
+        String location = describeResource(resource);
+        for (Element tagElement : tagsContent) {
+            Element importedElement = cloneAndImportElement(tagElement);
+            getDuplicatesIndex().add(getDuplicateKey(importedElement, namespaceUri), location, importedElement,
+                elements);
+            getMetrics().addMergedElements(importedElement.getName(), 1);
+        }
+
+        importCompleted(document);
+        getMetrics().retainElements(tagsContent.size());
+    }
+
+    private void processSpilledDocument(final String resource, final String namespaceUri, final Document document)
+        throws IOException {
+        Element sourceRootElement = document.getRootElement();
+        checkRootElement(sourceRootElement);
+
+        SortedRuns runs = spilledLibraries.get(namespaceUri);
+        if (runs == null) {
+            runs = new SortedRuns(getElementsComparator(), getSpillDirectoryFile());
+            // namespace element is added first, so it goes before other elements that compare as equal
+            runs.add(createNamespaceElement(namespaceUri, getJavaEENamespace()));
+            spilledLibraries.put(namespaceUri, runs);
+        }
+
+        long sizeBefore = runs.getBufferedSize();
+
+        Filter filter = createTagsFilter(getJavaEENamespace());
+        List<Element> tagsContent = new ArrayList<Element>(checkedList(sourceRootElement.getContent(filter),
+            Element.class));
+        for (Element tagElement : tagsContent) {
+            Element importedElement = cloneAndImportElement(tagElement);
+            // spilled elements can't be replaced, last duplicates are picked after merge
+            if (getDuplicatesIndex().register(getDuplicateKey(importedElement, namespaceUri),
+                describeResource(resource))) {
+                runs.add(importedElement);
+                getMetrics().addMergedElements(importedElement.getName(), 1);
+            }
+        }
+
+        importCompleted(document);
+        getMetrics().retainElements(tagsContent.size());
+
+        retainedSize += runs.getBufferedSize() - sizeBefore;
+        spillIfOverBudget();
+    }
+
+    private void writeSpilledLibraries(final Archiver archiver) throws IOException, ArchiverException {
+        for (Map.Entry<String, File> entry : spilledPassThroughLibraries.entrySet()) {
+            addToArchive(entry.getKey(), readSpilledDocument(entry.getValue()), archiver);
+        }
+
+        for (Map.Entry<String, File> entry : spilledPassThroughContents.entrySet()) {
+            InputStream is = new FileInputStream(entry.getValue());
+            try {
+                addToArchive(entry.getKey(), IOUtil.toByteArray(is), archiver);
+            } finally {
+                is.close();
+            }
+        }
+
+        Namespace javaEENamespace = getJavaEENamespace();
+        for (Map.Entry<String, SortedRuns> entry : spilledLibraries.entrySet()) {
+            final String namespaceUri = entry.getKey();
+            SortedRuns runs = entry.getValue();
+
+            int runsCount = runs.getRunsCount();
+            final SortedRuns.Merge merge = runs.merge();
+            final int[] count = new int[1];
+            try {
+                // elements are written as soon as they are read from the runs
+                addToArchive(getFileName(getShortName(namespaceUri)), createMergedDocument(namespaceUri,
+                    javaEENamespace), new ElementSource() {
+
+                    @Override
+                    public Element next() throws IOException {
+                        Element element = merge.next();
+                        while (element != null && !getDuplicatesIndex().isLast(getDuplicateKey(element, namespaceUri))) {
+                            element = merge.next();
+                        }
+
+                        if (element != null) {
+                            count[0]++;
+                        }
+
+                        return element;
+                    }
+                }, archiver);
+            } finally {
+                merge.close();
+            }
+
+            getLogger().debug("Merged " + count[0] + " elements of '" + namespaceUri + "' from " + runsCount
+                + " spilled runs");
+        }
     }
 
     @Override
@@ -131,55 +515,36 @@ public class TaglibXmlResourceTransformer extends BaseFacesResourceTransformer {
                 addToArchive(resourceName, document, archiver);
             }
 
+            for (Map.Entry<String, byte[]> entry : passThroughContents.entrySet()) {
+                addToArchive(entry.getKey(), entry.getValue(), archiver);
+            }
+
             if (!tagLibraries.isEmpty()) {
-                Comparator<Element> elementsComparator;
-                try {
-                    elementsComparator = createElementsComparator();
-                } catch (JDOMException e) {
-                    throw new RuntimeException(e.getMessage(), e);
-                }
+                ElementsComparator elementsComparator = getElementsComparator();
 
                 Namespace javaEENamespace = getJavaEENamespace();
-                Filter filter = new ElementFilter().and(new ElementFilter(NAMESPACE, javaEENamespace).negate());
 
-                for (Map.Entry<String, List<Document>> entry : tagLibraries.entrySet()) {
+                for (Map.Entry<String, List<Element>> entry : tagLibraries.entrySet()) {
                     String namespaceUri = entry.getKey();
                     String shortName = getShortName(namespaceUri);
-                    List<Document> sourceDocuments = entry.getValue();
-
-                    Document document = new org.jdom.Document();
-
-                    Element rootElement = new Element(FACELET_TAGLIB, javaEENamespace);
-                    rootElement.setAttribute(VERSION, CURRENT_VERSION);
-                    addSchemaLocation(rootElement, "http://java.sun.com/xml/ns/javaee/web-facelettaglibrary_2_0.xsd");
-                    rootElement.setAttribute(ID, shortName);
-
-                    document.addContent(rootElement);
+                    List<Element> elements = entry.getValue();
 
-                    List<Element> elements = new ArrayList<Element>();
+                    Document document = createMergedDocument(namespaceUri, javaEENamespace);
+                    Element rootElement = document.getRootElement();
 
-                    Element nsElement = new Element(NAMESPACE, javaEENamespace);
-                    nsElement.setText(namespaceUri);
-                    elements.add(nsElement);
-
-                    for (Document sourceDocument : sourceDocuments) {
-                        Element sourceRootElement = sourceDocument.getRootElement();
-                        checkRootElement(sourceRootElement);
-
-                        List<Element> tagsContent = checkedList(sourceRootElement.getContent(filter), Element.class);
-                        for (Element tagElement : tagsContent) {
-                            Element clonedElement = cloneAndImportElement(tagElement);
-                            elements.add(clonedElement);
-                        }
-                    }
-
-                    Collections.sort(elements, elementsComparator);
+                    long start = System.nanoTime();
+                    elementsComparator.sort(elements);
+                    getMetrics().addTime(Phase.SORT, System.nanoTime() - start);
                     rootElement.addContent(elements);
 
                     String fileName = getFileName(shortName);
                     addToArchive(fileName, document, archiver);
                 }
             }
+
+            writeSpilledLibraries(archiver);
+        } catch (IOException e) {
+            throw new ArchiverException("Error merging spilled taglibs. Reason: " + e.getMessage(), e);
         } finally {
             resetTransformer();
         }
@@ -190,35 +555,79 @@ public class TaglibXmlResourceTransformer extends BaseFacesResourceTransformer {
         super.resetTransformer();
         passThroughLibraries.clear();
         tagLibraries.clear();
+        tagLibrariesProcessed.clear();
+        duplicatesIndex = null;
+
+        for (SortedRuns runs : spilledLibraries.values()) {
+            runs.dispose();
+        }
+
+        spilledLibraries.clear();
+
+        for (File file : spilledPassThroughLibraries.values()) {
+            file.delete();
+        }
+
+        spilledPassThroughLibraries.clear();
+        passThroughContents.clear();
+
+        for (File file : spilledPassThroughContents.values()) {
+            file.delete();
+        }
+
+        spilledPassThroughContents.clear();
+        retainedSize = 0;
     }
 
     @Override
     protected void processDocument(final String resource, final Document document) throws JDOMException {
-        String namespaceUri = createXPath(NAMESPACE_EXPRESSION).valueOf(document);
+        String namespaceUri = getNamespaceUri(document);
         if (namespaceUri == null || namespaceUri.length() == 0) {
+            // nothing is imported from pass-through libraries
+            importCompleted(document);
             passThroughLibraries.put(resource, document);
+            if (memoryBudget > 0) {
+                retainedSize += SortedRuns.estimateSize(document.getRootElement());
+                try {
+                    spillIfOverBudget();
+                } catch (IOException e) {
+                    throw new JDOMException("Error spilling taglibs to disk. Reason: " + e.getMessage(), e);
+                }
+            }
         } else {
             if (tagLibrariesProcessed.contains(namespaceUri)) {
+                importCompleted(document);
                 return;
             } else {
                 tagLibrariesProcessed.add(namespaceUri);
             }
             
-            for (Taglib taglib : taglibs) {
-                if (taglib.matches(namespaceUri)) {
-                    namespaceUri = taglib.getTargetNamespace();
-                    break;
+            namespaceUri = getTaglibIndex().resolve(namespaceUri);
+
+            if (memoryBudget > 0) {
+                try {
+                    processSpilledDocument(resource, namespaceUri, document);
+                } catch (IOException e) {
+                    throw new JDOMException("Error spilling taglibs to disk. Reason: " + e.getMessage(), e);
                 }
-            }
 
-            List<Document> documents = tagLibraries.get(namespaceUri);
-            if (documents == null) {
-                documents = new ArrayList<Document>();
-                tagLibraries.put(namespaceUri, documents);
+                return;
             }
 
-            documents.add(document);
+            processMergedDocument(resource, namespaceUri, document);
+        }
+    }
+
+    @Override
+    protected String getConfiguration() {
+        StringBuilder sb = new StringBuilder(super.getConfiguration());
+        sb.append(";reformatPassThrough=").append(reformatPassThrough);
+        for (Taglib taglib : taglibs) {
+            sb.append(";taglib=").append(taglib.getTargetNamespace()).append('=')
+                .append(taglib.getSourceNamespacesPattern());
         }
+
+        return sb.toString();
     }
 
     public Taglib[] getTaglibs() {
@@ -227,6 +636,50 @@ public class TaglibXmlResourceTransformer extends BaseFacesResourceTransformer {
 
     public void setTaglibs(final Taglib[] taglibs) {
         this.taglibs = taglibs;
+        this.taglibIndex = null;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Approximate size in bytes of source taglibs kept in memory, retained tags are spilled to temporary files when it
+     * is exceeded. Zero (default) keeps all taglibs in memory.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public boolean isReformatPassThrough() {
+        return reformatPassThrough;
+    }
+
+    /**
+     * Taglibs without namespace are copied to archive as is, unless this flag is set - then they are parsed and written
+     * in output format the same way as merged taglibs are.
+     */
+    public void setReformatPassThrough(boolean reformatPassThrough) {
+        this.reformatPassThrough = reformatPassThrough;
+    }
+
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Directory for spilled taglibs, default temporary directory is used if not set.
+     */
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    private TaglibIndex getTaglibIndex() {
+        if (taglibIndex == null) {
+            taglibIndex = new TaglibIndex(taglibs);
+        }
+
+        return taglibIndex;
     }
 
     @SuppressWarnings("rawtypes")
@@ -239,14 +692,22 @@ public class TaglibXmlResourceTransformer extends BaseFacesResourceTransformer {
             result.add(resourceName);
         }
 
+        result.addAll(spilledPassThroughLibraries.keySet());
+        result.addAll(passThroughContents.keySet());
+        result.addAll(spilledPassThroughContents.keySet());
+
         if (!tagLibraries.isEmpty()) {
-            for (Map.Entry<String, List<Document>> entry : tagLibraries.entrySet()) {
+            for (Map.Entry<String, List<Element>> entry : tagLibraries.entrySet()) {
                 String namespaceUri = entry.getKey();
                 String shortName = getShortName(namespaceUri);
                 result.add(getFileName(shortName));
             }
         }
 
+        for (String namespaceUri : spilledLibraries.keySet()) {
+            result.add(getFileName(getShortName(namespaceUri)));
+        }
+
         return result;
     }
 
@@ -0,0 +1,189 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of a single merge: time spent in each phase, handled files and bytes, merged elements per section and
+ * peak number of elements retained in memory. Parse time is summed over all parser threads.
+ */
+final class TransformerMetrics {
+
+    public enum Phase {
+        READ, PARSE, IMPORT, SORT, SERIALIZE, WRITE;
+
+        public String getName() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+
+    private final AtomicLong filesHandled = new AtomicLong();
+
+    private final AtomicLong bytesIn = new AtomicLong();
+
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    private final Map<String, Long> mergedElements = new TreeMap<String, Long>();
+
+    private long retainedElements;
+
+    private long peakRetainedElements;
+
+    public void addTime(Phase phase, long nanos) {
+        phaseNanos.addAndGet(phase.ordinal(), nanos);
+    }
+
+    public long getTime(Phase phase) {
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    public void addFile() {
+        filesHandled.incrementAndGet();
+    }
+
+    public long getFilesHandled() {
+        return filesHandled.get();
+    }
+
+    public void addBytesIn(long bytes) {
+        bytesIn.addAndGet(bytes);
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public void addBytesOut(long bytes) {
+        bytesOut.addAndGet(bytes);
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    public synchronized void addMergedElements(String section, long count) {
+        Long current = mergedElements.get(section);
+        mergedElements.put(section, current != null ? current + count : count);
+    }
+
+    public synchronized long getMergedElements(String section) {
+        Long count = mergedElements.get(section);
+        return count != null ? count : 0;
+    }
+
+    public synchronized void retainElements(long count) {
+        retainedElements += count;
+        if (retainedElements > peakRetainedElements) {
+            peakRetainedElements = retainedElements;
+        }
+    }
+
+    public synchronized void releaseElements(long count) {
+        retainedElements = Math.max(0, retainedElements - count);
+    }
+
+    public synchronized long getPeakRetainedElements() {
+        return peakRetainedElements;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < phaseNanos.length(); i++) {
+            phaseNanos.set(i, 0);
+        }
+
+        filesHandled.set(0);
+        bytesIn.set(0);
+        bytesOut.set(0);
+        mergedElements.clear();
+        retainedElements = 0;
+        peakRetainedElements = 0;
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static void appendJsonString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+
+            sb.append(c);
+        }
+
+        sb.append('"');
+    }
+
+    public synchronized String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"phases\": {");
+        for (Phase phase : Phase.values()) {
+            sb.append(phase.ordinal() == 0 ? "\n    " : ",\n    ");
+            appendJsonString(sb, phase.getName() + "Millis");
+            sb.append(": ").append(toMillis(getTime(phase)));
+        }
+
+        sb.append("\n  },\n  \"filesHandled\": ").append(getFilesHandled());
+        sb.append(",\n  \"bytesIn\": ").append(getBytesIn());
+        sb.append(",\n  \"bytesOut\": ").append(getBytesOut());
+        sb.append(",\n  \"mergedElements\": {");
+
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : mergedElements.entrySet()) {
+            sb.append(first ? "\n    " : ",\n    ");
+            first = false;
+            appendJsonString(sb, entry.getKey());
+            sb.append(": ").append(entry.getValue());
+        }
+
+        sb.append(first ? "}" : "\n  }");
+        sb.append(",\n  \"peakRetainedElements\": ").append(peakRetainedElements);
+        sb.append("\n}\n");
+        return sb.toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(getFilesHandled()).append(" files handled, ").append(getBytesIn()).append(" bytes in, ")
+            .append(getBytesOut()).append(" bytes out; time (ms):");
+
+        for (Phase phase : Phase.values()) {
+            sb.append(' ').append(phase.getName()).append('=').append(toMillis(getTime(phase)));
+        }
+
+        sb.append("; merged elements: ").append(mergedElements);
+        sb.append("; peak retained elements: ").append(peakRetainedElements);
+        return sb.toString();
+    }
+}
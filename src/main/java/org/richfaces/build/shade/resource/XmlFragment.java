@@ -0,0 +1,97 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import java.util.List;
+
+import org.richfaces.build.shade.resource.ComponentRegistryWriter.Definitions;
+import org.richfaces.build.shade.resource.ElementsComparator.SortKey;
+
+/**
+ * Already serialized element of merged configuration file, together with the data used to sort it. Container fragments
+ * (e.g. &lt;application&gt;) have no content of their own and are rendered around their children.
+ */
+final class XmlFragment {
+
+    private final String namespaceUri;
+
+    private final String name;
+
+    private final SortKey sortKey;
+
+    private final byte[] content;
+
+    private final List<XmlFragment> children;
+
+    private final Definitions definitions;
+
+    /**
+     * @param definitions component registry entries of the element, <code>null</code> if registry isn't written or
+     *            element defines nothing
+     */
+    public XmlFragment(String namespaceUri, String name, SortKey sortKey, byte[] content, Definitions definitions) {
+        this(namespaceUri, name, sortKey, content, null, definitions);
+    }
+
+    public XmlFragment(String namespaceUri, String name, SortKey sortKey, List<XmlFragment> children) {
+        this(namespaceUri, name, sortKey, null, children, null);
+    }
+
+    private XmlFragment(String namespaceUri, String name, SortKey sortKey, byte[] content, List<XmlFragment> children,
+        Definitions definitions) {
+        super();
+        this.namespaceUri = namespaceUri;
+        this.name = name;
+        this.sortKey = sortKey;
+        this.content = content;
+        this.children = children;
+        this.definitions = definitions;
+    }
+
+    public String getNamespaceUri() {
+        return namespaceUri;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SortKey getSortKey() {
+        return sortKey;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public List<XmlFragment> getChildren() {
+        return children;
+    }
+
+    public Definitions getDefinitions() {
+        return definitions;
+    }
+
+    public boolean isContainer() {
+        return children != null;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.getFixtureJars;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CentralDirectoryScannerTest {
+
+    private static final CentralDirectoryScanner.EntryFilter ALL_ENTRIES = new CentralDirectoryScanner.EntryFilter() {
+
+        public boolean accept(String name) {
+            return true;
+        }
+    };
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static byte[] read(FileInfo fileInfo) throws Exception {
+        InputStream is = fileInfo.getContents();
+        try {
+            return IOUtil.toByteArray(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void testFixtureJars() throws Exception {
+        for (File jar : getFixtureJars()) {
+            CentralDirectoryScanner scanner = CentralDirectoryScanner.open(jar);
+            try {
+                checkFixtureJar(jar, scanner.scan(ALL_ENTRIES));
+            } finally {
+                scanner.close();
+            }
+        }
+    }
+
+    private void checkFixtureJar(File jar, List<FileInfo> entries) throws Exception {
+        List<String> names = new ArrayList<String>();
+        JarFile jarFile = new JarFile(jar);
+        try {
+            Enumeration<JarEntry> jarEntries = jarFile.entries();
+            while (jarEntries.hasMoreElements()) {
+                JarEntry jarEntry = jarEntries.nextElement();
+                if (!jarEntry.isDirectory()) {
+                    names.add(jarEntry.getName());
+
+                    FileInfo entry = entries.get(names.size() - 1);
+                    assertEquals(jarEntry.getName(), entry.getName());
+                    InputStream is = jarFile.getInputStream(jarEntry);
+                    try {
+                        assertArrayEquals(jarEntry.getName(), IOUtil.toByteArray(is), read(entry));
+                    } finally {
+                        is.close();
+                    }
+                }
+            }
+        } finally {
+            jarFile.close();
+        }
+
+        assertFalse(names.isEmpty());
+        assertEquals(names.size(), entries.size());
+    }
+
+    @Test
+    public void testStoredAndDeflatedEntries() throws Exception {
+        byte[] stored = "<facelet-taglib/>".getBytes("UTF-8");
+        byte[] deflated = new byte[10000];
+        for (int i = 0; i < deflated.length; i++) {
+            deflated[i] = (byte) ('a' + i % 7);
+        }
+
+        File file = tempFolder.newFile("test.jar");
+        ZipOutputStream os = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            os.setComment("archive comment");
+            os.putNextEntry(new ZipEntry("META-INF/"));
+            os.closeEntry();
+
+            ZipEntry storedEntry = new ZipEntry("META-INF/stored.taglib.xml");
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            storedEntry.setCrc(crc.getValue());
+            os.putNextEntry(storedEntry);
+            os.write(stored);
+            os.closeEntry();
+
+            os.putNextEntry(new ZipEntry("META-INF/deflated.taglib.xml"));
+            os.write(deflated);
+            os.closeEntry();
+
+            os.putNextEntry(new ZipEntry("org/Skipped.class"));
+            os.write(deflated);
+            os.closeEntry();
+        } finally {
+            os.close();
+        }
+
+        CentralDirectoryScanner scanner = CentralDirectoryScanner.open(file);
+        try {
+            List<FileInfo> entries = scanner.scan(new CentralDirectoryScanner.EntryFilter() {
+
+                public boolean accept(String name) {
+                    return name.startsWith("META-INF/");
+                }
+            });
+
+            assertEquals(2, entries.size());
+            assertEquals("META-INF/stored.taglib.xml", entries.get(0).getName());
+            assertArrayEquals(stored, read(entries.get(0)));
+            assertEquals("META-INF/deflated.taglib.xml", entries.get(1).getName());
+            assertArrayEquals(deflated, read(entries.get(1)));
+        } finally {
+            scanner.close();
+        }
+    }
+
+    private File createJar(String name) throws Exception {
+        File file = tempFolder.newFile(name);
+        ZipOutputStream os = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            os.putNextEntry(new ZipEntry("META-INF/faces-config.xml"));
+            os.write("<faces-config/>".getBytes("UTF-8"));
+            os.closeEntry();
+        } finally {
+            os.close();
+        }
+
+        return file;
+    }
+
+    /**
+     * Overwrites 32-bit field of the first central directory record.
+     */
+    private static void patchCentralRecord(File file, int fieldOffset, int value) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            for (int i = 0; i < bytes.length - 4; i++) {
+                if (bytes[i] == 'P' && bytes[i + 1] == 'K' && bytes[i + 2] == 1 && bytes[i + 3] == 2) {
+                    raf.seek(i + fieldOffset);
+                    // little endian
+                    raf.write(new byte[] {(byte) value, (byte) (value >> 8), (byte) (value >> 16),
+                        (byte) (value >> 24)});
+                    return;
+                }
+            }
+        } finally {
+            raf.close();
+        }
+
+        fail();
+    }
+
+    @Test
+    public void testInvalidSizes() throws Exception {
+        // compressed size, size and local header offset: past the archive, above 2 GB, beyond deflate ratio
+        int[][] patches = new int[][] { {20, 0x7FFFFFF0}, {20, 0x80000000}, {24, 0x7FFFFFF0}, {24, 0x80000000},
+            {24, 1000000}, {42, 0x7FFFFFF0}, {42, 0x80000000} };
+        for (int i = 0; i < patches.length; i++) {
+            File file = createJar("invalid" + i + ".jar");
+            patchCentralRecord(file, patches[i][0], patches[i][1]);
+
+            CentralDirectoryScanner scanner = CentralDirectoryScanner.open(file);
+            try {
+                scanner.scan(ALL_ENTRIES);
+                fail(Integer.toHexString(patches[i][1]));
+            } catch (ZipException e) {
+                // expected
+            } finally {
+                scanner.close();
+            }
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        File file = createJar("closed.jar");
+        CentralDirectoryScanner scanner = CentralDirectoryScanner.open(file);
+        List<FileInfo> entries = scanner.scan(ALL_ENTRIES);
+        assertEquals(1, entries.size());
+        scanner.close();
+
+        try {
+            read(entries.get(0));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+
+        File maps = new File("/proc/self/maps");
+        if (maps.isFile()) {
+            // mapping is released right away, without garbage collection
+            InputStream is = new FileInputStream(maps);
+            try {
+                String mappings = new String(IOUtil.toByteArray(is), "UTF-8");
+                assertFalse(mappings.contains(file.getCanonicalPath()));
+            } finally {
+                is.close();
+            }
+        }
+
+        assertTrue(file.delete());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.input.SAXBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.richfaces.build.shade.resource.ComponentRegistry.Section;
+
+public class ComponentRegistryTest {
+
+    private static final String FACES_CONFIG = "META-INF/faces-config.xml";
+
+    private static final Namespace JAVAEE = Namespace.getNamespace(BaseFacesResourceTransformer.JAVAEE_URI);
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Map<String, byte[]> mergeWithRegistry(List<FileInfo> files, boolean streaming) throws Exception {
+        FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+        transformer.setComponentRegistry(true);
+        transformer.setStreaming(streaming);
+        return merge(transformer, files, tempFolder.newFolder("output" + streaming));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Element> getChildren(Element element, String name) {
+        return element.getChildren(name, JAVAEE);
+    }
+
+    @Test
+    public void testRegistryMatchesMergedFile() throws Exception {
+        List<FileInfo> files = readFixtures();
+        Map<String, byte[]> merged = mergeWithRegistry(files, false);
+        byte[] registryBytes = merged.get(ComponentRegistry.REGISTRY_FILE_PATH);
+
+        assertArrayEquals(registryBytes, mergeWithRegistry(files, true).get(ComponentRegistry.REGISTRY_FILE_PATH));
+
+        ComponentRegistry registry = ComponentRegistry.read(new ByteArrayInputStream(registryBytes));
+        Element root = new SAXBuilder().build(new ByteArrayInputStream(merged.get(FACES_CONFIG))).getRootElement();
+
+        // later definitions override earlier ones
+        Map<String, String> components = new TreeMap<String, String>();
+        for (Element component : getChildren(root, "component")) {
+            components.put(component.getChildTextTrim("component-type", JAVAEE), component.getChildTextTrim(
+                "component-class", JAVAEE));
+        }
+        assertTrue(components.size() > 0);
+        assertEquals(components, registry.getEntries(Section.COMPONENT));
+        for (Map.Entry<String, String> entry : components.entrySet()) {
+            assertEquals(entry.getValue(), registry.getComponentClass(entry.getKey()));
+        }
+
+        Map<String, String> renderers = new TreeMap<String, String>();
+        for (Element renderKit : getChildren(root, "render-kit")) {
+            String renderKitId = renderKit.getChildTextTrim("render-kit-id", JAVAEE);
+            if (renderKitId == null) {
+                renderKitId = ComponentRegistry.HTML_BASIC_RENDER_KIT;
+            }
+
+            for (Element renderer : getChildren(renderKit, "renderer")) {
+                renderers.put(renderKitId + "/" + renderer.getChildTextTrim("component-family", JAVAEE) + "/"
+                    + renderer.getChildTextTrim("renderer-type", JAVAEE), renderer.getChildTextTrim(
+                    "renderer-class", JAVAEE));
+            }
+        }
+        assertTrue(renderers.size() > 0);
+        assertEquals(renderers.size(), registry.getEntries(Section.RENDERER).size());
+        for (Map.Entry<String, String> entry : renderers.entrySet()) {
+            String[] key = entry.getKey().split("/");
+            assertEquals(entry.getValue(), registry.getRendererClass(key[0], key[1], key[2]));
+        }
+
+        for (Element converter : getChildren(root, "converter")) {
+            String converterId = converter.getChildTextTrim("converter-id", JAVAEE);
+            if (converterId != null) {
+                assertEquals(converter.getChildTextTrim("converter-class", JAVAEE), registry
+                    .getConverterClass(converterId));
+            }
+        }
+
+        assertNull(registry.getComponentClass("org.richfaces.Missing"));
+        assertNull(registry.getRendererClass(ComponentRegistry.HTML_BASIC_RENDER_KIT, "missing", "missing"));
+    }
+
+    @Test
+    public void testStreamingRegistryWithoutParsing() throws Exception {
+        List<FileInfo> files = readFixtures();
+        long parsed = BaseFacesResourceTransformer.getParserCreationCount()
+            + BaseFacesResourceTransformer.getParserReuseCount();
+
+        assertNotNull(mergeWithRegistry(files, true).get(ComponentRegistry.REGISTRY_FILE_PATH));
+
+        // neither sources nor merged file are built as documents
+        assertEquals(parsed, BaseFacesResourceTransformer.getParserCreationCount()
+            + BaseFacesResourceTransformer.getParserReuseCount());
+    }
+}
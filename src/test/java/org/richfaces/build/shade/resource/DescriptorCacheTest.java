@@ -0,0 +1,259 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DescriptorCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static int countHandled(BaseFacesResourceTransformer transformer, List<FileInfo> files) {
+        int result = 0;
+        for (FileInfo fileInfo : files) {
+            if (transformer.isHandled(fileInfo)) {
+                result++;
+            }
+        }
+
+        return result;
+    }
+
+    private static void assertSameOutput(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+        }
+    }
+
+    private static void write(File file, int... values) throws IOException {
+        DataOutputStream os = new DataOutputStream(new FileOutputStream(file));
+        try {
+            for (int value : values) {
+                os.writeInt(value);
+            }
+        } finally {
+            os.close();
+        }
+    }
+
+    private static void assertMiss(DescriptorCache cache, String key) {
+        List<Namespace[]> namespaces = new ArrayList<Namespace[]>();
+        HashSet<Element> importedElements = new HashSet<Element>();
+        assertNull(cache.get(key, namespaces, importedElements));
+        assertTrue(namespaces.isEmpty());
+        assertTrue(importedElements.isEmpty());
+    }
+
+    @Test
+    public void testCacheHits() throws Exception {
+        List<FileInfo> files = readFixtures();
+        String cacheDirectory = tempFolder.newFolder("cache").getAbsolutePath();
+
+        Map<String, byte[]> expected = merge(new TaglibXmlResourceTransformer(), files, tempFolder.newFolder("nocache"));
+
+        TaglibXmlResourceTransformer coldTransformer = new TaglibXmlResourceTransformer();
+        coldTransformer.setCacheDirectory(cacheDirectory);
+        assertSameOutput(expected, merge(coldTransformer, files, tempFolder.newFolder("cold")));
+
+        int handled = countHandled(coldTransformer, files);
+        assertEquals(0, coldTransformer.getDescriptorCache().getHits());
+        assertEquals(handled, coldTransformer.getDescriptorCache().getMisses());
+
+        TaglibXmlResourceTransformer warmTransformer = new TaglibXmlResourceTransformer();
+        warmTransformer.setCacheDirectory(cacheDirectory);
+        warmTransformer.setParallelism(2);
+        assertSameOutput(expected, merge(warmTransformer, files, tempFolder.newFolder("warm")));
+
+        assertEquals(handled, warmTransformer.getDescriptorCache().getHits());
+        assertEquals(0, warmTransformer.getDescriptorCache().getMisses());
+    }
+
+    @Test
+    public void testCachedImport() throws Exception {
+        List<FileInfo> files = readFixtures();
+        String cacheDirectory = tempFolder.newFolder("cache").getAbsolutePath();
+
+        Map<String, byte[]> expected = merge(new FacesConfigXmlResourceTransformer(), files, tempFolder
+            .newFolder("nocache"));
+
+        CountingTransformer coldTransformer = new CountingTransformer();
+        coldTransformer.setCacheDirectory(cacheDirectory);
+        assertSameOutput(expected, merge(coldTransformer, files, tempFolder.newFolder("cold")));
+        assertTrue(coldTransformer.imports > 0);
+        assertEquals(0, coldTransformer.reusedImports);
+
+        long parsed = BaseFacesResourceTransformer.getParserCreationCount()
+            + BaseFacesResourceTransformer.getParserReuseCount();
+
+        CountingTransformer warmTransformer = new CountingTransformer();
+        warmTransformer.setCacheDirectory(cacheDirectory);
+        assertSameOutput(expected, merge(warmTransformer, files, tempFolder.newFolder("warm")));
+
+        // neither parsed nor copied
+        assertEquals(parsed, BaseFacesResourceTransformer.getParserCreationCount()
+            + BaseFacesResourceTransformer.getParserReuseCount());
+        assertEquals(coldTransformer.imports, warmTransformer.imports);
+        assertEquals(warmTransformer.imports, warmTransformer.reusedImports);
+    }
+
+    @Test
+    public void testCorruptedEntry() throws Exception {
+        List<FileInfo> files = readFixtures();
+        File cacheDirectory = tempFolder.newFolder("cache");
+
+        Map<String, byte[]> expected = merge(new FacesConfigXmlResourceTransformer(), files, tempFolder
+            .newFolder("nocache"));
+
+        FacesConfigXmlResourceTransformer coldTransformer = new FacesConfigXmlResourceTransformer();
+        coldTransformer.setCacheDirectory(cacheDirectory.getAbsolutePath());
+        merge(coldTransformer, files, tempFolder.newFolder("cold"));
+
+        File[] entries = cacheDirectory.listFiles();
+        assertTrue(entries.length > 0);
+        for (File entry : entries) {
+            assertTrue(entry.getName().startsWith("v" + DescriptorCodec.FORMAT_VERSION + "-"));
+
+            // truncated entry
+            FileOutputStream os = new FileOutputStream(entry);
+            try {
+                os.write(new byte[] {0, 0, 0, DescriptorCodec.FORMAT_VERSION, 0, 0});
+            } finally {
+                os.close();
+            }
+        }
+
+        FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+        transformer.setCacheDirectory(cacheDirectory.getAbsolutePath());
+        assertSameOutput(expected, merge(transformer, files, tempFolder.newFolder("out")));
+        assertEquals(0, transformer.getDescriptorCache().getHits());
+        assertEquals(entries.length, transformer.getDescriptorCache().getMisses());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        List<FileInfo> files = readFixtures();
+        File cacheDirectory = tempFolder.newFolder("cache");
+
+        FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+        transformer.setCacheDirectory(cacheDirectory.getAbsolutePath());
+        transformer.setCacheSize(1);
+        merge(transformer, files, tempFolder.newFolder("out"));
+
+        assertTrue(transformer.getDescriptorCache().getEvictions() > 0);
+        assertEquals(0, cacheDirectory.list().length);
+    }
+
+    @Test
+    public void testDamagedEntry() throws Exception {
+        File cacheDirectory = tempFolder.newFolder("cache");
+        DescriptorCache cache = new DescriptorCache(cacheDirectory, Long.MAX_VALUE);
+        String key = DescriptorCache.key("test", new byte[0]);
+        File entry = new File(cacheDirectory, key + ".bin");
+
+        // string length over the entry size
+        write(entry, DescriptorCodec.FORMAT_VERSION, 1, -2, Integer.MAX_VALUE);
+        assertMiss(cache, key);
+        assertFalse(entry.exists());
+
+        // namespace prefix rejected by JDOM
+        write(entry, DescriptorCodec.FORMAT_VERSION, 1, -2, 3, 0x78207900);
+        assertMiss(cache, key);
+        assertFalse(entry.exists());
+
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testEvictionKeepsForeignFiles() throws Exception {
+        File cacheDirectory = tempFolder.newFolder("cache");
+        String hash = DescriptorCache.hash(new byte[0]);
+
+        String[] foreignNames = {"data.bin", "data.jdom", "data.tmp", "v1-data.bin", hash + ".bin"};
+        for (String name : foreignNames) {
+            assertTrue(new File(cacheDirectory, name).createNewFile());
+        }
+
+        File legacyEntry = new File(cacheDirectory, hash + ".jdom");
+        File oldEntry = new File(cacheDirectory, "v1-FacesConfigXmlResourceTransformer-" + hash + ".bin");
+        File staleTempFile = new File(cacheDirectory, DescriptorCache.key("test", new byte[0]) + "123.tmp");
+        File tempFile = new File(cacheDirectory, DescriptorCache.key("test", new byte[0]) + "456.tmp");
+        for (File file : new File[] {legacyEntry, oldEntry, staleTempFile, tempFile}) {
+            assertTrue(file.createNewFile());
+        }
+
+        staleTempFile.setLastModified(System.currentTimeMillis() - 2 * 60 * 60 * 1000);
+
+        new DescriptorCache(cacheDirectory, 0).evict();
+
+        for (String name : foreignNames) {
+            assertTrue(name, new File(cacheDirectory, name).exists());
+        }
+
+        assertFalse(legacyEntry.exists());
+        assertFalse(oldEntry.exists());
+        assertFalse(staleTempFile.exists());
+        assertTrue(tempFile.exists());
+    }
+
+    private static final class CountingTransformer extends FacesConfigXmlResourceTransformer {
+
+        private int imports;
+
+        private int reusedImports;
+
+        @Override
+        protected Element cloneAndImportElement(Element element) {
+            Element importedElement = super.cloneAndImportElement(element);
+            imports++;
+            if (importedElement == element) {
+                reusedImports++;
+            }
+
+            return importedElement;
+        }
+    }
+}
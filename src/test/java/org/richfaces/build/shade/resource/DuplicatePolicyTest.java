@@ -0,0 +1,291 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.maven.plugin.assembly.filter.ContainerDescriptorHandler;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.richfaces.build.shade.resource.TransformerTestSupport.TestFileInfo;
+
+public class DuplicatePolicyTest {
+
+    private static final String FACES_CONFIG = "META-INF/faces-config.xml";
+
+    private static final String TAGLIB = "META-INF/dups.taglib.xml";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private int foldersCount;
+
+    private File newFolder() {
+        return tempFolder.newFolder("merge" + (foldersCount++));
+    }
+
+    private static FileInfo createFacesConfig(String name, String componentClass) throws Exception {
+        String content = "<?xml version=\"1.0\"?>\n"
+            + "<faces-config xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"2.0\">"
+            + "<component><component-type>test.Component</component-type>"
+            + "<component-class>" + componentClass + "</component-class></component>"
+            + "<render-kit><renderer><component-family>test.Family</component-family>"
+            + "<renderer-type>test.Renderer</renderer-type><renderer-class>" + componentClass
+            + "Renderer</renderer-class></renderer></render-kit>"
+            + "</faces-config>";
+        return new TestFileInfo(name, content.getBytes("UTF-8"));
+    }
+
+    private static FileInfo createTaglib(String name, String namespace, String handlerClass) throws Exception {
+        String content = "<?xml version=\"1.0\"?>\n"
+            + "<facelet-taglib xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"2.0\">"
+            + "<namespace>" + namespace + "</namespace>"
+            + "<tag><tag-name>tag</tag-name><handler-class>" + handlerClass + "</handler-class></tag>"
+            + "</facelet-taglib>";
+        return new TestFileInfo(name, content.getBytes("UTF-8"));
+    }
+
+    private static List<FileInfo> createFacesConfigs() throws Exception {
+        List<FileInfo> files = new ArrayList<FileInfo>();
+        files.add(createFacesConfig("META-INF/first.faces-config.xml", "First"));
+        files.add(createFacesConfig("META-INF/second.faces-config.xml", "Second"));
+        return files;
+    }
+
+    private static List<FileInfo> createTaglibs() throws Exception {
+        List<FileInfo> files = new ArrayList<FileInfo>();
+        files.add(createTaglib("META-INF/first.taglib.xml", "http://example.org/first", "First"));
+        files.add(createTaglib("META-INF/second.taglib.xml", "http://example.org/second", "Second"));
+        return files;
+    }
+
+    private String mergeFacesConfig(String policy, boolean streaming) throws Exception {
+        FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+        transformer.setDuplicatePolicy(policy);
+        transformer.setStreaming(streaming);
+        return new String(merge(transformer, createFacesConfigs(), newFolder()).get(FACES_CONFIG), "UTF-8");
+    }
+
+    private String mergeTaglib(String policy, boolean spill) throws Exception {
+        TaglibXmlResourceTransformer transformer = new TaglibXmlResourceTransformer();
+        transformer.setDuplicatePolicy(policy);
+        // the same namespace is merged only once, duplicates come from taglibs merged together
+        Taglib taglib = new Taglib();
+        taglib.setTargetNamespace("http://example.org/dups");
+        taglib.setSourceNamespacesPattern("http://example.org/(first|second)");
+        transformer.setTaglibs(new Taglib[] {taglib});
+        if (spill) {
+            transformer.setMemoryBudget(1);
+            transformer.setSpillDirectory(newFolder().getAbsolutePath());
+        }
+        return new String(merge(transformer, createTaglibs(), newFolder()).get(TAGLIB), "UTF-8");
+    }
+
+    private File createJar(String name, FileInfo... files) throws Exception {
+        File jar = new File(newFolder(), name);
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            for (FileInfo fileInfo : files) {
+                os.putNextEntry(new ZipEntry(fileInfo.getName()));
+                InputStream is = fileInfo.getContents();
+                try {
+                    IOUtil.copy(is, os);
+                } finally {
+                    is.close();
+                }
+                os.closeEntry();
+            }
+        } finally {
+            os.close();
+        }
+
+        return jar;
+    }
+
+    private static String getFailureMessage(ContainerDescriptorHandler handler, boolean centralDirectoryScan,
+        File... inputs) throws IOException {
+        MergeSession session = new MergeSession(handler);
+        session.setCentralDirectoryScan(centralDirectoryScan);
+        for (File input : inputs) {
+            session.addInput(input);
+        }
+
+        try {
+            session.merge();
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (!(cause instanceof IllegalArgumentException) && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+
+            return cause.getMessage();
+        }
+
+        fail();
+        return null;
+    }
+
+    private static int count(String s, String part) {
+        int result = 0;
+        for (int idx = s.indexOf(part); idx >= 0; idx = s.indexOf(part, idx + 1)) {
+            result++;
+        }
+        return result;
+    }
+
+    @Test
+    public void testFacesConfigPolicies() throws Exception {
+        for (boolean streaming : new boolean[] {false, true}) {
+            String warn = mergeFacesConfig("warn", streaming);
+            assertEquals(2, count(warn, "<component-type>"));
+            // renderers override each other at runtime, so only the last one is kept
+            assertEquals(1, count(warn, "<renderer-type>"));
+            assertTrue(warn.contains("<renderer-class>SecondRenderer</renderer-class>"));
+
+            String first = mergeFacesConfig("keep-first", streaming);
+            assertEquals(1, count(first, "<component-type>"));
+            assertTrue(first.contains("<component-class>First</component-class>"));
+            assertEquals(1, count(first, "<renderer-type>"));
+            assertTrue(first.contains("<renderer-class>FirstRenderer</renderer-class>"));
+
+            String last = mergeFacesConfig("keep-last", streaming);
+            assertEquals(1, count(last, "<component-type>"));
+            assertTrue(last.contains("<component-class>Second</component-class>"));
+            assertEquals(1, count(last, "<renderer-type>"));
+            assertTrue(last.contains("<renderer-class>SecondRenderer</renderer-class>"));
+
+            try {
+                mergeFacesConfig("fail", streaming);
+                fail();
+            } catch (RuntimeException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testTaglibPolicies() throws Exception {
+        for (boolean spill : new boolean[] {false, true}) {
+            assertEquals(2, count(mergeTaglib("warn", spill), "<tag-name>"));
+
+            String first = mergeTaglib("keep-first", spill);
+            assertEquals(1, count(first, "<tag-name>"));
+            assertTrue(first.contains("<handler-class>First</handler-class>"));
+
+            String last = mergeTaglib("keep-last", spill);
+            assertEquals(1, count(last, "<tag-name>"));
+            assertTrue(last.contains("<handler-class>Second</handler-class>"));
+
+            try {
+                mergeTaglib("fail", spill);
+                fail();
+            } catch (RuntimeException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testPolicyNames() throws Exception {
+        // dotted capital I of Turkish locale isn't an English letter
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            for (String policy : new String[] {"keep-first", "keep-last", "fail", "warn"}) {
+                TaglibXmlResourceTransformer transformer = new TaglibXmlResourceTransformer();
+                transformer.setDuplicatePolicy(policy);
+                assertEquals(policy, transformer.getDuplicatePolicy());
+            }
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void testMessagesNameSourceJars() throws Exception {
+        File firstJar = createJar("first.jar", createFacesConfig(FACES_CONFIG, "First"),
+            createTaglib(TAGLIB, "http://example.org/first", "First"));
+        File secondJar = createJar("second.jar", createFacesConfig(FACES_CONFIG, "Second"),
+            createTaglib(TAGLIB, "http://example.org/second", "Second"));
+
+        for (boolean centralDirectoryScan : new boolean[] {false, true}) {
+            for (boolean streaming : new boolean[] {false, true}) {
+                FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+                transformer.setDuplicatePolicy("fail");
+                transformer.setStreaming(streaming);
+                assertEquals("Duplicate component 'test.Component' in 'first.jar!/META-INF/faces-config.xml' and "
+                    + "'second.jar!/META-INF/faces-config.xml'",
+                    getFailureMessage(transformer, centralDirectoryScan, firstJar, secondJar));
+            }
+
+            for (boolean spill : new boolean[] {false, true}) {
+                TaglibXmlResourceTransformer transformer = new TaglibXmlResourceTransformer();
+                transformer.setDuplicatePolicy("fail");
+                Taglib taglib = new Taglib();
+                taglib.setTargetNamespace("http://example.org/dups");
+                taglib.setSourceNamespacesPattern("http://example.org/(first|second)");
+                transformer.setTaglibs(new Taglib[] {taglib});
+                if (spill) {
+                    transformer.setMemoryBudget(1);
+                    transformer.setSpillDirectory(newFolder().getAbsolutePath());
+                }
+
+                String message = getFailureMessage(transformer, centralDirectoryScan, firstJar, secondJar);
+                assertTrue(message, message.endsWith(" in 'first.jar!/META-INF/dups.taglib.xml' and "
+                    + "'second.jar!/META-INF/dups.taglib.xml'"));
+            }
+        }
+
+        // exploded directory inputs are named by file URLs
+        File directory = newFolder();
+        File metaInf = new File(directory, "META-INF");
+        metaInf.mkdirs();
+        FileOutputStream os = new FileOutputStream(new File(metaInf, "faces-config.xml"));
+        try {
+            IOUtil.copy(createFacesConfig(FACES_CONFIG, "Second").getContents(), os);
+        } finally {
+            os.close();
+        }
+
+        FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+        transformer.setDuplicatePolicy("fail");
+        String message = getFailureMessage(transformer, true, firstJar, directory);
+        assertTrue(message, message.endsWith(" and '" + new File(metaInf, "faces-config.xml").toURI().toURL() + "'"));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom.Element;
+import org.junit.Test;
+import org.richfaces.build.shade.resource.ElementsComparator.SortKey;
+
+public class ElementsComparatorTest {
+
+    private static final String NAMESPACE = "urn:test";
+
+    private static final String OTHER_NAMESPACE = "urn:other";
+
+    private static ElementsComparator createComparator() {
+        Map<String, List<ChildElementPath>> comparisonPaths = new HashMap<String, List<ChildElementPath>>();
+        comparisonPaths.put("component", Arrays.asList(new ChildElementPath(NAMESPACE, "type")));
+        comparisonPaths.put("renderer", Arrays.asList(new ChildElementPath(NAMESPACE, "family"),
+            new ChildElementPath(NAMESPACE, "type")));
+
+        return new ElementsComparator(NAMESPACE, Arrays.asList("name", "component", "renderer", "factory"),
+            comparisonPaths);
+    }
+
+    private static Element createElement(String namespaceUri, String name, String... values) {
+        Element element = new Element(name, namespaceUri);
+        String[] childNames = values.length == 1 ? new String[] {"type"} : new String[] {"family", "type"};
+        for (int i = 0; i < values.length; i++) {
+            element.addContent(new Element(childNames[i], namespaceUri).setText(values[i]));
+        }
+
+        return element;
+    }
+
+    private static String describe(Element element) {
+        StringBuilder sb = new StringBuilder(element.getName());
+        for (Object child : element.getChildren()) {
+            sb.append(':').append(((Element) child).getText());
+        }
+
+        return sb.toString();
+    }
+
+    private static List<String> sortAndDescribe(List<Element> elements) {
+        createComparator().sort(elements);
+
+        List<String> result = new ArrayList<String>();
+        for (Element element : elements) {
+            result.add(describe(element));
+        }
+
+        return result;
+    }
+
+    private static int signum(int i) {
+        return i < 0 ? -1 : (i > 0 ? 1 : 0);
+    }
+
+    @Test
+    public void testCaseInsensitiveOrder() throws Exception {
+        ElementsComparator comparator = createComparator();
+        // '_' goes between upper and lower case letters, dotted/dotless i and Kelvin sign fold to ASCII letters
+        String[] values = {"alpha", "Beta", "_gamma", "ZETA", "\u0130", "i", "\u0131", "I", "k", "\u212A",
+            "\u00DF", "\u00E9", "\u00C9"};
+
+        for (String v1 : values) {
+            for (String v2 : values) {
+                SortKey key1 = comparator.createKey(NAMESPACE, "component", v1);
+                SortKey key2 = comparator.createKey(NAMESPACE, "component", v2);
+                assertEquals(v1 + " " + v2, signum(v1.compareToIgnoreCase(v2)), signum(key1.compareTo(key2)));
+            }
+        }
+
+        List<Element> elements = new ArrayList<Element>();
+        for (String value : new String[] {"ZETA", "alpha", "_gamma", "Beta"}) {
+            elements.add(createElement(NAMESPACE, "component", value));
+        }
+
+        assertEquals(Arrays.asList("component:_gamma", "component:alpha", "component:Beta", "component:ZETA"),
+            sortAndDescribe(elements));
+    }
+
+    @Test
+    public void testEqualKeysKeepOrder() throws Exception {
+        List<Element> elements = new ArrayList<Element>();
+        elements.add(createElement(NAMESPACE, "component", "b"));
+        elements.add(createElement(NAMESPACE, "component", "Same"));
+        elements.add(createElement(NAMESPACE, "factory"));
+        elements.add(createElement(NAMESPACE, "component", "a"));
+        elements.add(createElement(NAMESPACE, "component", "SAME"));
+        elements.add(createElement(NAMESPACE, "factory", "ignored"));
+        elements.add(createElement(NAMESPACE, "component", "same"));
+
+        List<Element> sorted = new ArrayList<Element>(elements);
+        assertEquals(Arrays.asList("component:a", "component:b", "component:Same", "component:SAME",
+            "component:same", "factory", "factory:ignored"), sortAndDescribe(sorted));
+
+        // equal keys keep identity order, not just equal descriptions
+        assertSame(elements.get(1), sorted.get(2));
+        assertSame(elements.get(4), sorted.get(3));
+        assertSame(elements.get(6), sorted.get(4));
+        assertSame(elements.get(2), sorted.get(5));
+        assertSame(elements.get(5), sorted.get(6));
+    }
+
+    @Test
+    public void testUnorderedElements() throws Exception {
+        ElementsComparator comparator = createComparator();
+
+        List<Element> elements = new ArrayList<Element>();
+        elements.add(createElement(OTHER_NAMESPACE, "component", "b"));
+        elements.add(createElement(NAMESPACE, "factory"));
+        elements.add(createElement(OTHER_NAMESPACE, "extension"));
+        elements.add(createElement(NAMESPACE, "unknown"));
+        elements.add(createElement(NAMESPACE, "component", "a"));
+        elements.add(createElement(OTHER_NAMESPACE, "component", "a"));
+        elements.add(createElement(NAMESPACE, "name"));
+
+        // unknown names go first, foreign elements go last in the order they have been added
+        assertEquals(Arrays.asList("unknown", "name", "component:a", "factory", "component:b", "extension",
+            "component:a"), sortAndDescribe(elements));
+        assertEquals(OTHER_NAMESPACE, elements.get(6).getNamespaceURI());
+
+        assertSame(SortKey.UNORDERED, comparator.createKey(createElement(OTHER_NAMESPACE, "component", "a")));
+        assertEquals(0, SortKey.UNORDERED.compareTo(comparator.createKey(OTHER_NAMESPACE, "factory", null)));
+
+        // elements without identifying children go before elements with them, keys are totally ordered
+        SortKey[] keys = {SortKey.UNORDERED, comparator.createKey(NAMESPACE, "factory", null),
+            comparator.createKey(NAMESPACE, "component", null), comparator.createKey(NAMESPACE, "component", "a"),
+            comparator.createKey(NAMESPACE, "unknown", "a")};
+        for (SortKey key1 : keys) {
+            for (SortKey key2 : keys) {
+                assertEquals(signum(key1.compareTo(key2)), -signum(key2.compareTo(key1)));
+            }
+        }
+        assertTrue(comparator.createKey(NAMESPACE, "component", null).compareTo(
+            comparator.createKey(NAMESPACE, "component", "a")) < 0);
+    }
+
+    @Test
+    public void testCompositeKeys() throws Exception {
+        List<Element> elements = new ArrayList<Element>();
+        elements.add(createElement(NAMESPACE, "renderer", "ab", "a"));
+        elements.add(createElement(NAMESPACE, "renderer", "a", "z"));
+        elements.add(createElement(NAMESPACE, "renderer", "A", "y"));
+        elements.add(createElement(NAMESPACE, "renderer", "a", ""));
+
+        // values are compared one by one: family "a" goes before "ab" even though "az" > "aba"
+        assertEquals(Arrays.asList("renderer:a:", "renderer:A:y", "renderer:a:z", "renderer:ab:a"),
+            sortAndDescribe(elements));
+
+        ElementsComparator comparator = createComparator();
+        assertTrue(comparator.createKey(NAMESPACE, "renderer", "a\u0000z").compareTo(
+            comparator.createKey(NAMESPACE, "renderer", "ab\u0000a")) < 0);
+        assertEquals(0, comparator.compare(createElement(NAMESPACE, "renderer", "Family", "Type"), createElement(
+            NAMESPACE, "renderer", "FAMILY", "type")));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.richfaces.build.shade.resource.TransformerTestSupport.TestFileInfo;
+
+public class FacesConfigStreamingMergerTest {
+
+    private static final String FACES_CONFIG = "META-INF/faces-config.xml";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testStreamingOutputMatchesDom() throws Exception {
+        List<FileInfo> files = readFixtures();
+
+        for (String mode : new String[] {"pretty", "compact", "raw"}) {
+            FacesConfigXmlResourceTransformer domTransformer = new FacesConfigXmlResourceTransformer();
+            domTransformer.setOutputMode(mode);
+            byte[] domOutput = merge(domTransformer, files, tempFolder.newFolder("dom-" + mode)).get(FACES_CONFIG);
+
+            FacesConfigXmlResourceTransformer streamingTransformer = new FacesConfigXmlResourceTransformer();
+            streamingTransformer.setOutputMode(mode);
+            streamingTransformer.setStreaming(true);
+            byte[] streamingOutput = merge(streamingTransformer, files, tempFolder.newFolder("streaming-" + mode)).get(
+                FACES_CONFIG);
+
+            assertTrue(domOutput.length > 0);
+            assertEquals(mode, new String(domOutput, "UTF-8"), new String(streamingOutput, "UTF-8"));
+            assertArrayEquals(domOutput, streamingOutput);
+        }
+    }
+
+    @Test
+    public void testOutputModeNames() throws Exception {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+            for (String mode : new String[] {"pretty", "compact", "raw"}) {
+                transformer.setOutputMode(mode);
+                assertEquals(mode, transformer.getOutputMode());
+            }
+
+            transformer.setOutputMode("PRETTY");
+            assertEquals("pretty", transformer.getOutputMode());
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    private static FileInfo createRenderKit(String name, String... renderers) throws Exception {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\"?>\n"
+            + "<faces-config xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"2.0\"><render-kit>");
+        for (String renderer : renderers) {
+            String[] familyAndType = renderer.split(":");
+            if (familyAndType.length == 1) {
+                sb.append("<client-behavior-renderer><client-behavior-renderer-type>").append(renderer).append(
+                    "</client-behavior-renderer-type></client-behavior-renderer>");
+            } else {
+                sb.append("<renderer><component-family>").append(familyAndType[0]).append(
+                    "</component-family><renderer-type>").append(familyAndType[1]).append(
+                    "</renderer-type></renderer>");
+            }
+        }
+        sb.append("</render-kit></faces-config>");
+        return new TestFileInfo(name, sb.toString().getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testRenderersOrderedByFamilyAndType() throws Exception {
+        List<FileInfo> files = new ArrayList<FileInfo>();
+        files.add(createRenderKit("META-INF/first.faces-config.xml", "b:x", "behavior2", "a:z"));
+        files.add(createRenderKit("META-INF/second.faces-config.xml", "behavior1", "a:y", "ab:a"));
+
+        List<FileInfo> reversedFiles = new ArrayList<FileInfo>(files);
+        Collections.reverse(reversedFiles);
+
+        for (boolean streaming : new boolean[] {false, true}) {
+            FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+            transformer.setStreaming(streaming);
+            String output = new String(merge(transformer, files, tempFolder.newFolder("direct" + streaming)).get(
+                FACES_CONFIG), "UTF-8");
+
+            transformer = new FacesConfigXmlResourceTransformer();
+            transformer.setStreaming(streaming);
+            String reversedOutput = new String(merge(transformer, reversedFiles,
+                tempFolder.newFolder("reversed" + streaming)).get(FACES_CONFIG), "UTF-8");
+
+            assertEquals(output, reversedOutput);
+
+            int[] positions = new int[] {output.indexOf(">a<"), output.indexOf(">y<"), output.indexOf(">z<"),
+                output.indexOf(">ab<"), output.indexOf(">b<"), output.indexOf(">behavior1<"),
+                output.indexOf(">behavior2<")};
+            for (int i = 1; i < positions.length; i++) {
+                assertTrue(positions[i - 1] < positions[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.richfaces.build.shade.resource.TransformerTestSupport.TestFileInfo;
+
+public class IncrementalMergeTest {
+
+    private static final String FACES_CONFIG = "META-INF/faces-config.xml";
+
+    private static final byte[] MARKER = "reused".getBytes();
+
+    private static final long OLD_TIMESTAMP = 1000000000000L;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static FacesConfigXmlResourceTransformer createTransformer() {
+        FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+        transformer.setIncremental(true);
+        return transformer;
+    }
+
+    private static void markOutput(File outputDirectory) throws Exception {
+        FileOutputStream os = new FileOutputStream(new File(outputDirectory, FACES_CONFIG));
+        try {
+            os.write(MARKER);
+        } finally {
+            os.close();
+        }
+    }
+
+    @Test
+    public void testReuseOutput() throws Exception {
+        List<FileInfo> files = readFixtures();
+        File outputDirectory = tempFolder.newFolder("out");
+
+        Map<String, byte[]> expected = merge(new FacesConfigXmlResourceTransformer(), files, tempFolder.newFolder(
+            "expected"));
+
+        FacesConfigXmlResourceTransformer transformer = createTransformer();
+        Map<String, byte[]> merged = merge(transformer, files, outputDirectory);
+        assertArrayEquals(expected.get(FACES_CONFIG), merged.get(FACES_CONFIG));
+        assertTrue(transformer.getManifestFile().isFile());
+
+        // same inputs - output directory content goes to archive as is
+        File outputFile = new File(outputDirectory, FACES_CONFIG);
+        outputFile.setLastModified(OLD_TIMESTAMP);
+        merged = merge(createTransformer(), files, outputDirectory);
+        assertArrayEquals(expected.get(FACES_CONFIG), merged.get(FACES_CONFIG));
+        assertEquals(OLD_TIMESTAMP, outputFile.lastModified());
+
+        // changed output is not reused
+        markOutput(outputDirectory);
+        merged = merge(createTransformer(), files, outputDirectory);
+        assertArrayEquals(expected.get(FACES_CONFIG), merged.get(FACES_CONFIG));
+
+        // changed settings
+        FacesConfigXmlResourceTransformer compactTransformer = new FacesConfigXmlResourceTransformer();
+        compactTransformer.setOutputMode("compact");
+        Map<String, byte[]> compactExpected = merge(compactTransformer, files, tempFolder.newFolder("compact"));
+
+        compactTransformer = createTransformer();
+        compactTransformer.setOutputMode("compact");
+        outputFile.setLastModified(OLD_TIMESTAMP);
+        merged = merge(compactTransformer, files, outputDirectory);
+        assertArrayEquals(compactExpected.get(FACES_CONFIG), merged.get(FACES_CONFIG));
+        assertFalse(OLD_TIMESTAMP == outputFile.lastModified());
+
+        // changed input
+        List<FileInfo> changedFiles = new ArrayList<FileInfo>(files);
+        for (int i = 0; i < changedFiles.size(); i++) {
+            FileInfo fileInfo = changedFiles.get(i);
+            if (fileInfo.getName().endsWith("faces-config.xml")) {
+                String content = new String(IOUtil.toByteArray(fileInfo.getContents()), "UTF-8");
+                changedFiles.set(i, new TestFileInfo(fileInfo.getName(), (content + "\n").getBytes("UTF-8")));
+                break;
+            }
+        }
+
+        merged = merge(createTransformer(), changedFiles, outputDirectory);
+        assertEquals(new String(expected.get(FACES_CONFIG), "UTF-8"), new String(merged.get(FACES_CONFIG), "UTF-8"));
+    }
+}
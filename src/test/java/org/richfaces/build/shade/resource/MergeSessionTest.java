@@ -0,0 +1,136 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.getFixtureJars;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.richfaces.build.shade.resource.TransformerTestSupport.TestArchiver;
+
+public class MergeSessionTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Map<String, byte[]> mergeWithHandlers() throws Exception {
+        List<FileInfo> files = readFixtures();
+
+        Map<String, byte[]> result = new TreeMap<String, byte[]>();
+        result.putAll(merge(new FacesConfigXmlResourceTransformer(), files, tempFolder.newFolder("faces")));
+        result.putAll(merge(new TaglibXmlResourceTransformer(), files, tempFolder.newFolder("taglibs")));
+
+        ResourceMappingsPropertiesTransformer propertiesTransformer = new ResourceMappingsPropertiesTransformer();
+        for (FileInfo fileInfo : files) {
+            propertiesTransformer.isSelected(fileInfo);
+        }
+        TestArchiver archiver = new TestArchiver();
+        propertiesTransformer.finalizeArchiveCreation(archiver.getArchiver());
+        result.putAll(archiver.getFiles());
+
+        return result;
+    }
+
+    private static void assertSameFiles(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+        assertTrue(expected.size() > 1);
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testMergeJars() throws Exception {
+        MergeSession session = new MergeSession();
+        for (File jar : getFixtureJars()) {
+            session.addInput(jar);
+        }
+
+        assertSameFiles(mergeWithHandlers(), session.merge());
+    }
+
+    @Test
+    public void testMergeJarsEntryByEntry() throws Exception {
+        MergeSession session = new MergeSession();
+        session.setCentralDirectoryScan(false);
+        for (File jar : getFixtureJars()) {
+            session.addInput(jar);
+        }
+
+        assertSameFiles(mergeWithHandlers(), session.merge());
+    }
+
+    @Test
+    public void testMergeDirectories() throws Exception {
+        File inputsDirectory = tempFolder.newFolder("inputs");
+        MergeSession session = new MergeSession();
+        for (File jar : getFixtureJars()) {
+            File directory = new File(inputsDirectory, jar.getName());
+            for (FileInfo fileInfo : readFixtures(Collections.singletonList(jar))) {
+                File file = new File(directory, fileInfo.getName());
+                file.getParentFile().mkdirs();
+
+                InputStream is = fileInfo.getContents();
+                OutputStream os = new FileOutputStream(file);
+                try {
+                    IOUtil.copy(is, os);
+                } finally {
+                    os.close();
+                    is.close();
+                }
+            }
+
+            session.addInput(directory);
+        }
+
+        File outputDirectory = tempFolder.newFolder("output");
+        Map<String, byte[]> merged = session.writeTo(outputDirectory);
+        assertSameFiles(mergeWithHandlers(), merged);
+
+        for (Map.Entry<String, byte[]> entry : merged.entrySet()) {
+            InputStream is = new FileInputStream(new File(outputDirectory, entry.getKey()));
+            try {
+                assertArrayEquals(entry.getValue(), IOUtil.toByteArray(is));
+            } finally {
+                is.close();
+            }
+        }
+    }
+}
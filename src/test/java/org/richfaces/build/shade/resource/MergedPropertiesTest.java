@@ -0,0 +1,94 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Locale;
+
+import org.junit.Test;
+import org.richfaces.build.shade.resource.MergedProperties.ConflictPolicy;
+
+public class MergedPropertiesTest {
+
+    private static final String FIRST = "# comment\n" + "b=first\n" + "\n" + "a\\:x.png=org.Gradient\\\n"
+        + "\t{width=8}\t\n";
+
+    private static final String SECOND = "b = second\n" + "c:value\n" + "a\\:x.png = org.Gradient{width=8}\t\n";
+
+    private static String merge(ConflictPolicy policy) throws Exception {
+        MergedProperties properties = new MergedProperties(policy);
+        properties.load("first", new StringReader(FIRST));
+        properties.load("second", new StringReader(SECOND));
+
+        StringWriter writer = new StringWriter();
+        properties.write(writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void testFirstWins() throws Exception {
+        assertEquals("a\\:x.png=org.Gradient\\\n\t{width=8}\t\n" + "b=first\n" + "c:value\n",
+            merge(ConflictPolicy.FIRST_WINS));
+    }
+
+    @Test
+    public void testLastWins() throws Exception {
+        assertEquals("a\\:x.png = org.Gradient{width=8}\t\n" + "b = second\n" + "c:value\n",
+            merge(ConflictPolicy.LAST_WINS));
+    }
+
+    @Test
+    public void testFail() throws Exception {
+        try {
+            merge(ConflictPolicy.FAIL);
+            fail();
+        } catch (IOException e) {
+            // 'a' has the same value in both files, 'b' doesn't
+            assertEquals("Conflicting values for key 'b' in 'first' and 'second'", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPolicyNames() throws Exception {
+        assertEquals(ConflictPolicy.FIRST_WINS, ConflictPolicy.forName("first-wins"));
+        assertEquals(ConflictPolicy.LAST_WINS, ConflictPolicy.forName("last-wins"));
+        assertEquals(ConflictPolicy.FAIL, ConflictPolicy.forName("fail"));
+
+        // dotted capital I of Turkish locale isn't an English letter
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals(ConflictPolicy.FIRST_WINS, ConflictPolicy.forName("first-wins"));
+
+            ResourceMappingsPropertiesTransformer transformer = new ResourceMappingsPropertiesTransformer();
+            transformer.setConflictPolicy("fail");
+            assertEquals("fail", transformer.getConflictPolicy());
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
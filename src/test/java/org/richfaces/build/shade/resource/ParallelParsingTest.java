@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParallelParsingTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private void assertSameOutput(BaseFacesResourceTransformer sequential, BaseFacesResourceTransformer parallel)
+        throws Exception {
+        List<FileInfo> files = readFixtures();
+
+        Map<String, byte[]> expected = merge(sequential, files, tempFolder.newFolder("sequential"));
+
+        parallel.setParallelism(4);
+        Map<String, byte[]> actual = merge(parallel, files, tempFolder.newFolder("parallel"));
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testFacesConfig() throws Exception {
+        assertSameOutput(new FacesConfigXmlResourceTransformer(), new FacesConfigXmlResourceTransformer());
+    }
+
+    @Test
+    public void testTaglibs() throws Exception {
+        assertSameOutput(new TaglibXmlResourceTransformer(), new TaglibXmlResourceTransformer());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.util.List;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParserReuseTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testParserCreatedOncePerThread() throws Exception {
+        List<FileInfo> files = readFixtures();
+
+        int handledFiles = 0;
+        TaglibXmlResourceTransformer taglibTransformer = new TaglibXmlResourceTransformer();
+        FacesConfigXmlResourceTransformer facesConfigTransformer = new FacesConfigXmlResourceTransformer();
+        for (FileInfo fileInfo : files) {
+            if (taglibTransformer.isHandled(fileInfo) || facesConfigTransformer.isHandled(fileInfo)) {
+                handledFiles++;
+            }
+        }
+
+        long creations = BaseFacesResourceTransformer.getParserCreationCount();
+        long reuses = BaseFacesResourceTransformer.getParserReuseCount();
+
+        merge(taglibTransformer, files, tempFolder.newFolder("taglib"));
+        merge(facesConfigTransformer, files, tempFolder.newFolder("faces-config"));
+
+        long createdParsers = BaseFacesResourceTransformer.getParserCreationCount() - creations;
+        long reusedParsers = BaseFacesResourceTransformer.getParserReuseCount() - reuses;
+
+        assertTrue(handledFiles > 1);
+        assertTrue("Created " + createdParsers + " parsers", createdParsers <= 1);
+        assertEquals(handledFiles, createdParsers + reusedParsers);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.richfaces.build.shade.resource.TransformerTestSupport.TestFileInfo;
+
+public class PassThroughTaglibTest {
+
+    private static final String PASS_THROUGH = "META-INF/pass-through.taglib.xml";
+
+    private static final String PASS_THROUGH_CONTENT = "<?xml version=\"1.0\"?>\n"
+        + "<facelet-taglib xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"2.0\">"
+        + "<!-- no namespace --><tag><tag-name>custom</tag-name>   <handler-class>Handler</handler-class></tag>"
+        + "</facelet-taglib>";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private List<FileInfo> createFiles() throws Exception {
+        List<FileInfo> files = readFixtures();
+        files.add(new TestFileInfo(PASS_THROUGH, PASS_THROUGH_CONTENT.getBytes("UTF-8")));
+        return files;
+    }
+
+    @Test
+    public void testPassThroughCopiedAsIs() throws Exception {
+        List<FileInfo> files = createFiles();
+
+        TaglibXmlResourceTransformer reformattingTransformer = new TaglibXmlResourceTransformer();
+        reformattingTransformer.setReformatPassThrough(true);
+        Map<String, byte[]> reformatted = merge(reformattingTransformer, files, tempFolder.newFolder("reformatted"));
+
+        Map<String, byte[]> copied = merge(new TaglibXmlResourceTransformer(), files, tempFolder.newFolder("copied"));
+
+        assertArrayEquals(PASS_THROUGH_CONTENT.getBytes("UTF-8"), copied.get(PASS_THROUGH));
+        assertFalse(Arrays.equals(copied.get(PASS_THROUGH), reformatted.get(PASS_THROUGH)));
+
+        // merged taglibs are not affected
+        assertEquals(reformatted.keySet(), copied.keySet());
+        for (Map.Entry<String, byte[]> entry : reformatted.entrySet()) {
+            if (!PASS_THROUGH.equals(entry.getKey())) {
+                assertArrayEquals(entry.getKey(), entry.getValue(), copied.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void testSpilledPassThroughCopiedAsIs() throws Exception {
+        TaglibXmlResourceTransformer transformer = new TaglibXmlResourceTransformer();
+        transformer.setMemoryBudget(1);
+        transformer.setSpillDirectory(tempFolder.newFolder("spill").getAbsolutePath());
+        Map<String, byte[]> copied = merge(transformer, createFiles(), tempFolder.newFolder("copied"));
+
+        assertArrayEquals(PASS_THROUGH_CONTENT.getBytes("UTF-8"), copied.get(PASS_THROUGH));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.getFixtureJars;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.richfaces.build.shade.resource.TransformerTestSupport.TestArchiver;
+
+public class ReproducibleOutputTest {
+
+    private static final int SHUFFLES_COUNT = 8;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private int foldersCount;
+
+    private static String hash(byte[] bytes) throws Exception {
+        return new BigInteger(1, MessageDigest.getInstance("SHA-1").digest(bytes)).toString(16);
+    }
+
+    private void addHashes(TestArchiver archiver, Map<String, String> result) throws Exception {
+        for (Map.Entry<String, byte[]> entry : archiver.getFiles().entrySet()) {
+            String name = entry.getKey();
+            assertEquals(name, Long.valueOf(InMemoryResource.getReproducibleLastModified()),
+                archiver.getLastModified().get(name));
+            result.put(name, hash(entry.getValue()));
+        }
+    }
+
+    /**
+     * Merges descriptors and resource mappings of the given jars with all transformers and returns hashes of merged
+     * files, checking their modification time.
+     */
+    private Map<String, String> mergeHashes(List<File> jars, boolean streaming) throws Exception {
+        List<FileInfo> files = readFixtures(jars);
+
+        FacesConfigXmlResourceTransformer facesConfigTransformer = new FacesConfigXmlResourceTransformer();
+        facesConfigTransformer.setStreaming(streaming);
+        TaglibXmlResourceTransformer taglibTransformer = new TaglibXmlResourceTransformer();
+
+        Map<String, String> result = new TreeMap<String, String>();
+
+        for (BaseFacesResourceTransformer transformer : new BaseFacesResourceTransformer[] {facesConfigTransformer,
+            taglibTransformer}) {
+
+            transformer.setReproducible(true);
+            transformer.setOutputDirectory(tempFolder.newFolder("output" + (foldersCount++)).getAbsolutePath());
+            for (FileInfo fileInfo : files) {
+                transformer.isSelected(fileInfo);
+            }
+
+            TestArchiver archiver = new TestArchiver();
+            transformer.finalizeArchiveCreation(archiver.getArchiver());
+            addHashes(archiver, result);
+        }
+
+        ResourceMappingsPropertiesTransformer mappingsTransformer = new ResourceMappingsPropertiesTransformer();
+        mappingsTransformer.setReproducible(true);
+        for (FileInfo fileInfo : files) {
+            mappingsTransformer.isSelected(fileInfo);
+        }
+
+        TestArchiver archiver = new TestArchiver();
+        mappingsTransformer.finalizeArchiveCreation(archiver.getArchiver());
+        addHashes(archiver, result);
+        assertTrue(result.containsKey("META-INF/richfaces/resource-mappings.properties"));
+
+        return result;
+    }
+
+    private void checkShuffledJars(boolean streaming) throws Exception {
+        List<File> jars = getFixtureJars();
+        Map<String, String> expected = mergeHashes(jars, streaming);
+        assertFalse(expected.isEmpty());
+
+        Random random = new Random(0);
+        for (int i = 0; i < SHUFFLES_COUNT; i++) {
+            Collections.shuffle(jars, random);
+            assertEquals(jars.toString(), expected, mergeHashes(jars, streaming));
+        }
+
+        Collections.reverse(jars);
+        assertEquals(jars.toString(), expected, mergeHashes(jars, streaming));
+    }
+
+    @Test
+    public void testShuffledJars() throws Exception {
+        checkShuffledJars(false);
+    }
+
+    @Test
+    public void testShuffledJarsStreaming() throws Exception {
+        checkShuffledJars(true);
+    }
+
+    /**
+     * Zips merged files like archiver does, with modification time of the archive resources.
+     */
+    private byte[] zipMergedFiles() throws Exception {
+        FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+        transformer.setReproducible(true);
+        transformer.setOutputDirectory(tempFolder.newFolder("output" + (foldersCount++)).getAbsolutePath());
+        for (FileInfo fileInfo : readFixtures()) {
+            transformer.isSelected(fileInfo);
+        }
+
+        TestArchiver archiver = new TestArchiver();
+        transformer.finalizeArchiveCreation(archiver.getArchiver());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream os = new ZipOutputStream(bytes);
+        for (Map.Entry<String, byte[]> entry : archiver.getFiles().entrySet()) {
+            long lastModified = archiver.getLastModified().get(entry.getKey()).longValue();
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(lastModified);
+            assertEquals(1980, calendar.get(Calendar.YEAR));
+            assertEquals(Calendar.JANUARY, calendar.get(Calendar.MONTH));
+            assertEquals(1, calendar.get(Calendar.DAY_OF_MONTH));
+            assertEquals(0, calendar.get(Calendar.HOUR_OF_DAY));
+            assertEquals(0, calendar.get(Calendar.MINUTE));
+            assertEquals(2, calendar.get(Calendar.SECOND));
+
+            ZipEntry zipEntry = new ZipEntry(entry.getKey());
+            zipEntry.setTime(lastModified);
+            os.putNextEntry(zipEntry);
+            os.write(entry.getValue());
+            os.closeEntry();
+        }
+        os.close();
+
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testTimeZones() throws Exception {
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            byte[] expected = zipMergedFiles();
+
+            for (String id : new String[] {"America/Los_Angeles", "Europe/Berlin", "Asia/Kolkata",
+                "Pacific/Kiritimati", "Pacific/Pago_Pago"}) {
+                TimeZone.setDefault(TimeZone.getTimeZone(id));
+                assertArrayEquals(id, expected, zipMergedFiles());
+            }
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+}
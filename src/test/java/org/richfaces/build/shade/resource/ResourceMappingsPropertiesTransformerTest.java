@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.richfaces.build.shade.resource.TransformerTestSupport.TestArchiver;
+import org.richfaces.build.shade.resource.TransformerTestSupport.TestFileInfo;
+
+public class ResourceMappingsPropertiesTransformerTest {
+
+    private static final String RESOURCE_MAPPINGS = "META-INF/richfaces/resource-mappings.properties";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static final class CountingFileInfo implements FileInfo {
+
+        private final FileInfo fileInfo;
+
+        private int opensCount;
+
+        public CountingFileInfo(String name, byte[] contents) {
+            this.fileInfo = new TestFileInfo(name, contents);
+        }
+
+        public String getName() {
+            return fileInfo.getName();
+        }
+
+        public InputStream getContents() throws IOException {
+            opensCount++;
+            return fileInfo.getContents();
+        }
+
+        public boolean isFile() {
+            return fileInfo.isFile();
+        }
+
+        public boolean isDirectory() {
+            return fileInfo.isDirectory();
+        }
+    }
+
+    @Test
+    public void testContentsOpenedOnce() throws Exception {
+        CountingFileInfo first = new CountingFileInfo(RESOURCE_MAPPINGS, "a=first\nb=first\n".getBytes("ISO-8859-1"));
+        CountingFileInfo second = new CountingFileInfo(RESOURCE_MAPPINGS, "b=second\nc=second\n".getBytes("ISO-8859-1"));
+
+        ResourceMappingsPropertiesTransformer transformer = new ResourceMappingsPropertiesTransformer();
+        assertFalse(transformer.isSelected(first));
+        assertFalse(transformer.isSelected(second));
+
+        TestArchiver archiver = new TestArchiver();
+        transformer.finalizeArchiveCreation(archiver.getArchiver());
+
+        assertEquals(1, first.opensCount);
+        assertEquals(1, second.opensCount);
+        assertEquals("a=first\nb=first\nc=second\n", new String(archiver.getFiles().get(RESOURCE_MAPPINGS),
+            "ISO-8859-1"));
+    }
+
+    private File createJar(String name, String mappings) throws IOException {
+        File jar = tempFolder.newFile(name);
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            os.putNextEntry(new ZipEntry(RESOURCE_MAPPINGS));
+            os.write(mappings.getBytes("ISO-8859-1"));
+            os.closeEntry();
+        } finally {
+            os.close();
+        }
+
+        return jar;
+    }
+
+    @Test
+    public void testConflictNamesSourceJars() throws Exception {
+        ResourceMappingsPropertiesTransformer transformer = new ResourceMappingsPropertiesTransformer();
+        transformer.setConflictPolicy("fail");
+
+        MergeSession session = new MergeSession(transformer);
+        session.addInput(createJar("first.jar", "a=first\n"));
+        session.addInput(createJar("second.jar", "a=second\n"));
+        try {
+            session.merge();
+            fail();
+        } catch (IOException e) {
+            assertEquals("Conflicting values for key 'a' in 'first.jar!/" + RESOURCE_MAPPINGS + "' and 'second.jar!/"
+                + RESOURCE_MAPPINGS + "'", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.assembly.filter.ContainerDescriptorHandler;
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.richfaces.build.shade.resource.TransformerTestSupport.TestArchiver;
+
+public class ResourcesDrainCoordinatorTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testSinglePass() throws Exception {
+        List<FileInfo> files = readFixtures();
+
+        TaglibXmlResourceTransformer taglibTransformer = new TaglibXmlResourceTransformer();
+        taglibTransformer.setOutputDirectory(tempFolder.newFolder("taglib").getAbsolutePath());
+        FacesConfigXmlResourceTransformer facesConfigTransformer = new FacesConfigXmlResourceTransformer();
+        facesConfigTransformer.setOutputDirectory(tempFolder.newFolder("faces-config").getAbsolutePath());
+        ResourceMappingsPropertiesTransformer propertiesTransformer = new ResourceMappingsPropertiesTransformer();
+
+        List<ContainerDescriptorHandler> handlers = Arrays.<ContainerDescriptorHandler>asList(taglibTransformer,
+            facesConfigTransformer, propertiesTransformer);
+        TestArchiver archiver = new TestArchiver(files, handlers);
+
+        long skippedPasses = ResourcesDrainCoordinator.getSkippedPasses();
+        for (ContainerDescriptorHandler handler : handlers) {
+            handler.finalizeArchiveCreation(archiver.getArchiver());
+        }
+
+        assertEquals(1, archiver.getResourcesPasses());
+        assertEquals(handlers.size() - 1, ResourcesDrainCoordinator.getSkippedPasses() - skippedPasses);
+
+        // every descriptor has been merged once
+        Map<String, byte[]> expected = merge(new TaglibXmlResourceTransformer(), files, tempFolder.newFolder("t"));
+        expected.putAll(merge(new FacesConfigXmlResourceTransformer(), files, tempFolder.newFolder("f")));
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), archiver.getFiles().get(entry.getKey()));
+        }
+
+        // archiver passes resources through handlers once again when archive is created
+        for (FileInfo fileInfo : files) {
+            if (taglibTransformer.isHandled(fileInfo)) {
+                assertFalse(taglibTransformer.isSelected(fileInfo));
+            }
+        }
+
+        assertFalse(taglibTransformer.hasProcessedConfigFiles());
+        assertTrue(taglibTransformer.getVirtualFiles().isEmpty());
+    }
+
+    @Test
+    public void testHandlersReusedForAnotherArchive() throws Exception {
+        List<FileInfo> files = readFixtures();
+
+        TaglibXmlResourceTransformer taglibTransformer = new TaglibXmlResourceTransformer();
+        taglibTransformer.setOutputDirectory(tempFolder.newFolder("taglib").getAbsolutePath());
+        ResourceMappingsPropertiesTransformer propertiesTransformer = new ResourceMappingsPropertiesTransformer();
+        List<ContainerDescriptorHandler> handlers = Arrays.<ContainerDescriptorHandler>asList(taglibTransformer,
+            propertiesTransformer);
+
+        TestArchiver firstArchiver = new TestArchiver(files, handlers);
+        for (ContainerDescriptorHandler handler : handlers) {
+            handler.finalizeArchiveCreation(firstArchiver.getArchiver());
+        }
+
+        TestArchiver secondArchiver = new TestArchiver(files, handlers);
+        for (ContainerDescriptorHandler handler : handlers) {
+            handler.finalizeArchiveCreation(secondArchiver.getArchiver());
+        }
+
+        assertEquals(1, secondArchiver.getResourcesPasses());
+        assertFalse(firstArchiver.getFiles().isEmpty());
+        assertEquals(firstArchiver.getFiles().keySet(), secondArchiver.getFiles().keySet());
+        for (Map.Entry<String, byte[]> entry : firstArchiver.getFiles().entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), secondArchiver.getFiles().get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testConcurrentArchivers() throws Exception {
+        final List<FileInfo> files = readFixtures();
+        int archiversCount = 4;
+        final int handlersCount = 3;
+
+        List<Callable<TestArchiver>> tasks = new ArrayList<Callable<TestArchiver>>();
+        for (int i = 0; i < archiversCount; i++) {
+            tasks.add(new Callable<TestArchiver>() {
+
+                public TestArchiver call() throws Exception {
+                    List<ContainerDescriptorHandler> handlers = new ArrayList<ContainerDescriptorHandler>();
+                    for (int j = 0; j < handlersCount; j++) {
+                        handlers.add(new ResourceMappingsPropertiesTransformer());
+                    }
+
+                    TestArchiver archiver = new TestArchiver(files, handlers);
+                    for (ContainerDescriptorHandler handler : handlers) {
+                        handler.finalizeArchiveCreation(archiver.getArchiver());
+                    }
+
+                    return archiver;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(archiversCount);
+        try {
+            for (Future<TestArchiver> future : executor.invokeAll(tasks)) {
+                assertEquals(1, future.get().getResourcesPasses());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
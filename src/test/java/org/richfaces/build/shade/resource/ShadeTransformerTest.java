@@ -0,0 +1,130 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.apache.maven.plugins.shade.relocation.Relocator;
+import org.apache.maven.plugins.shade.resource.ReproducibleResourceTransformer;
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShadeTransformerTest {
+
+    // zip stores time with two seconds precision
+    private static final long SOURCE_TIME = 1262304000000L;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Passes files to transformer the way shade plugin does and returns entries written to shaded jar. Source entries
+     * get increasing times, merged entries should have the time of the latest one.
+     */
+    private static Map<String, byte[]> shade(ReproducibleResourceTransformer transformer, List<FileInfo> files)
+        throws Exception {
+        long time = SOURCE_TIME;
+        for (FileInfo fileInfo : files) {
+            if (transformer.canTransformResource(fileInfo.getName())) {
+                InputStream is = fileInfo.getContents();
+                try {
+                    time += 2000;
+                    transformer.processResource(fileInfo.getName(), is, Collections.<Relocator>emptyList(), time);
+                } finally {
+                    is.close();
+                }
+            }
+        }
+
+        assertTrue(transformer.hasTransformedResource());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JarOutputStream os = new JarOutputStream(bytes);
+        transformer.modifyOutputStream(os);
+        os.close();
+
+        Map<String, byte[]> result = new TreeMap<String, byte[]>();
+        JarInputStream is = new JarInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            for (JarEntry entry = is.getNextJarEntry(); entry != null; entry = is.getNextJarEntry()) {
+                assertEquals(entry.getName(), time, entry.getTime());
+                result.put(entry.getName(), IOUtil.toByteArray(is));
+            }
+        } finally {
+            is.close();
+        }
+
+        return result;
+    }
+
+    private static void assertSameFiles(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testFacesConfig() throws Exception {
+        List<FileInfo> files = readFixtures();
+        assertSameFiles(merge(new FacesConfigXmlResourceTransformer(), files, tempFolder.newFolder("assembly")),
+            shade(new FacesConfigXmlShadeTransformer(), files));
+    }
+
+    @Test
+    public void testTaglibs() throws Exception {
+        List<FileInfo> files = readFixtures();
+        assertSameFiles(merge(new TaglibXmlResourceTransformer(), files, tempFolder.newFolder("assembly")),
+            shade(new TaglibXmlShadeTransformer(), files));
+    }
+
+    @Test
+    public void testResourceMappings() throws Exception {
+        String name = "META-INF/richfaces/resource-mappings.properties";
+        List<FileInfo> files = Collections.<FileInfo>singletonList(new TransformerTestSupport.TestFileInfo(name,
+            "a=b\n".getBytes("ISO-8859-1")));
+
+        ResourceMappingsPropertiesShadeTransformer transformer = new ResourceMappingsPropertiesShadeTransformer();
+        assertFalse(transformer.canTransformResource("META-INF/faces-config.xml"));
+        assertEquals("a=b\n", new String(shade(transformer, files).get(name), "ISO-8859-1"));
+    }
+}
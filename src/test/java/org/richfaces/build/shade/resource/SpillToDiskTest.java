@@ -0,0 +1,176 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.richfaces.build.shade.resource.TransformerTestSupport.TestFileInfo;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpillToDiskTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testSpilledOutputMatchesInMemory() throws Exception {
+        for (String outputMode : new String[] {"pretty", "compact", "raw"}) {
+            checkSpilledOutput(outputMode);
+        }
+    }
+
+    private void checkSpilledOutput(String outputMode) throws Exception {
+        List<FileInfo> files = readFixtures();
+
+        TaglibXmlResourceTransformer inMemoryTransformer = new TaglibXmlResourceTransformer();
+        inMemoryTransformer.setOutputMode(outputMode);
+        Map<String, byte[]> inMemoryOutput = merge(inMemoryTransformer, files,
+            tempFolder.newFolder("memory-" + outputMode));
+
+        File spillDirectory = tempFolder.newFolder("spill-" + outputMode);
+        TaglibXmlResourceTransformer spillingTransformer = new TaglibXmlResourceTransformer();
+        spillingTransformer.setOutputMode(outputMode);
+        // every processed library goes to disk
+        spillingTransformer.setMemoryBudget(1);
+        spillingTransformer.setSpillDirectory(spillDirectory.getAbsolutePath());
+        Map<String, byte[]> spilledOutput = merge(spillingTransformer, files,
+            tempFolder.newFolder("spilled-" + outputMode));
+
+        assertTrue(inMemoryOutput.size() > 1);
+        assertEquals(inMemoryOutput.keySet(), spilledOutput.keySet());
+        for (Map.Entry<String, byte[]> entry : inMemoryOutput.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), spilledOutput.get(entry.getKey()));
+        }
+
+        assertEquals(0, spillDirectory.list().length);
+    }
+
+    private static FileInfo createTaglib(String name, String namespace) throws Exception {
+        // every library declares the same prefix for its own extensions namespace
+        String taglib = "<facelet-taglib xmlns='http://java.sun.com/xml/ns/javaee' xmlns:ext='urn:ext:" + name
+            + "' version='2.0'>" + "<namespace>" + namespace + "</namespace>" + "<ext:extension>" + name
+            + "-first</ext:extension>" + "<tag><tag-name>" + name + "-tag</tag-name><ext:info>" + name
+            + "</ext:info></tag>" + "<ext:extension>" + name + "-second</ext:extension>"
+            + "<function><function-name>" + name + "-function</function-name></function>" + "</facelet-taglib>";
+        return new TestFileInfo("META-INF/" + name + ".taglib.xml", taglib.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testForeignNamespacesMatchInMemory() throws Exception {
+        List<FileInfo> files = new ArrayList<FileInfo>();
+        // libraries come in reverse order of their namespaces
+        files.add(createTaglib("z", "http://example.org/z"));
+        files.add(createTaglib("m", "http://example.org/m"));
+        files.add(createTaglib("a", "http://example.org/a"));
+        files.add(createTaglib("part2", "http://example.org/parts/2"));
+        files.add(createTaglib("part1", "http://example.org/parts/1"));
+
+        Taglib taglib = new Taglib();
+        taglib.setTargetNamespace("http://example.org/parts");
+        taglib.setSourceNamespacesPattern("http://example.org/parts/\\d");
+
+        TaglibXmlResourceTransformer inMemoryTransformer = new TaglibXmlResourceTransformer();
+        inMemoryTransformer.setTaglibs(new Taglib[] {taglib});
+        Map<String, byte[]> inMemoryOutput = merge(inMemoryTransformer, files, tempFolder.newFolder("memory"));
+
+        File spillDirectory = tempFolder.newFolder("spill");
+        TaglibXmlResourceTransformer spillingTransformer = new TaglibXmlResourceTransformer();
+        spillingTransformer.setTaglibs(new Taglib[] {taglib});
+        spillingTransformer.setMemoryBudget(1);
+        spillingTransformer.setSpillDirectory(spillDirectory.getAbsolutePath());
+        Map<String, byte[]> spilledOutput = merge(spillingTransformer, files, tempFolder.newFolder("spilled"));
+
+        assertEquals(4, inMemoryOutput.size());
+        assertEquals(inMemoryOutput.keySet(), spilledOutput.keySet());
+        for (Map.Entry<String, byte[]> entry : inMemoryOutput.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), spilledOutput.get(entry.getKey()));
+        }
+
+        String parts = new String(inMemoryOutput.get("META-INF/parts.taglib.xml"), "UTF-8");
+        assertTrue(parts, parts.contains("xmlns:x1="));
+        // foreign elements go after tags and functions, in the order they have been added
+        int function = parts.lastIndexOf("part1-function");
+        int extension = parts.indexOf("part2-first");
+        assertTrue(parts, function >= 0 && function < extension);
+        assertTrue(parts, extension < parts.indexOf("part2-second"));
+        assertTrue(parts, parts.indexOf("part2-second") < parts.indexOf("part1-first"));
+
+        assertEquals(0, spillDirectory.list().length);
+    }
+
+    @Test
+    public void testMergeKeepsOneElementPerRun() throws Exception {
+        File spillDirectory = tempFolder.newFolder("runs");
+        SortedRuns runs = new SortedRuns(TaglibXmlResourceTransformer.getElementsComparator(), spillDirectory);
+
+        Namespace javaEENamespace = Namespace.getNamespace("http://java.sun.com/xml/ns/javaee");
+        int runsCount = 4;
+        int runSize = 250;
+        for (int i = 0; i < runsCount * runSize; i++) {
+            Element tag = new Element("tag", javaEENamespace);
+            // names of the runs are interleaved, so that merge has to switch between them
+            String name = String.format("tag%05d", (i % runSize) * runsCount + i / runSize);
+            tag.addContent(new Element("tag-name", javaEENamespace).setText(name));
+            runs.add(tag);
+            if ((i + 1) % runSize == 0 && i + 1 < runsCount * runSize) {
+                runs.spill();
+            }
+        }
+
+        assertEquals(runsCount - 1, runs.getRunsCount());
+        assertEquals(runSize, runs.getBufferedCount());
+
+        SortedRuns.Merge merge = runs.merge();
+        try {
+            int count = 0;
+            int maxHeld = 0;
+            for (Element tag = merge.next(); tag != null; tag = merge.next()) {
+                assertEquals(String.format("tag%05d", count), tag.getChildText("tag-name", javaEENamespace));
+                maxHeld = Math.max(maxHeld, merge.getHeldCount());
+                count++;
+            }
+
+            assertEquals(runsCount * runSize, count);
+            assertEquals(runsCount, maxHeld);
+            assertNull(merge.next());
+        } finally {
+            merge.close();
+        }
+
+        assertEquals(0, spillDirectory.list().length);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.jdom.Document;
+import org.jdom.input.SAXBuilder;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StreamingXmlSerializerTest {
+
+    private static final String MIXED_CONTENT = "<?xml version=\"1.0\"?>\n"
+        + "<!DOCTYPE root SYSTEM \"root.dtd\">\n"
+        + "<root xmlns=\"urn:a\" xmlns:b=\"urn:b\" b:attr=\"a &amp; &quot;b&quot;&#10;\">\n"
+        + "  <!-- comment -->\n"
+        + "  <b:child>  text \n with   <em>mixed</em>  content &lt;&gt;  </b:child>\n"
+        + "  <empty>   </empty><?pi data?>\n"
+        + "  <pre xml:space=\"preserve\">  kept \n  as is  </pre>\n"
+        + "  <c><![CDATA[  cdata  <text> ]]>tail</c>\n"
+        + "  <other xmlns=\"\"><nested xmlns=\"urn:c\"/></other>\n"
+        + "</root>";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static String outputter(Document document, Format format) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new XMLOutputter(format).output(document, os);
+        return new String(os.toByteArray(), "UTF-8");
+    }
+
+    private static String serializer(Document document, boolean normalize) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new StreamingXmlSerializer(normalize).output(document, os);
+        return new String(os.toByteArray(), "UTF-8");
+    }
+
+    @Test
+    public void testSameOutputAsXMLOutputter() throws Exception {
+        SAXBuilder builder = new SAXBuilder();
+        builder.setValidation(false);
+        builder.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        Document document = builder.build(new ByteArrayInputStream(MIXED_CONTENT.getBytes("UTF-8")));
+
+        assertEquals(outputter(document, Format.getCompactFormat()), serializer(document, true));
+        assertEquals(outputter(document, Format.getRawFormat()), serializer(document, false));
+    }
+
+    @Test
+    public void testMergedOutputModes() throws Exception {
+        List<FileInfo> files = readFixtures();
+
+        Map<String, byte[]> pretty = merge(new FacesConfigXmlResourceTransformer(), files, tempFolder.newFolder("pretty"));
+        for (String mode : new String[] { "compact", "raw" }) {
+            FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+            transformer.setOutputMode(mode);
+            Map<String, byte[]> merged = merge(transformer, files, tempFolder.newFolder(mode));
+
+            for (Map.Entry<String, byte[]> entry : merged.entrySet()) {
+                // whitespace differs, but all modes have the same normalized content
+                Document prettyDocument = new SAXBuilder().build(new ByteArrayInputStream(pretty.get(entry.getKey())));
+                Document document = new SAXBuilder().build(new ByteArrayInputStream(entry.getValue()));
+                assertEquals(outputter(prettyDocument, Format.getCompactFormat()),
+                    outputter(document, Format.getCompactFormat()));
+                if ("compact".equals(mode)) {
+                    assertTrue(entry.getValue().length < pretty.get(entry.getKey()).length);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TaglibIndexTest {
+
+    private static Taglib createTaglib(String targetNamespace, String sourceNamespacesPattern) {
+        Taglib taglib = new Taglib();
+        taglib.setTargetNamespace(targetNamespace);
+        taglib.setSourceNamespacesPattern(sourceNamespacesPattern);
+        return taglib;
+    }
+
+    private static String resolveLinearly(Taglib[] taglibs, String namespace) {
+        for (Taglib taglib : taglibs) {
+            if (taglib.matches(namespace)) {
+                return taglib.getTargetNamespace();
+            }
+        }
+
+        return namespace;
+    }
+
+    @Test
+    public void testResolve() throws Exception {
+        Taglib[] taglibs = new Taglib[] {
+            createTaglib("http://richfaces.org/a4j", "http://richfaces.org/(a4j|ajax)"),
+            createTaglib("http://richfaces.org/exact", null),
+            createTaglib("http://richfaces.org/rich", "http://richfaces.org/(input|iteration|(misc|output))"),
+            createTaglib("http://richfaces.org/any", "http://richfaces\\.org/.*"),
+            createTaglib("http://richfaces.org/input", "") };
+
+        String[] namespaces = new String[] { "http://richfaces.org/a4j", "http://richfaces.org/ajax",
+            "http://richfaces.org/exact", "http://richfaces.org/input", "http://richfaces.org/misc",
+            "http://richfaces.org/other", "http://example.com/other", "http://richfaces.org/input" };
+
+        TaglibIndex index = new TaglibIndex(taglibs);
+        for (String namespace : namespaces) {
+            assertEquals(namespace, resolveLinearly(taglibs, namespace), index.resolve(namespace));
+        }
+
+        assertEquals("http://richfaces.org/rich", index.resolve("http://richfaces.org/input"));
+        assertEquals("http://example.com/other", index.resolve("http://example.com/other"));
+    }
+
+    @Test
+    public void testBackreferences() throws Exception {
+        // group numbers of the second pattern would be shifted if patterns were merged into one
+        Taglib[] taglibs = new Taglib[] {
+            createTaglib("http://richfaces.org/a4j", "http://richfaces.org/(a4j|ajax)"),
+            createTaglib("http://richfaces.org/twice", "http://(\\w+)\\.org/\\1"),
+            createTaglib("http://richfaces.org/named", "http://(?<name>\\w+)\\.com/\\k<name>/(\\w+)"),
+            createTaglib("http://richfaces.org/any", "http://richfaces\\.org/.*") };
+
+        String[] namespaces = new String[] { "http://richfaces.org/ajax", "http://richfaces.org/richfaces",
+            "http://example.org/example", "http://example.org/other", "http://example.com/example/x",
+            "http://example.com/other/x", "http://richfaces.org/other" };
+
+        TaglibIndex index = new TaglibIndex(taglibs);
+        for (String namespace : namespaces) {
+            assertEquals(namespace, resolveLinearly(taglibs, namespace), index.resolve(namespace));
+        }
+
+        assertEquals("http://richfaces.org/twice", index.resolve("http://richfaces.org/richfaces"));
+        assertEquals("http://richfaces.org/twice", index.resolve("http://example.org/example"));
+        assertEquals("http://example.org/other", index.resolve("http://example.org/other"));
+    }
+}
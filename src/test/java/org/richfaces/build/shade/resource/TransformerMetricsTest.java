@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.merge;
+import static org.richfaces.build.shade.resource.TransformerTestSupport.readFixtures;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.richfaces.build.shade.resource.TransformerMetrics.Phase;
+
+public class TransformerMetricsTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static String readReport(File file) throws Exception {
+        InputStream is = new FileInputStream(file);
+        try {
+            return new String(IOUtil.toByteArray(is), "UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void testMetricsReport() throws Exception {
+        List<FileInfo> files = readFixtures();
+
+        long bytesIn = 0;
+        int filesHandled = 0;
+        for (FileInfo fileInfo : files) {
+            if (fileInfo.getName().endsWith("faces-config.xml")) {
+                filesHandled++;
+                bytesIn += IOUtil.toByteArray(fileInfo.getContents()).length;
+            }
+        }
+
+        File outputDirectory = tempFolder.newFolder("output");
+        FacesConfigXmlResourceTransformer transformer = new FacesConfigXmlResourceTransformer();
+        transformer.setWriteMetrics(true);
+        Map<String, byte[]> merged = merge(transformer, files, outputDirectory);
+
+        String report = readReport(new File(outputDirectory, "FacesConfigXmlResourceTransformer.metrics.json"));
+        assertTrue(report, report.contains("\"filesHandled\": " + filesHandled + ","));
+        assertTrue(report, report.contains("\"bytesIn\": " + bytesIn + ","));
+        assertTrue(report, report.contains("\"bytesOut\": " + merged.get("META-INF/faces-config.xml").length + ","));
+        assertTrue(report, report.contains("\"component\": 37"));
+        assertTrue(report, report.contains("\"application\": "));
+        assertTrue(report, report.contains("\"render-kit\": "));
+        assertTrue(report, report.contains("\"parseMillis\": "));
+        assertTrue(report, report.contains("\"peakRetainedElements\": "));
+
+        // counters are reset once report is written
+        assertEquals(0, transformer.getMetrics().getFilesHandled());
+    }
+
+    @Test
+    public void testTaglibElementsCounted() throws Exception {
+        TaglibXmlResourceTransformer transformer = new TaglibXmlResourceTransformer();
+        File outputDirectory = tempFolder.newFolder("taglibs");
+        transformer.setWriteMetrics(true);
+        merge(transformer, readFixtures(), outputDirectory);
+
+        String report = readReport(new File(outputDirectory, "TaglibXmlResourceTransformer.metrics.json"));
+        assertTrue(report, report.contains("\"tag\": "));
+        assertTrue(report, report.contains("\"function\": "));
+    }
+
+    @Test
+    public void testPhaseNames() throws Exception {
+        // lower case of capital I is dotless in Turkish locale
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals("import", Phase.IMPORT.getName());
+            assertEquals("serialize", Phase.SERIALIZE.getName());
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.richfaces.build.shade.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.codehaus.plexus.archiver.ArchiveEntry;
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.ResourceIterator;
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Runs transformers directly against the entries of test jars, without assembly plugin.
+ */
+final class TransformerTestSupport {
+
+    private TransformerTestSupport() {
+    }
+
+    static List<File> getFixtureJars() {
+        File[] jars = new File("src/test/jars").listFiles();
+        Arrays.sort(jars);
+        return new ArrayList<File>(Arrays.asList(jars));
+    }
+
+    static List<FileInfo> readFixtures() throws IOException {
+        return readFixtures(getFixtureJars());
+    }
+
+    static List<FileInfo> readFixtures(List<File> jars) throws IOException {
+        List<FileInfo> result = new ArrayList<FileInfo>();
+        for (File jar : jars) {
+            JarFile jarFile = new JarFile(jar);
+            try {
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    if (!entry.isDirectory()) {
+                        InputStream is = jarFile.getInputStream(entry);
+                        try {
+                            result.add(new TestFileInfo(entry.getName(), IOUtil.toByteArray(is)));
+                        } finally {
+                            is.close();
+                        }
+                    }
+                }
+            } finally {
+                jarFile.close();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Feeds files to transformer and returns merged files added to archive, checking that the same content has been
+     * written to output directory.
+     */
+    static Map<String, byte[]> merge(final BaseFacesResourceTransformer transformer, final List<FileInfo> files,
+        final File outputDirectory) throws Exception {
+        transformer.setOutputDirectory(outputDirectory.getAbsolutePath());
+
+        for (FileInfo fileInfo : files) {
+            transformer.isSelected(fileInfo);
+        }
+
+        TestArchiver archiver = new TestArchiver();
+        transformer.finalizeArchiveCreation(archiver.getArchiver());
+
+        Map<String, byte[]> merged = archiver.getFiles();
+        for (Map.Entry<String, byte[]> entry : merged.entrySet()) {
+            InputStream is = new FileInputStream(new File(outputDirectory, entry.getKey()));
+            try {
+                assertArrayEquals(entry.getValue(), IOUtil.toByteArray(is));
+            } finally {
+                is.close();
+            }
+        }
+
+        return merged;
+    }
+
+    static final class TestFileInfo implements FileInfo {
+
+        private final String name;
+
+        private final byte[] contents;
+
+        public TestFileInfo(String name, byte[] contents) {
+            this.name = name;
+            this.contents = contents;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public InputStream getContents() throws IOException {
+            return new ByteArrayInputStream(contents);
+        }
+
+        public boolean isFile() {
+            return true;
+        }
+
+        public boolean isDirectory() {
+            return false;
+        }
+    }
+
+    /**
+     * Records files added to archive, other {@link Archiver} methods are no-ops. Resources iteration passes entries
+     * through selectors like archiver does for unpacked dependencies.
+     */
+    static final class TestArchiver implements InvocationHandler {
+
+        private final Map<String, byte[]> files = new TreeMap<String, byte[]>();
+
+        private final Map<String, Long> lastModified = new TreeMap<String, Long>();
+
+        private final List<FileInfo> entries;
+
+        private final List<? extends FileSelector> selectors;
+
+        private int resourcesPasses;
+
+        private Archiver archiver;
+
+        public TestArchiver() {
+            this(Collections.<FileInfo>emptyList(), Collections.<FileSelector>emptyList());
+        }
+
+        public TestArchiver(List<FileInfo> entries, List<? extends FileSelector> selectors) {
+            this.entries = entries;
+            this.selectors = selectors;
+        }
+
+        public int getResourcesPasses() {
+            return resourcesPasses;
+        }
+
+        public Archiver getArchiver() {
+            if (archiver == null) {
+                archiver = (Archiver) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] {Archiver.class}, this);
+            }
+
+            return archiver;
+        }
+
+        public Map<String, byte[]> getFiles() {
+            return files;
+        }
+
+        public Map<String, Long> getLastModified() {
+            return lastModified;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("equals".equals(name)) {
+                return Boolean.valueOf(proxy == args[0]);
+            }
+
+            if ("hashCode".equals(name)) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            }
+
+            if ("getResources".equals(name)) {
+                resourcesPasses++;
+                final Iterator<FileInfo> iterator = entries.iterator();
+                return new ResourceIterator() {
+
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    public ArchiveEntry next() {
+                        FileInfo fileInfo = iterator.next();
+                        try {
+                            for (FileSelector selector : selectors) {
+                                if (!selector.isSelected(fileInfo)) {
+                                    break;
+                                }
+                            }
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e.getMessage(), e);
+                        }
+
+                        return null;
+                    }
+                };
+            }
+
+            if ("addResource".equals(name)) {
+                PlexusIoResource resource = (PlexusIoResource) args[0];
+                lastModified.put((String) args[1], Long.valueOf(resource.getLastModified()));
+                InputStream is = resource.getContents();
+                try {
+                    files.put((String) args[1], IOUtil.toByteArray(is));
+                } finally {
+                    is.close();
+                }
+            }
+
+            if (method.getReturnType() == Integer.TYPE) {
+                return Integer.valueOf(-1);
+            }
+
+            if (method.getReturnType() == Boolean.TYPE) {
+                return Boolean.FALSE;
+            }
+
+            return null;
+        }
+    }
+}